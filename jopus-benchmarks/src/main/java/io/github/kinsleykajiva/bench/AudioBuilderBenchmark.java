@@ -0,0 +1,62 @@
+package io.github.kinsleykajiva.bench;
+
+import io.github.kinsleykajiva.AudioLib;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One-shot {@code AudioLib.convert(...)} conversions, including the native
+ * encoder setup and file round trip they perform on every call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+@State(Scope.Thread)
+public class AudioBuilderBenchmark {
+
+    @Param({ "8000", "16000", "48000" })
+    public int sampleRate;
+
+    @Param({ "20", "1000" })
+    public int millis;
+
+    private byte[] pcm;
+    private byte[] alaw;
+    private byte[] ogg;
+
+    @Setup
+    public void setup() {
+        pcm = SpeechSignal.pcmBytes(sampleRate, millis, 3);
+        alaw = SpeechSignal.alaw(millis, 3);
+        ogg = Base64.getDecoder().decode(AudioLib.convert(alaw).fromAlaw().asBase64());
+    }
+
+    @Benchmark
+    public String pcmToOpusBase64() {
+        return AudioLib.convert(pcm).fromPcm(sampleRate, 1).asBase64();
+    }
+
+    @Benchmark
+    public String alawToOpusBase64() {
+        return AudioLib.convert(alaw).fromAlaw().withSampleRate(8000).asBase64();
+    }
+
+    @Benchmark
+    public String opusToAlawBase64() {
+        return AudioLib.convert(ogg).fromOpus().asAlawBase64();
+    }
+}
@@ -0,0 +1,46 @@
+package io.github.kinsleykajiva.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of {@code benchmarks.jar}.
+ * <p>
+ * Accepts the usual JMH command line (benchmark regexps, {@code -f},
+ * {@code -wi}, ...) and adds two defaults so every run is comparable:
+ * the GC/allocation profiler is always attached, and results are written as
+ * JSON to {@code jmh-result.json} unless {@code -rf}/{@code -rff} say
+ * otherwise.
+ *
+ * <pre>
+ * java -jar jopus-benchmarks/target/benchmarks.jar OpusChunk -rff opus.json
+ * </pre>
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cli = new CommandLineOptions(args);
+
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(cli);
+        builder.addProfiler(GCProfiler.class);
+        if (!cli.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+        if (!cli.getResult().hasValue()) {
+            builder.result("jmh-result.json");
+        }
+        if (cli.getIncludes().isEmpty()) {
+            builder.include(BenchmarkRunner.class.getPackageName() + ".*");
+        }
+
+        Options options = builder.build();
+        new Runner(options).run();
+    }
+}
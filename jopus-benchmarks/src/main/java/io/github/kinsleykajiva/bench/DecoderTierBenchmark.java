@@ -0,0 +1,102 @@
+package io.github.kinsleykajiva.bench;
+
+import io.github.kinsleykajiva.opus.DecoderTier;
+import io.github.kinsleykajiva.opus.OpusCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one 20 ms frame at each {@link DecoderTier}: a received packet
+ * ({@code decode}, where LACE and NoLACE run) and a lost one
+ * ({@code conceal}, where deep PLC runs). Concealment alternates with real
+ * packets, as under 50% loss, so it always extrapolates from fresh audio.
+ * The results are the per-frame costs a {@code DecoderTierGovernor} works
+ * with; tiers that libopus was built without cost the same as the standard
+ * tier.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+@State(Scope.Thread)
+public class DecoderTierBenchmark {
+
+    private static final int FRAMES = 500; // 10 s of audio
+    private static final int FRAME_SAMPLES = 160;
+
+    @Param({ "STANDARD", "DEEP_PLC", "LACE", "NOLACE" })
+    public DecoderTier tier;
+
+    private Arena arena;
+    private MemorySegment decoder;
+    private MemorySegment[] packets;
+    private MemorySegment pcm;
+    private int frame;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        byte[] speech = SpeechSignal.pcmBytes(8000, FRAMES * 20, 7);
+        arena = Arena.ofConfined();
+        packets = new MemorySegment[FRAMES];
+        pcm = arena.allocate(ValueLayout.JAVA_SHORT, FRAME_SAMPLES);
+
+        MemorySegment encoder = OpusCodec.createEncoder();
+        byte[] out = new byte[4000];
+        for (int i = 0; i < FRAMES; i++) {
+            byte[] chunk = Arrays.copyOfRange(speech, i * FRAME_SAMPLES * 2, (i + 1) * FRAME_SAMPLES * 2);
+            int len = OpusCodec.encodeChunk(encoder, chunk, out);
+            packets[i] = arena.allocate(len);
+            MemorySegment.copy(out, 0, packets[i], ValueLayout.JAVA_BYTE, 0, len);
+        }
+        OpusCodec.destroyEncoder(encoder);
+
+        decoder = OpusCodec.createDecoder();
+        if (OpusCodec.setDecoderTier(decoder, tier) != tier) {
+            System.err.println("Warning: libopus has no decoder tiers; " + tier + " measures the standard tier");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        OpusCodec.destroyDecoder(decoder);
+        arena.close();
+    }
+
+    private int nextFrame() {
+        int current = frame;
+        frame = (frame + 1) % FRAMES;
+        return current;
+    }
+
+    @Benchmark
+    public int decode() {
+        return OpusCodec.decodeFrame(decoder, packets[nextFrame()], pcm, FRAME_SAMPLES);
+    }
+
+    @Benchmark
+    public int conceal() {
+        int current = nextFrame();
+        if ((current & 1) == 0) {
+            return OpusCodec.decodeFrame(decoder, packets[current], pcm, FRAME_SAMPLES);
+        }
+        return OpusCodec.decodeFrame(decoder, MemorySegment.NULL, pcm, FRAME_SAMPLES);
+    }
+}
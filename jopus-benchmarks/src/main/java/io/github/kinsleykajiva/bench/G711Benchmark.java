@@ -0,0 +1,63 @@
+package io.github.kinsleykajiva.bench;
+
+import io.github.kinsleykajiva.G711Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk {@link G711Utils} conversions over 20 ms frames and one-second
+ * buffers of 8 kHz speech.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+@State(Scope.Thread)
+public class G711Benchmark {
+
+    @Param({ "20", "1000" })
+    public int millis;
+
+    private byte[] alaw;
+    private byte[] ulaw;
+    private byte[] pcm;
+
+    @Setup
+    public void setup() {
+        alaw = SpeechSignal.alaw(millis, 1);
+        ulaw = SpeechSignal.ulaw(millis, 1);
+        pcm = SpeechSignal.pcmBytes(8000, millis, 1);
+    }
+
+    @Benchmark
+    public byte[] alawToPcm() {
+        return G711Utils.aLawToPcm(alaw);
+    }
+
+    @Benchmark
+    public byte[] ulawToPcm() {
+        return G711Utils.uLawToPcm(ulaw);
+    }
+
+    @Benchmark
+    public byte[] pcmToAlaw() {
+        return G711Utils.pcmToAlaw(pcm);
+    }
+
+    @Benchmark
+    public byte[] pcmToUlaw() {
+        return G711Utils.pcmToUlaw(pcm);
+    }
+}
@@ -0,0 +1,55 @@
+package io.github.kinsleykajiva.bench;
+
+import io.github.kinsleykajiva.AudioLib;
+import io.github.kinsleykajiva.opus.OpusCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ogg Opus decode through libopusfile ({@code OpusCodec.convertOpusToG711}
+ * with an Ogg payload), for streams encoded from 8, 16 and 48 kHz speech.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+@State(Scope.Thread)
+public class OggDecodeBenchmark {
+
+    @Param({ "8000", "16000", "48000" })
+    public int sampleRate;
+
+    @Param({ "1000", "10000" })
+    public int millis;
+
+    private String oggBase64;
+
+    @Setup
+    public void setup() {
+        byte[] pcm = SpeechSignal.pcmBytes(sampleRate, millis, 5);
+        oggBase64 = AudioLib.convert(pcm).fromPcm(sampleRate, 1).asBase64();
+        OpusCodec.loadOggDecodeLibraries();
+    }
+
+    @Benchmark
+    public String oggToAlaw() {
+        return OpusCodec.convertOpusToG711(oggBase64, true);
+    }
+
+    @Benchmark
+    public String oggToUlaw() {
+        return OpusCodec.convertOpusToG711(oggBase64, false);
+    }
+}
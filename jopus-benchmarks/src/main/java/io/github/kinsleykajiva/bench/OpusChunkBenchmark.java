@@ -0,0 +1,191 @@
+package io.github.kinsleykajiva.bench;
+
+import io.github.kinsleykajiva.opus.EncoderProfile;
+import io.github.kinsleykajiva.opus.OpusCodec;
+import io.github.kinsleykajiva.opus.SilenceSuppressor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.kinsleykajiva.opus.opus_h.*;
+
+/**
+ * Per-frame streaming paths of {@link OpusCodec}: the 8 kHz byte[] paths
+ * {@code encodeChunk}, {@code convertG711Chunk} (with and without the silence
+ * fast path, in {@link Suppression}) and {@code decodeChunk}, and the native
+ * {@code encodeFrame}/{@code decodeFrame} paths at 8, 16 and 48 kHz (in
+ * {@link Rate}). Each invocation processes the next 20 ms frame of a looping
+ * speech signal, so the codec state evolves as it would on a call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+@State(Scope.Thread)
+public class OpusChunkBenchmark {
+
+    private static final int FRAMES = 500; // 10 s of audio
+    private static final int FRAME_SAMPLES = 160;
+
+    private MemorySegment encoder;
+    private MemorySegment decoder;
+    private byte[][] pcmFrames;
+    private byte[][] alawFrames;
+    private byte[][] opusFrames;
+    private final byte[] outBuffer = new byte[4000];
+    private final byte[] pcmOut = new byte[1920];
+    private int frame;
+
+    /**
+     * The silence fast path, which only {@code convertG711Chunk} uses.
+     */
+    @State(Scope.Thread)
+    public static class Suppression {
+
+        @Param({ "true", "false" })
+        public boolean silenceSuppression;
+
+        private SilenceSuppressor suppressor;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            suppressor = silenceSuppression ? new SilenceSuppressor(EncoderProfile.DEFAULT) : null;
+        }
+    }
+
+    /**
+     * A codec pair and speech at one sample rate, for the native frame paths.
+     */
+    @State(Scope.Thread)
+    public static class Rate {
+
+        @Param({ "8000", "16000", "48000" })
+        public int sampleRate;
+
+        private Arena arena;
+        private MemorySegment encoder;
+        private MemorySegment decoder;
+        private MemorySegment[] pcmFrames;
+        private MemorySegment[] packets;
+        private MemorySegment out;
+        private MemorySegment pcmOut;
+        private int frameSamples;
+        private int frame;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            frameSamples = sampleRate / 50;
+            short[] speech = SpeechSignal.pcm(sampleRate, FRAMES * 20, 7);
+            arena = Arena.ofConfined();
+            pcmFrames = new MemorySegment[FRAMES];
+            packets = new MemorySegment[FRAMES];
+            out = arena.allocate(4000);
+            pcmOut = arena.allocate(ValueLayout.JAVA_SHORT, frameSamples);
+
+            encoder = OpusCodec.createEncoder(EncoderProfile.DEFAULT.withSampleRate(sampleRate));
+            for (int i = 0; i < FRAMES; i++) {
+                pcmFrames[i] = arena.allocate(ValueLayout.JAVA_SHORT, frameSamples);
+                MemorySegment.copy(speech, i * frameSamples, pcmFrames[i], ValueLayout.JAVA_SHORT, 0, frameSamples);
+                int len = OpusCodec.encodeFrame(encoder, pcmFrames[i], frameSamples, out);
+                packets[i] = arena.allocate(len);
+                MemorySegment.copy(out, 0, packets[i], 0, len);
+            }
+            OpusCodec.resetEncoder(encoder);
+
+            // OpusCodec decoders run at 8 kHz only
+            MemorySegment error = arena.allocate(C_INT);
+            decoder = opus_decoder_create(sampleRate, 1, error);
+            if (decoder.equals(MemorySegment.NULL)) {
+                throw new RuntimeException("Failed to create Opus decoder: Error code " + error.get(C_INT, 0));
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            OpusCodec.destroyEncoder(encoder);
+            opus_decoder_destroy(decoder);
+            arena.close();
+        }
+
+        private int nextFrame() {
+            int current = frame;
+            frame = (frame + 1) % FRAMES;
+            return current;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        byte[] pcm = SpeechSignal.pcmBytes(8000, FRAMES * 20, 7);
+        byte[] alaw = SpeechSignal.alaw(FRAMES * 20, 7);
+        pcmFrames = new byte[FRAMES][];
+        alawFrames = new byte[FRAMES][];
+        opusFrames = new byte[FRAMES][];
+
+        encoder = OpusCodec.createEncoder();
+        decoder = OpusCodec.createDecoder();
+
+        for (int i = 0; i < FRAMES; i++) {
+            pcmFrames[i] = Arrays.copyOfRange(pcm, i * FRAME_SAMPLES * 2, (i + 1) * FRAME_SAMPLES * 2);
+            alawFrames[i] = Arrays.copyOfRange(alaw, i * FRAME_SAMPLES, (i + 1) * FRAME_SAMPLES);
+            int len = OpusCodec.encodeChunk(encoder, pcmFrames[i], outBuffer);
+            opusFrames[i] = Arrays.copyOf(outBuffer, len);
+        }
+        OpusCodec.resetEncoder(encoder);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        OpusCodec.destroyEncoder(encoder);
+        OpusCodec.destroyDecoder(decoder);
+    }
+
+    private int nextFrame() {
+        int current = frame;
+        frame = (frame + 1) % FRAMES;
+        return current;
+    }
+
+    @Benchmark
+    public int encodeChunk() {
+        return OpusCodec.encodeChunk(encoder, pcmFrames[nextFrame()], outBuffer);
+    }
+
+    @Benchmark
+    public int convertG711Chunk(Suppression suppression) {
+        return OpusCodec.convertG711Chunk(encoder, alawFrames[nextFrame()], true, outBuffer,
+                suppression.suppressor);
+    }
+
+    @Benchmark
+    public int decodeChunk() {
+        return OpusCodec.decodeChunk(decoder, opusFrames[nextFrame()], pcmOut);
+    }
+
+    @Benchmark
+    public int encodeFrame(Rate rate) {
+        return OpusCodec.encodeFrame(rate.encoder, rate.pcmFrames[rate.nextFrame()], rate.frameSamples, rate.out);
+    }
+
+    @Benchmark
+    public int decodeFrame(Rate rate) {
+        return OpusCodec.decodeFrame(rate.decoder, rate.packets[rate.nextFrame()], rate.pcmOut, rate.frameSamples);
+    }
+}
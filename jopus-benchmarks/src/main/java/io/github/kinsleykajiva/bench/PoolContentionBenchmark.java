@@ -0,0 +1,87 @@
+package io.github.kinsleykajiva.bench;
+
+import io.github.kinsleykajiva.opus.OpusCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.foreign.MemorySegment;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoder and decoder pool borrow/return under contention: 8 threads share
+ * pools smaller than, equal to and larger than the thread count.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+@Threads(8)
+public class PoolContentionBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Pools {
+        @Param({ "2", "8", "32" })
+        public int capacity;
+
+        OpusCodec.OpusEncoderPool encoders;
+        OpusCodec.OpusDecoderPool decoders;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            encoders = new OpusCodec.OpusEncoderPool(capacity);
+            decoders = new OpusCodec.OpusDecoderPool(capacity);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            encoders.close();
+            decoders.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Frame {
+        byte[] alaw;
+        final byte[] outBuffer = new byte[4000];
+
+        @Setup(Level.Trial)
+        public void setup() {
+            alaw = SpeechSignal.alaw(20, Thread.currentThread().threadId());
+        }
+    }
+
+    @Benchmark
+    public void borrowReturnEncoder(Pools pools) {
+        MemorySegment encoder = pools.encoders.borrowEncoder();
+        pools.encoders.returnEncoder(encoder);
+    }
+
+    @Benchmark
+    public void borrowReturnDecoder(Pools pools) {
+        MemorySegment decoder = pools.decoders.borrowDecoder();
+        pools.decoders.returnDecoder(decoder);
+    }
+
+    @Benchmark
+    public int borrowEncodeReturn(Pools pools, Frame frame) {
+        MemorySegment encoder = pools.encoders.borrowEncoder();
+        try {
+            return OpusCodec.convertG711Chunk(encoder, frame.alaw, true, frame.outBuffer);
+        } finally {
+            pools.encoders.returnEncoder(encoder);
+        }
+    }
+}
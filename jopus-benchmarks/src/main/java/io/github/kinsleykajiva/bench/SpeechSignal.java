@@ -0,0 +1,106 @@
+package io.github.kinsleykajiva.bench;
+
+import io.github.kinsleykajiva.G711Utils;
+
+import java.util.Random;
+
+/**
+ * Deterministic speech-like test signals.
+ * <p>
+ * Digital silence lets the encoder take shortcuts that real calls never
+ * allow, so the benchmarks feed a synthetic talker instead: a voiced source
+ * with a drifting pitch and harmonics shaped by two moving formants, an
+ * amplitude envelope at syllable rate, short unvoiced bursts, pauses between
+ * phrases, and a low background noise floor.
+ */
+public final class SpeechSignal {
+
+    private SpeechSignal() {
+    }
+
+    /**
+     * @param sampleRate Output sample rate in Hz
+     * @param millis     Signal duration
+     * @param seed       Seed, so every run and fork sees the same audio
+     * @return Mono 16-bit PCM samples
+     */
+    public static short[] pcm(int sampleRate, int millis, long seed) {
+        Random random = new Random(seed);
+        int length = sampleRate * millis / 1000;
+        short[] out = new short[length];
+        double phase = 0;
+        int harmonics = Math.max(1, (int) (sampleRate / 2 / 250.0));
+
+        for (int i = 0; i < length; i++) {
+            double t = (double) i / sampleRate;
+
+            // 1.6 s phrases followed by 0.4 s pauses
+            double phrase = t % 2.0;
+            boolean talking = phrase < 1.6;
+
+            // Pitch drifts between ~110 and ~190 Hz
+            double pitch = 150 + 40 * Math.sin(2 * Math.PI * 0.7 * t);
+            phase += 2 * Math.PI * pitch / sampleRate;
+
+            // Two formants sweeping like changing vowels
+            double f1 = 500 + 250 * Math.sin(2 * Math.PI * 3.1 * t);
+            double f2 = 1500 + 600 * Math.sin(2 * Math.PI * 2.3 * t + 1.0);
+
+            double voiced = 0;
+            for (int h = 1; h <= harmonics; h++) {
+                double freq = pitch * h;
+                if (freq >= sampleRate / 2.0) {
+                    break;
+                }
+                double gain = formant(freq, f1, 90) + 0.6 * formant(freq, f2, 120);
+                voiced += gain * Math.sin(h * phase) / h;
+            }
+
+            // Syllable-rate envelope (~4 Hz)
+            double envelope = 0.5 * (1 - Math.cos(2 * Math.PI * 4 * phrase));
+            // Short unvoiced (fricative) burst at the start of every other syllable
+            boolean fricative = ((int) (phrase * 4) % 2 == 1) && (phrase * 4 % 1.0) < 0.15;
+
+            double sample = 0;
+            if (talking) {
+                sample = fricative ? 0.15 * random.nextGaussian() : 0.45 * envelope * voiced;
+            }
+            sample += 0.002 * random.nextGaussian();
+
+            out[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample * 32767));
+        }
+        return out;
+    }
+
+    /**
+     * @return The same signal as little-endian 16-bit PCM bytes
+     */
+    public static byte[] pcmBytes(int sampleRate, int millis, long seed) {
+        short[] pcm = pcm(sampleRate, millis, seed);
+        byte[] bytes = new byte[pcm.length * 2];
+        for (int i = 0; i < pcm.length; i++) {
+            bytes[i * 2] = (byte) (pcm[i] & 0xFF);
+            bytes[i * 2 + 1] = (byte) ((pcm[i] >> 8) & 0xFF);
+        }
+        return bytes;
+    }
+
+    /**
+     * @return 8 kHz speech encoded as G.711 A-law
+     */
+    public static byte[] alaw(int millis, long seed) {
+        return G711Utils.pcmToAlaw(pcm(8000, millis, seed));
+    }
+
+    /**
+     * @return 8 kHz speech encoded as G.711 u-law
+     */
+    public static byte[] ulaw(int millis, long seed) {
+        return G711Utils.pcmToUlaw(pcm(8000, millis, seed));
+    }
+
+    private static double formant(double freq, double centre, double bandwidth) {
+        double d = (freq - centre) / bandwidth;
+        return 1 / (1 + d * d);
+    }
+}
@@ -0,0 +1,310 @@
+package io.github.kinsleykajiva.demo;
+
+import io.github.kinsleykajiva.opus.EncoderHandle;
+import io.github.kinsleykajiva.opus.OggOpusWriter;
+import io.github.kinsleykajiva.opus.OpusCodec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import static io.github.kinsleykajiva.opus.opus_h.OPUS_GET_LOOKAHEAD_REQUEST;
+
+/**
+ * Converts a directory tree of raw G.711 files to Ogg Opus at full machine
+ * speed.
+ * <p>
+ * Files are discovered lazily and handed to a fixed worker pool; at most two
+ * files per worker are queued, so walking a tree of tens of thousands of files
+ * never runs ahead of the encoders. Each worker streams its file through a
+ * pooled encoder one 20 ms frame at a time and writes Ogg pages as they fill,
+ * so memory per file is a few KB regardless of its length, and no temp files
+ * are used beyond the output's own {@code .part} file.
+ * <p>
+ * Completed files are appended to a journal (size, modification time and
+ * relative path). A rerun skips every file already in the journal, so an
+ * interrupted job resumes where it stopped.
+ *
+ * <pre>
+ * java -cp jopus-demo-app.jar io.github.kinsleykajiva.demo.BatchTranscoder \
+ *     /archive/g711 /archive/opus --law alaw --workers 16
+ * </pre>
+ */
+public class BatchTranscoder {
+
+    private static final int FRAME_BYTES = 160; // 20 ms of 8 kHz G.711
+    private static final int GRANULE_PER_FRAME = 960; // 20 ms at 48 kHz
+    private static final int MAX_PACKET_BYTES = 4000;
+    private static final String JOURNAL_NAME = ".jopus-journal";
+
+    /**
+     * Totals for one run.
+     *
+     * @param audioSeconds Duration of the audio converted in this run
+     */
+    public record Summary(long converted, long skipped, long failed, double audioSeconds, double wallSeconds) {
+
+        public double filesPerSecond() {
+            return wallSeconds == 0 ? 0 : converted / wallSeconds;
+        }
+
+        public double audioHoursPerSecond() {
+            return wallSeconds == 0 ? 0 : audioSeconds / 3600.0 / wallSeconds;
+        }
+    }
+
+    private final Path inputDir;
+    private final Path outputDir;
+    private final Boolean aLawOverride;
+    private final int workers;
+    private final Path journalPath;
+
+    private final LongAdder converted = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder inputBytes = new LongAdder();
+
+    /**
+     * @param aLaw    True for A-law, False for u-law, or null to decide per file
+     *                from its extension ({@code .ulaw}, {@code .ul},
+     *                {@code .pcmu}, {@code .mulaw} are u-law; anything else
+     *                is A-law)
+     * @param workers Number of concurrent conversions and pooled encoders
+     */
+    public BatchTranscoder(Path inputDir, Path outputDir, Boolean aLaw, int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Workers must be at least 1: " + workers);
+        }
+        this.inputDir = inputDir;
+        this.outputDir = outputDir;
+        this.aLawOverride = aLaw;
+        this.workers = workers;
+        this.journalPath = outputDir.resolve(JOURNAL_NAME);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: BatchTranscoder <inputDir> <outputDir> [--law alaw|ulaw] [--workers N]");
+            System.exit(2);
+        }
+        Boolean aLaw = null;
+        int workers = Runtime.getRuntime().availableProcessors();
+        for (int i = 2; i < args.length; i += 2) {
+            String value = i + 1 < args.length ? args[i + 1] : "";
+            switch (args[i]) {
+                case "--law" -> aLaw = !"ulaw".equalsIgnoreCase(value);
+                case "--workers" -> workers = Integer.parseInt(value);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        BatchTranscoder transcoder = new BatchTranscoder(Paths.get(args[0]), Paths.get(args[1]), aLaw, workers);
+        Summary summary = transcoder.run();
+        System.out.printf(Locale.ROOT,
+                "Done: %d converted, %d skipped (journal), %d failed in %.1f s%n"
+                        + "Throughput: %.2f files/s, %.3f audio-hours/s (%.0fx real time)%n",
+                summary.converted(), summary.skipped(), summary.failed(), summary.wallSeconds(),
+                summary.filesPerSecond(), summary.audioHoursPerSecond(),
+                summary.wallSeconds() == 0 ? 0 : summary.audioSeconds() / summary.wallSeconds());
+        System.exit(summary.failed() == 0 ? 0 : 1);
+    }
+
+    /**
+     * Converts every file under the input directory that is not yet in the
+     * journal.
+     */
+    public Summary run() throws IOException, InterruptedException {
+        OpusCodec.loadNativeLibraries();
+        Files.createDirectories(outputDir);
+        Set<String> done = loadJournal();
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        // Bounds queued work so the directory walk cannot outrun the encoders
+        Semaphore inFlight = new Semaphore(workers * 2);
+        OpusCodec.OpusEncoderPool encoders = new OpusCodec.OpusEncoderPool(workers, "batch-transcoder");
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "batch-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        progress.scheduleAtFixedRate(() -> printProgress(start), 5, 5, TimeUnit.SECONDS);
+
+        int lookahead;
+        EncoderHandle probe = encoders.borrowEncoderHandle();
+        try {
+            lookahead = OpusCodec.getEncoderCtl(probe.acquire(), OPUS_GET_LOOKAHEAD_REQUEST());
+        } finally {
+            probe.release();
+            probe.close();
+        }
+        int preSkip = lookahead * 6; // 8 kHz lookahead in 48 kHz samples
+        int flushFrames = (lookahead + FRAME_BYTES - 1) / FRAME_BYTES;
+
+        try (BufferedWriter journal = Files.newBufferedWriter(journalPath, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                Stream<Path> files = Files.walk(inputDir)) {
+            for (Path input : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                String entry = journalEntry(input);
+                if (done.contains(entry)) {
+                    skipped.increment();
+                    continue;
+                }
+                inFlight.acquire();
+                pool.execute(() -> {
+                    try {
+                        convert(input, encoders, preSkip, flushFrames);
+                        synchronized (journal) {
+                            journal.write(entry);
+                            journal.newLine();
+                            journal.flush();
+                        }
+                        converted.increment();
+                    } catch (Exception e) {
+                        failed.increment();
+                        System.err.println("Failed to convert " + input + ": " + e.getMessage());
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } finally {
+            pool.shutdownNow();
+            progress.shutdownNow();
+            encoders.close();
+        }
+
+        double wallSeconds = (System.nanoTime() - start) / 1e9;
+        return new Summary(converted.sum(), skipped.sum(), failed.sum(), inputBytes.sum() / 8000.0, wallSeconds);
+    }
+
+    private void convert(Path input, OpusCodec.OpusEncoderPool encoders, int preSkip, int flushFrames)
+            throws IOException {
+        boolean aLaw = aLawOverride != null ? aLawOverride : !isULawName(input.getFileName().toString());
+        byte idle = aLaw ? (byte) 0xD5 : (byte) 0xFF;
+        Path output = outputPath(input);
+        Files.createDirectories(output.getParent());
+        Path partial = output.resolveSibling(output.getFileName() + ".part");
+
+        byte[] frame = new byte[FRAME_BYTES];
+        byte[] packet = new byte[MAX_PACKET_BYTES];
+        long samples = 0;
+        try (EncoderHandle encoder = encoders.borrowEncoderHandle();
+                InputStream in = new BufferedInputStream(Files.newInputStream(input), 64 * 1024);
+                Arena arena = Arena.ofConfined()) {
+            // Native frame, PCM and packet buffers, reused for every frame
+            Scratch scratch = new Scratch(arena.allocate(FRAME_BYTES), arena.allocate(ValueLayout.JAVA_SHORT,
+                    FRAME_BYTES), arena.allocate(MAX_PACKET_BYTES));
+            MemorySegment nativeEncoder = encoder.acquire();
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(partial), 64 * 1024)) {
+                // A pooled encoder carries the previous file's history
+                OpusCodec.resetEncoder(nativeEncoder);
+                OggOpusWriter writer = new OggOpusWriter(out, 1, 8000, preSkip, input.hashCode());
+                long granule = 0;
+                int read;
+                while ((read = in.readNBytes(frame, 0, FRAME_BYTES)) > 0) {
+                    samples += read;
+                    if (read < FRAME_BYTES) {
+                        Arrays.fill(frame, read, FRAME_BYTES, idle);
+                    }
+                    granule += GRANULE_PER_FRAME;
+                    writer.writePacket(packet, encodeFrame(nativeEncoder, scratch, frame, aLaw, packet), granule);
+                }
+                // Push the tail of the audio out of the encoder lookahead
+                Arrays.fill(frame, idle);
+                for (int i = 0; i < flushFrames; i++) {
+                    granule += GRANULE_PER_FRAME;
+                    writer.writePacket(packet, encodeFrame(nativeEncoder, scratch, frame, aLaw, packet), granule);
+                }
+                writer.finish(preSkip + samples * 6);
+            } finally {
+                encoder.release();
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+
+        try {
+            Files.move(partial, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(partial, output, StandardCopyOption.REPLACE_EXISTING);
+        }
+        inputBytes.add(samples);
+    }
+
+    private record Scratch(MemorySegment g711, MemorySegment pcm, MemorySegment packet) {
+    }
+
+    private static int encodeFrame(MemorySegment encoder, Scratch scratch, byte[] frame, boolean aLaw,
+            byte[] packet) {
+        MemorySegment.copy(frame, 0, scratch.g711(), ValueLayout.JAVA_BYTE, 0, FRAME_BYTES);
+        int len = OpusCodec.convertG711Frame(encoder, scratch.g711(), aLaw, scratch.pcm(), scratch.packet(), null);
+        if (len < 0) {
+            throw new RuntimeException("Opus encoding failed: " + len);
+        }
+        MemorySegment.copy(scratch.packet(), ValueLayout.JAVA_BYTE, 0, packet, 0, len);
+        return len;
+    }
+
+    // Keeps the source extension so call.alaw and call.ulaw cannot both land on call.opus
+    private Path outputPath(Path input) {
+        return outputDir.resolve(inputDir.relativize(input) + ".opus");
+    }
+
+    private static boolean isULawName(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        return lower.endsWith(".ulaw") || lower.endsWith(".ul") || lower.endsWith(".pcmu")
+                || lower.endsWith(".mulaw");
+    }
+
+    // Size and mtime make an edited input count as new work
+    private String journalEntry(Path input) throws IOException {
+        return Files.size(input) + "\t" + Files.getLastModifiedTime(input).toMillis() + "\t"
+                + inputDir.relativize(input);
+    }
+
+    private Set<String> loadJournal() throws IOException {
+        Set<String> done = ConcurrentHashMap.newKeySet();
+        if (Files.exists(journalPath)) {
+            try (Stream<String> lines = Files.lines(journalPath, StandardCharsets.UTF_8)) {
+                lines.filter(line -> !line.isBlank()).forEach(done::add);
+            }
+        }
+        return done;
+    }
+
+    private void printProgress(long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double audioHours = inputBytes.sum() / 8000.0 / 3600.0;
+        System.out.printf(Locale.ROOT, "[%6.0f s] %d converted, %d skipped, %d failed, %.2f files/s, "
+                + "%.3f audio-hours/s%n", seconds, converted.sum(), skipped.sum(), failed.sum(),
+                converted.sum() / seconds, audioHours / seconds);
+    }
+}
@@ -0,0 +1,312 @@
+package io.github.kinsleykajiva.demo;
+
+import io.github.kinsleykajiva.AudioBuilder;
+import io.github.kinsleykajiva.G711Utils;
+import io.github.kinsleykajiva.metrics.LatencyHistogram;
+import io.github.kinsleykajiva.opus.OpusCodec;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Real-time capacity test: how many simultaneous 20 ms G.711 to Opus call
+ * legs this machine sustains before frames miss their deadline.
+ * <p>
+ * Each simulated leg owns a streaming encoder from {@link AudioBuilder#stream()}
+ * and a decoder from an {@link OpusCodec.OpusDecoderPool}. Every 20 ms it
+ * encodes one A-law frame and decodes the packet back to A-law, as a gateway
+ * would for both directions of a call. Frame latency is measured from the
+ * frame's scheduled time, so scheduling lag counts against the deadline just
+ * as it would for a real call.
+ * <p>
+ * The harness ramps the number of legs until a step misses its budget and
+ * writes every step to a JSON report.
+ *
+ * <pre>
+ * java -cp jopus-demo-app.jar io.github.kinsleykajiva.demo.LoadHarness \
+ *     --start 50 --step 50 --max 2000 --duration 20 --threads virtual --report load-report.json
+ * </pre>
+ */
+public class LoadHarness {
+
+    private static final int FRAME_SAMPLES = 160; // 20 ms at 8 kHz
+    private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final int MAX_PACKET_BYTES = 4000;
+
+    record Config(int start, int step, int max, int durationSeconds, int warmupSeconds, boolean virtualThreads,
+            long deadlineNanos, double missBudget, Path report) {
+
+        static Config parse(String[] args) {
+            int start = 10;
+            int step = 10;
+            int max = 1000;
+            int duration = 10;
+            int warmup = 2;
+            boolean virtual = true;
+            double deadlineMs = 20;
+            double missBudget = 0.001;
+            Path report = Paths.get("load-report.json");
+            for (int i = 0; i < args.length; i++) {
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                switch (args[i]) {
+                    case "--start" -> start = Integer.parseInt(value);
+                    case "--step" -> step = Integer.parseInt(value);
+                    case "--max" -> max = Integer.parseInt(value);
+                    case "--duration" -> duration = Integer.parseInt(value);
+                    case "--warmup" -> warmup = Integer.parseInt(value);
+                    case "--threads" -> virtual = !"platform".equals(value);
+                    case "--deadline-ms" -> deadlineMs = Double.parseDouble(value);
+                    case "--miss-budget" -> missBudget = Double.parseDouble(value);
+                    case "--report" -> report = Paths.get(value);
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+                i++;
+            }
+            if (start < 1 || step < 1 || max < start || duration < 1 || warmup < 0) {
+                throw new IllegalArgumentException("Invalid ramp: start=" + start + " step=" + step + " max=" + max
+                        + " duration=" + duration + " warmup=" + warmup);
+            }
+            return new Config(start, step, max, duration, warmup, virtual, (long) (deadlineMs * 1_000_000),
+                    missBudget, report);
+        }
+    }
+
+    /**
+     * Outcome of running a fixed number of legs for one step of the ramp.
+     *
+     * @param cpuPerLeg Fraction of one core used per leg
+     */
+    record StepResult(int sessions, long frames, long deadlineMisses, long p50Nanos, long p99Nanos,
+            long p999Nanos, long maxNanos, double cpuPerLeg, boolean sustainable) {
+
+        double missRatio() {
+            return frames == 0 ? 0.0 : (double) deadlineMisses / frames;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Config config = Config.parse(args);
+        byte[] speech = syntheticSpeechAlaw(10_000);
+
+        System.out.println("--- Jopus Load Harness ---");
+        System.out.printf("Cores: %d, threads: %s, deadline: %.1f ms, miss budget: %.3f%%%n",
+                Runtime.getRuntime().availableProcessors(), config.virtualThreads() ? "virtual" : "platform",
+                config.deadlineNanos() / 1e6, config.missBudget() * 100);
+
+        // Legs hold their codecs for the whole step, so both pools are sized
+        // for the largest step
+        AudioBuilder.initializePool(config.max());
+        OpusCodec.OpusDecoderPool decoders = new OpusCodec.OpusDecoderPool(config.max(), "load-harness");
+
+        List<StepResult> results = new ArrayList<>();
+        int maxSustainable = 0;
+        try {
+            for (int n = config.start(); n <= config.max(); n += config.step()) {
+                StepResult result = runStep(config, n, speech, decoders);
+                results.add(result);
+                System.out.printf(Locale.ROOT,
+                        "N=%5d  frames=%9d  p50=%7.3f ms  p99=%7.3f ms  p99.9=%7.3f ms  max=%8.3f ms  "
+                                + "misses=%d (%.4f%%)  cpu/leg=%.2f%%  %s%n",
+                        n, result.frames(), result.p50Nanos() / 1e6, result.p99Nanos() / 1e6,
+                        result.p999Nanos() / 1e6, result.maxNanos() / 1e6, result.deadlineMisses(),
+                        result.missRatio() * 100, result.cpuPerLeg() * 100, result.sustainable() ? "OK" : "FAIL");
+                if (!result.sustainable()) {
+                    break;
+                }
+                maxSustainable = n;
+            }
+        } finally {
+            decoders.close();
+        }
+
+        System.out.println("Max sustainable sessions: " + maxSustainable);
+        writeReport(config, results, maxSustainable);
+        System.out.println("Report written to " + config.report().toAbsolutePath());
+    }
+
+    private static StepResult runStep(Config config, int sessions, byte[] speech, OpusCodec.OpusDecoderPool decoders)
+            throws InterruptedException {
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder frames = new LongAdder();
+        LongAdder misses = new LongAdder();
+
+        long begin = System.nanoTime();
+        long measureFrom = begin + TimeUnit.SECONDS.toNanos(config.warmupSeconds());
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(config.durationSeconds());
+
+        List<Thread> threads = new ArrayList<>(sessions);
+        for (int i = 0; i < sessions; i++) {
+            // Spread the legs across the frame period like independent calls
+            long firstFrame = begin + ThreadLocalRandom.current().nextLong(FRAME_NANOS);
+            int offset = ThreadLocalRandom.current().nextInt(speech.length / FRAME_SAMPLES) * FRAME_SAMPLES;
+            Leg leg = new Leg(config.deadlineNanos(), firstFrame, measureFrom, end, speech, offset, decoders,
+                    latency, frames, misses);
+            Thread.Builder builder = config.virtualThreads() ? Thread.ofVirtual() : Thread.ofPlatform().daemon();
+            threads.add(builder.name("leg-" + i).unstarted(leg));
+        }
+
+        long cpuBefore = processCpuNanos();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double cpuSeconds = (processCpuNanos() - cpuBefore) / 1e9;
+        double wallSeconds = (System.nanoTime() - begin) / 1e9;
+        double cpuPerLeg = cpuSeconds / wallSeconds / sessions;
+
+        long frameCount = frames.sum();
+        long missCount = misses.sum();
+        boolean sustainable = frameCount > 0 && (double) missCount / frameCount <= config.missBudget();
+        return new StepResult(sessions, frameCount, missCount, latency.percentile(50), latency.percentile(99),
+                latency.percentile(99.9), latency.max(), cpuPerLeg, sustainable);
+    }
+
+    /**
+     * One paced call leg: encode and decode a frame every 20 ms.
+     */
+    private static final class Leg implements Runnable {
+        private final long deadlineNanos;
+        private final long firstFrame;
+        private final long measureFrom;
+        private final long end;
+        private final byte[] speech;
+        private final OpusCodec.OpusDecoderPool decoders;
+        private final LatencyHistogram latency;
+        private final LongAdder frames;
+        private final LongAdder misses;
+        private int offset;
+
+        Leg(long deadlineNanos, long firstFrame, long measureFrom, long end, byte[] speech, int offset,
+                OpusCodec.OpusDecoderPool decoders, LatencyHistogram latency, LongAdder frames, LongAdder misses) {
+            this.deadlineNanos = deadlineNanos;
+            this.firstFrame = firstFrame;
+            this.measureFrom = measureFrom;
+            this.end = end;
+            this.speech = speech;
+            this.offset = offset;
+            this.decoders = decoders;
+            this.latency = latency;
+            this.frames = frames;
+            this.misses = misses;
+        }
+
+        @Override
+        public void run() {
+            byte[] frame = new byte[FRAME_SAMPLES];
+            byte[] g711Out = new byte[MAX_PACKET_BYTES];
+            MemorySegment decoder = decoders.borrowDecoder();
+            try (AudioBuilder.AudioStreamEncoder encoder = AudioBuilder.stream().withSilenceSuppression()) {
+                long scheduled = firstFrame;
+                while (scheduled < end) {
+                    long wait = scheduled - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                        continue;
+                    }
+
+                    System.arraycopy(speech, offset, frame, 0, FRAME_SAMPLES);
+                    offset = (offset + FRAME_SAMPLES) % speech.length;
+                    byte[] packet = encoder.encodeAlaw(frame);
+                    if (packet.length > 0) {
+                        int len = OpusCodec.convertOpusChunk(decoder, packet, true, g711Out);
+                        if (len < 0) {
+                            throw new RuntimeException("Opus decode error: " + len);
+                        }
+                    }
+
+                    long elapsed = System.nanoTime() - scheduled;
+                    if (scheduled >= measureFrom) {
+                        latency.record(elapsed);
+                        frames.increment();
+                        if (elapsed > deadlineNanos) {
+                            misses.increment();
+                        }
+                    }
+                    scheduled += FRAME_NANOS;
+                }
+            } finally {
+                decoders.returnDecoder(decoder);
+            }
+        }
+    }
+
+    private static long processCpuNanos() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            return os.getProcessCpuTime();
+        }
+        return 0;
+    }
+
+    /**
+     * Phrases of a gliding harmonic tone with pauses and a low noise floor, so
+     * the encoder sees speech-like frames and the silence fast path is
+     * exercised at realistic rates.
+     */
+    static byte[] syntheticSpeechAlaw(int millis) {
+        Random random = new Random(0x5EED);
+        int length = 8000 * millis / 1000;
+        short[] pcm = new short[length];
+        double phase = 0;
+        for (int i = 0; i < length; i++) {
+            double t = i / 8000.0;
+            double phrase = t % 2.0;
+            double pitch = 150 + 40 * Math.sin(2 * Math.PI * 0.7 * t);
+            phase += 2 * Math.PI * pitch / 8000;
+            double voiced = Math.sin(phase) + 0.5 * Math.sin(2 * phase) + 0.25 * Math.sin(3 * phase);
+            double envelope = phrase < 1.6 ? 0.5 * (1 - Math.cos(2 * Math.PI * 4 * phrase)) : 0;
+            double sample = 0.3 * envelope * voiced + 0.002 * random.nextGaussian();
+            pcm[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample * 32767));
+        }
+        return G711Utils.pcmToAlaw(pcm);
+    }
+
+    private static void writeReport(Config config, List<StepResult> results, int maxSustainable) throws IOException {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"cores\": ").append(Runtime.getRuntime().availableProcessors()).append(",\n");
+        json.append("  \"javaVersion\": \"").append(System.getProperty("java.version")).append("\",\n");
+        json.append("  \"threads\": \"").append(config.virtualThreads() ? "virtual" : "platform").append("\",\n");
+        json.append("  \"frameMillis\": 20,\n");
+        json.append("  \"deadlineMillis\": ").append(fmt(config.deadlineNanos() / 1e6)).append(",\n");
+        json.append("  \"missBudget\": ").append(config.missBudget()).append(",\n");
+        json.append("  \"stepDurationSeconds\": ").append(config.durationSeconds()).append(",\n");
+        json.append("  \"maxSustainableSessions\": ").append(maxSustainable).append(",\n");
+        json.append("  \"steps\": [");
+        for (int i = 0; i < results.size(); i++) {
+            StepResult r = results.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"sessions\": ").append(r.sessions())
+                    .append(", \"frames\": ").append(r.frames())
+                    .append(", \"deadlineMisses\": ").append(r.deadlineMisses())
+                    .append(", \"missRatio\": ").append(fmt(r.missRatio()))
+                    .append(", \"p50Millis\": ").append(fmt(r.p50Nanos() / 1e6))
+                    .append(", \"p99Millis\": ").append(fmt(r.p99Nanos() / 1e6))
+                    .append(", \"p999Millis\": ").append(fmt(r.p999Nanos() / 1e6))
+                    .append(", \"maxMillis\": ").append(fmt(r.maxNanos() / 1e6))
+                    .append(", \"cpuPerLeg\": ").append(fmt(r.cpuPerLeg()))
+                    .append(", \"sustainable\": ").append(r.sustainable())
+                    .append('}');
+        }
+        json.append("\n  ]\n}\n");
+        Files.writeString(config.report(), json, StandardCharsets.UTF_8);
+    }
+
+    private static String fmt(double value) {
+        return String.format(Locale.ROOT, "%.6f", value);
+    }
+}
@@ -0,0 +1,252 @@
+package io.github.kinsleykajiva.demo;
+
+import io.github.kinsleykajiva.ratecontrol.DefaultRatePolicy;
+import io.github.kinsleykajiva.ratecontrol.EncoderSettings;
+import io.github.kinsleykajiva.ratecontrol.NetworkFeedback;
+import io.github.kinsleykajiva.ratecontrol.RateControlPolicy;
+import io.github.kinsleykajiva.ratecontrol.RateController;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Deterministic network simulation for {@link RateController} policies.
+ * <p>
+ * One call's packets cross a bottleneck link with a drop-tail queue and then
+ * a path with bursty random loss (a Gilbert-Elliott channel). Once a second
+ * the receiver reports loss, round-trip time (base RTT plus queueing delay)
+ * and, where the scenario provides one, a bandwidth estimate, and the
+ * controller picks new settings. The scenario runs for two minutes:
+ * <ol>
+ * <li>0-30 s: clean 64 kbit/s link with a bandwidth estimate;</li>
+ * <li>30-60 s: bursty loss of a few percent;</li>
+ * <li>60-90 s: the link squeezed to 20 kbit/s;</li>
+ * <li>90-120 s: back to 64 kbit/s with 1% loss and no bandwidth estimate.</li>
+ * </ol>
+ * Packet sizes are modelled from the target bitrate rather than produced by
+ * an encoder, so the run needs no native library and gives the same result
+ * for the same seed on every machine. The adaptive policy is compared with a
+ * fixed one that keeps {@link EncoderSettings#INITIAL}, and the run fails,
+ * exiting with status 1, if {@link DefaultRatePolicy} stops doing its job:
+ * <ul>
+ * <li>its mean bitrate in the squeeze must drop below both the clean phase's
+ * and the squeezed link's rate;</li>
+ * <li>in-band FEC must be on for at least a third of the lossy phase, and
+ * more often than in the clean one;</li>
+ * <li>its end-to-end loss must be below the fixed policy's.</li>
+ * </ul>
+ *
+ * <pre>
+ * java -cp jopus-demo-app.jar io.github.kinsleykajiva.demo.RateControlSimulation --seed 7 --verbose
+ * </pre>
+ */
+public class RateControlSimulation {
+
+    private static final int TICK_MS = 20;
+    private static final int REPORT_MS = 1000;
+    private static final int DURATION_MS = 120_000;
+    private static final int BASE_RTT_MS = 60;
+    // The bottleneck queue holds at most this much of the link's rate
+    private static final int QUEUE_MS = 300;
+    private static final int PHASE_MS = 30_000;
+    private static final int PHASES = DURATION_MS / PHASE_MS;
+    private static final int CLEAN = 0;
+    private static final int LOSSY = 1;
+    private static final int SQUEEZED = 2;
+
+    record Config(long seed, boolean verbose) {
+
+        static Config parse(String[] args) {
+            long seed = 1;
+            boolean verbose = false;
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--seed" -> seed = Long.parseLong(args[++i]);
+                    case "--verbose" -> verbose = true;
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            return new Config(seed, verbose);
+        }
+    }
+
+    /**
+     * Network conditions for one phase of the scenario.
+     *
+     * @param capacity    Bottleneck rate in bits/s
+     * @param goodToBad   Per-packet chance of entering a loss burst
+     * @param badToGood   Per-packet chance of leaving it
+     * @param reportsRate Whether the receiver reports a bandwidth estimate
+     */
+    private record Phase(int capacity, double goodToBad, double badToGood, boolean reportsRate) {
+    }
+
+    private static final Phase[] SCENARIO = {
+            new Phase(64_000, 0.001, 0.5, true),
+            new Phase(64_000, 0.03, 0.25, true),
+            new Phase(20_000, 0.001, 0.5, true),
+            new Phase(64_000, 0.01, 0.5, false),
+    };
+
+    /**
+     * Totals of one run.
+     *
+     * @param phaseBitrate    Mean target bitrate over the reports of each
+     *                        phase
+     * @param phaseFecReports Reports with in-band FEC on, per phase
+     */
+    record Result(long packetsSent, long packetsDelivered, long congestionDrops, long bytesSent, double meanBitrate,
+            long fecReports, double[] phaseBitrate, long[] phaseFecReports) {
+
+        double lossPercent() {
+            return packetsSent == 0 ? 0.0 : 100.0 * (packetsSent - packetsDelivered) / packetsSent;
+        }
+    }
+
+    public static void main(String[] args) {
+        Config config = Config.parse(args);
+        System.out.println("--- Jopus Rate Control Simulation ---");
+        System.out.printf("Seed %d, %d s, reports every %d ms%n", config.seed(), DURATION_MS / 1000, REPORT_MS);
+
+        Result adaptive = run(new DefaultRatePolicy(), config.seed(), config.verbose());
+        Result fixed = run((current, feedback) -> current, config.seed(), false);
+
+        System.out.println();
+        System.out.printf("%-9s %10s %10s %9s %12s %14s %14s %12s%n", "policy", "sent", "delivered", "loss",
+                "queue drops", "target kbit/s", "wire kbit/s", "FEC reports");
+        print("adaptive", adaptive);
+        print("fixed", fixed);
+
+        List<String> failures = check(adaptive, fixed);
+        System.out.println();
+        if (failures.isEmpty()) {
+            System.out.println("All rate control checks passed");
+        } else {
+            failures.forEach(failure -> System.out.println("FAILED: " + failure));
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Compares a run of {@link DefaultRatePolicy} with the fixed baseline.
+     *
+     * @return One message per violated expectation; empty if all hold
+     */
+    static List<String> check(Result adaptive, Result fixed) {
+        List<String> failures = new ArrayList<>();
+        double clean = adaptive.phaseBitrate()[CLEAN];
+        double squeezed = adaptive.phaseBitrate()[SQUEEZED];
+        if (squeezed >= clean || squeezed >= SCENARIO[SQUEEZED].capacity()) {
+            failures.add(String.format(Locale.ROOT,
+                    "bitrate did not drop on the %d bit/s link: %.0f bit/s there, %.0f bit/s on the clean link",
+                    SCENARIO[SQUEEZED].capacity(), squeezed, clean));
+        }
+        long lossyFec = adaptive.phaseFecReports()[LOSSY];
+        long reportsPerPhase = PHASE_MS / REPORT_MS;
+        if (lossyFec * 3 < reportsPerPhase || lossyFec <= adaptive.phaseFecReports()[CLEAN]) {
+            failures.add("in-band FEC was on for " + lossyFec + " of " + reportsPerPhase
+                    + " reports under loss and " + adaptive.phaseFecReports()[CLEAN] + " on the clean link");
+        }
+        if (adaptive.lossPercent() >= fixed.lossPercent()) {
+            failures.add(String.format(Locale.ROOT, "adaptive loss %.2f%% is not below fixed loss %.2f%%",
+                    adaptive.lossPercent(), fixed.lossPercent()));
+        }
+        return failures;
+    }
+
+    private static void print(String name, Result result) {
+        System.out.printf(Locale.ROOT, "%-9s %10d %10d %8.2f%% %12d %14.1f %14.1f %12d%n", name,
+                result.packetsSent(), result.packetsDelivered(), result.lossPercent(), result.congestionDrops(),
+                result.meanBitrate() / 1000, result.bytesSent() * 8.0 / DURATION_MS, result.fecReports());
+    }
+
+    /**
+     * Plays the scenario through one policy.
+     */
+    static Result run(RateControlPolicy policy, long seed, boolean verbose) {
+        Random random = new Random(seed);
+        RateController controller = new RateController(policy, EncoderSettings.INITIAL);
+        if (verbose) {
+            System.out.printf("%6s %9s %7s %7s %9s %5s %6s %7s%n", "time", "link", "loss", "rtt", "bitrate", "fec",
+                    "plan", "packet");
+        }
+
+        double queueBytes = 0;
+        boolean bursting = false;
+        int ticksSincePacket = 0;
+        long sent = 0;
+        long delivered = 0;
+        long drops = 0;
+        long bytes = 0;
+        long fecReports = 0;
+        double bitrateSum = 0;
+        int reports = 0;
+        double[] phaseBitrate = new double[PHASES];
+        int[] phaseReports = new int[PHASES];
+        long[] phaseFecReports = new long[PHASES];
+        long intervalSent = 0;
+        long intervalDelivered = 0;
+
+        for (int ms = 0; ms < DURATION_MS; ms += TICK_MS) {
+            Phase phase = SCENARIO[ms / PHASE_MS];
+            EncoderSettings settings = controller.settings();
+
+            // A packet leaves once it holds frameDurationMs of audio
+            ticksSincePacket++;
+            if (ticksSincePacket * TICK_MS >= settings.frameDurationMs()) {
+                ticksSincePacket = 0;
+                int size = settings.bitrate() * settings.frameDurationMs() / 8000
+                        + DefaultRatePolicy.PACKET_OVERHEAD_BYTES;
+                sent++;
+                intervalSent++;
+                bytes += size;
+                if (queueBytes + size > phase.capacity() / 8.0 * QUEUE_MS / 1000) {
+                    drops++;
+                } else {
+                    queueBytes += size;
+                    bursting = bursting ? random.nextDouble() >= phase.badToGood()
+                            : random.nextDouble() < phase.goodToBad();
+                    // Half the packets in a burst are lost
+                    if (!bursting || random.nextBoolean()) {
+                        delivered++;
+                        intervalDelivered++;
+                    }
+                }
+            }
+            queueBytes = Math.max(0, queueBytes - phase.capacity() / 8.0 * TICK_MS / 1000);
+
+            if ((ms + TICK_MS) % REPORT_MS == 0) {
+                double loss = intervalSent == 0 ? 0.0 : 1.0 - (double) intervalDelivered / intervalSent;
+                int rtt = BASE_RTT_MS + (int) (queueBytes * 8 * 1000 / phase.capacity());
+                // Receivers estimate the link a little under its real rate
+                int available = phase.reportsRate() ? (int) (phase.capacity() * 0.95) : NetworkFeedback.UNKNOWN;
+                EncoderSettings next = controller.onFeedback(new NetworkFeedback(loss, rtt, available));
+                intervalSent = 0;
+                intervalDelivered = 0;
+                // Attributed to the phase the report describes
+                int index = ms / PHASE_MS;
+                reports++;
+                bitrateSum += next.bitrate();
+                phaseReports[index]++;
+                phaseBitrate[index] += next.bitrate();
+                if (next.inbandFec()) {
+                    fecReports++;
+                    phaseFecReports[index]++;
+                }
+                if (verbose) {
+                    System.out.printf(Locale.ROOT, "%5ds %9s %6.1f%% %5dms %9d %5s %5d%% %5dms%n",
+                            (ms + TICK_MS) / 1000, available == NetworkFeedback.UNKNOWN ? "?" : available,
+                            loss * 100, rtt, next.bitrate(), next.inbandFec() ? "on" : "off",
+                            next.packetLossPercent(), next.frameDurationMs());
+                }
+            }
+        }
+        for (int i = 0; i < PHASES; i++) {
+            phaseBitrate[i] = phaseReports[i] == 0 ? 0.0 : phaseBitrate[i] / phaseReports[i];
+        }
+        return new Result(sent, delivered, drops, bytes, reports == 0 ? 0.0 : bitrateSum / reports, fecReports,
+                phaseBitrate, phaseFecReports);
+    }
+}
@@ -0,0 +1,270 @@
+package io.github.kinsleykajiva.demo;
+
+import io.github.kinsleykajiva.AudioBuilder;
+import io.github.kinsleykajiva.engine.IntSessionMap;
+import io.github.kinsleykajiva.rtp.RtpPacket;
+import io.github.kinsleykajiva.rtp.RtpPacketizer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reference G.711 RTP to Opus RTP gateway on real sockets.
+ * <p>
+ * Each worker thread owns one non-blocking {@link DatagramChannel} on its own
+ * port ({@code --port}, {@code --port + 1}, ...) and a selector. When the
+ * channel is readable, the worker drains every queued datagram in one batch
+ * into a single direct buffer, transcodes each through the call's pooled
+ * {@link AudioBuilder.AudioStreamEncoder}, and sends the Opus packet back to
+ * the sender from the call's reusable datagram buffer. The G.711 payload is
+ * read in place from the receive buffer and the Opus packet is encoded in
+ * place into the send buffer, so no payload bytes are copied on the way.
+ * <p>
+ * Calls are looked up per packet by SSRC in an {@link IntSessionMap}, without
+ * boxing or allocation. The gateway keeps the SSRC, as an RTP translator does
+ * (RFC 3550 section 7). Timestamps are rescaled from the 8 kHz G.711 clock to
+ * the 48 kHz Opus clock (RFC 7587), so gaps caused by loss carry through to
+ * the Opus leg. Calls that stop sending are closed after
+ * {@code --idle-seconds}. PCMU (payload type 0) and PCMA (8) with 20 ms
+ * packets are accepted; other packets are counted as rejected.
+ *
+ * <pre>
+ * java -cp jopus-demo-app.jar io.github.kinsleykajiva.demo.RtpGateway \
+ *     --port 40000 --workers 4 --max-calls 2000
+ * </pre>
+ *
+ * Drive it with {@link RtpTrafficGenerator}.
+ */
+public class RtpGateway {
+
+    private static final int FRAME_BYTES = 160; // 20 ms of 8 kHz G.711
+    private static final int OPUS_PAYLOAD_TYPE = 111;
+    private static final int OPUS_TICKS_PER_G711_TICK = 48000 / 8000;
+    private static final int SOCKET_BUFFER_BYTES = 4 * 1024 * 1024;
+
+    record Config(String host, int port, int workers, int maxCalls, int idleSeconds) {
+
+        static Config parse(String[] args) {
+            String host = "127.0.0.1";
+            int port = 40000;
+            int workers = Runtime.getRuntime().availableProcessors();
+            int maxCalls = 1000;
+            int idleSeconds = 5;
+            for (int i = 0; i < args.length; i++) {
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                switch (args[i]) {
+                    case "--host" -> host = value;
+                    case "--port" -> port = Integer.parseInt(value);
+                    case "--workers" -> workers = Integer.parseInt(value);
+                    case "--max-calls" -> maxCalls = Integer.parseInt(value);
+                    case "--idle-seconds" -> idleSeconds = Integer.parseInt(value);
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+                i++;
+            }
+            if (workers < 1 || maxCalls < 1 || idleSeconds < 1) {
+                throw new IllegalArgumentException("Invalid gateway: workers=" + workers + " maxCalls=" + maxCalls
+                        + " idleSeconds=" + idleSeconds);
+            }
+            return new Config(host, port, workers, maxCalls, idleSeconds);
+        }
+
+        /**
+         * Calls admitted by each worker; the total can round up past maxCalls.
+         */
+        int callsPerWorker() {
+            return (maxCalls + workers - 1) / workers;
+        }
+    }
+
+    private final LongAdder packetsIn = new LongAdder();
+    private final LongAdder packetsOut = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final AtomicInteger activeCalls = new AtomicInteger();
+    private volatile boolean running = true;
+
+    public static void main(String[] args) throws Exception {
+        Config config = Config.parse(args);
+        // Every call holds an encoder for its lifetime. Sized for every
+        // worker's admission limit, so a selector thread never waits on it
+        AudioBuilder.initializePool(config.callsPerWorker() * config.workers());
+        new RtpGateway().run(config);
+    }
+
+    private void run(Config config) throws IOException, InterruptedException {
+        int callsPerWorker = config.callsPerWorker();
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < config.workers(); i++) {
+            workers.add(new Worker(new InetSocketAddress(config.host(), config.port() + i), callsPerWorker,
+                    TimeUnit.SECONDS.toNanos(config.idleSeconds())));
+        }
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < workers.size(); i++) {
+            threads.add(Thread.ofPlatform().name("gateway-" + i).start(workers.get(i)));
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            running = false;
+            workers.forEach(worker -> worker.selector.wakeup());
+            for (Thread thread : threads) {
+                try {
+                    thread.join(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }));
+
+        System.out.println("--- Jopus RTP Gateway ---");
+        System.out.printf("Listening on %s:%d-%d, %d workers, up to %d calls%n", config.host(), config.port(),
+                config.port() + config.workers() - 1, config.workers(), config.maxCalls());
+
+        long lastIn = 0;
+        long lastOut = 0;
+        long last = System.nanoTime();
+        while (running) {
+            TimeUnit.SECONDS.sleep(5);
+            long now = System.nanoTime();
+            long in = packetsIn.sum();
+            long out = packetsOut.sum();
+            double seconds = (now - last) / 1e9;
+            System.out.printf(Locale.ROOT, "calls=%d  in=%.0f pkt/s  out=%.0f pkt/s  rejected=%d  errors=%d%n",
+                    activeCalls.get(), (in - lastIn) / seconds, (out - lastOut) / seconds, rejected.sum(),
+                    errors.sum());
+            lastIn = in;
+            lastOut = out;
+            last = now;
+        }
+    }
+
+    /**
+     * State of one call on its worker: the pooled encoder and the outgoing
+     * datagram buffer.
+     */
+    private static final class Call {
+        final AudioBuilder.AudioStreamEncoder encoder = AudioBuilder.stream().withSilenceSuppression();
+        final int ssrc;
+        final RtpPacketizer out;
+        SocketAddress peer;
+        long lastSeen;
+
+        Call(int ssrc) {
+            this.ssrc = ssrc;
+            this.out = new RtpPacketizer(ssrc, OPUS_PAYLOAD_TYPE, 960);
+        }
+    }
+
+    private final class Worker implements Runnable {
+        private final DatagramChannel channel;
+        private final Selector selector;
+        private final int maxCalls;
+        private final long idleNanos;
+        private final IntSessionMap<Call> calls;
+        private final ByteBuffer in = ByteBuffer.allocateDirect(2048);
+        private final RtpPacket rtp = new RtpPacket();
+
+        Worker(InetSocketAddress address, int maxCalls, long idleNanos) throws IOException {
+            this.maxCalls = maxCalls;
+            this.idleNanos = idleNanos;
+            this.calls = new IntSessionMap<>(maxCalls);
+            this.selector = Selector.open();
+            this.channel = DatagramChannel.open();
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, SOCKET_BUFFER_BYTES);
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, SOCKET_BUFFER_BYTES);
+            channel.bind(address);
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+        }
+
+        @Override
+        public void run() {
+            long nextSweep = System.nanoTime() + idleNanos;
+            try (selector; channel) {
+                while (running) {
+                    selector.select(1000);
+                    selector.selectedKeys().clear();
+                    long now = System.nanoTime();
+                    // Drain everything queued on the socket in one batch
+                    SocketAddress from;
+                    while ((from = channel.receive(in.clear())) != null) {
+                        handle(from, in.flip(), now);
+                    }
+                    if (now - nextSweep >= 0) {
+                        closeIdle(now);
+                        nextSweep = now + idleNanos;
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Gateway worker failed: " + e.getMessage());
+            } finally {
+                calls.forEachValue(call -> {
+                    calls.remove(call.ssrc);
+                    call.encoder.close();
+                    activeCalls.decrementAndGet();
+                });
+            }
+        }
+
+        private void handle(SocketAddress from, ByteBuffer datagram, long now) throws IOException {
+            packetsIn.increment();
+            if (!rtp.wrap(datagram) || (rtp.payloadType() != 0 && rtp.payloadType() != 8)
+                    || rtp.payloadLength() != FRAME_BYTES) {
+                rejected.increment();
+                return;
+            }
+            Call call = calls.get(rtp.ssrc());
+            if (call == null) {
+                if (calls.size() >= maxCalls) {
+                    rejected.increment();
+                    return;
+                }
+                call = new Call(rtp.ssrc());
+                calls.put(rtp.ssrc(), call);
+                activeCalls.incrementAndGet();
+            }
+            call.peer = from;
+            call.lastSeen = now;
+
+            int length;
+            try {
+                length = rtp.payloadType() == 8
+                        ? call.encoder.encodeAlaw(rtp.payload(), call.out.payload())
+                        : call.encoder.encodeUlaw(rtp.payload(), call.out.payload());
+            } catch (RuntimeException e) {
+                errors.increment();
+                return;
+            }
+            if (length == 0) {
+                return; // Silent frame under DTX
+            }
+            ByteBuffer packet = call.out.finish(length, rtp.marker(), rtp.timestamp() * OPUS_TICKS_PER_G711_TICK);
+            if (channel.send(packet, call.peer) > 0) {
+                packetsOut.increment();
+            } else {
+                errors.increment(); // Send buffer full
+            }
+        }
+
+        private void closeIdle(long now) {
+            calls.forEachValue(call -> {
+                if (now - call.lastSeen > idleNanos) {
+                    calls.remove(call.ssrc);
+                    call.encoder.close();
+                    activeCalls.decrementAndGet();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package io.github.kinsleykajiva.demo;
+
+import io.github.kinsleykajiva.G711Utils;
+import io.github.kinsleykajiva.metrics.LatencyHistogram;
+import io.github.kinsleykajiva.rtp.RtpPacket;
+import io.github.kinsleykajiva.rtp.RtpPacketizer;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives {@link RtpGateway} with simulated G.711 calls over UDP and measures
+ * what comes back.
+ * <p>
+ * Every call sends one 20 ms A-law (or u-law) RTP packet every 20 ms, with
+ * the calls' send times spread evenly across the frame. Calls are spread over
+ * the gateway's worker ports. Each Opus packet the gateway returns is matched
+ * to the packet it was transcoded from by SSRC and timestamp: the gateway
+ * keeps the SSRC and rescales the 8 kHz timestamp to 48 kHz. Latency is the
+ * time from sending the G.711 packet to receiving its Opus packet, so it
+ * includes both socket hops and any queueing in the gateway. Loss is measured
+ * over the packets sent after warm-up.
+ *
+ * <pre>
+ * java -cp jopus-demo-app.jar io.github.kinsleykajiva.demo.RtpTrafficGenerator \
+ *     --port 40000 --ports 4 --calls 1000 --duration 20
+ * </pre>
+ */
+public class RtpTrafficGenerator {
+
+    private static final int FRAME_BYTES = 160;
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    // Send times remembered per call, by frame number
+    private static final int RING = 64;
+    private static final int SOCKET_BUFFER_BYTES = 4 * 1024 * 1024;
+
+    record Config(String host, int port, int ports, int calls, int durationSeconds, int warmupSeconds,
+            boolean aLaw) {
+
+        static Config parse(String[] args) {
+            String host = "127.0.0.1";
+            int port = 40000;
+            int ports = Runtime.getRuntime().availableProcessors();
+            int calls = 100;
+            int duration = 10;
+            int warmup = 2;
+            boolean aLaw = true;
+            for (int i = 0; i < args.length; i++) {
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                switch (args[i]) {
+                    case "--host" -> host = value;
+                    case "--port" -> port = Integer.parseInt(value);
+                    case "--ports" -> ports = Integer.parseInt(value);
+                    case "--calls" -> calls = Integer.parseInt(value);
+                    case "--duration" -> duration = Integer.parseInt(value);
+                    case "--warmup" -> warmup = Integer.parseInt(value);
+                    case "--law" -> aLaw = !"ulaw".equals(value);
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+                i++;
+            }
+            if (ports < 1 || calls < 1 || duration < 1 || warmup < 0) {
+                throw new IllegalArgumentException("Invalid load: ports=" + ports + " calls=" + calls
+                        + " duration=" + duration + " warmup=" + warmup);
+            }
+            return new Config(host, port, ports, calls, duration, warmup, aLaw);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Config config = Config.parse(args);
+        byte[] speech = LoadHarness.syntheticSpeechAlaw(10_000);
+        if (!config.aLaw()) {
+            speech = G711Utils.pcmToUlaw(G711Utils.aLawToPcm(speech));
+        }
+
+        DatagramChannel[] channels = new DatagramChannel[config.ports()];
+        Selector selector = Selector.open();
+        for (int i = 0; i < channels.length; i++) {
+            channels[i] = DatagramChannel.open();
+            channels[i].setOption(StandardSocketOptions.SO_RCVBUF, SOCKET_BUFFER_BYTES);
+            channels[i].setOption(StandardSocketOptions.SO_SNDBUF, SOCKET_BUFFER_BYTES);
+            channels[i].connect(new InetSocketAddress(config.host(), config.port() + i));
+            channels[i].configureBlocking(false);
+            channels[i].register(selector, SelectionKey.OP_READ);
+        }
+
+        RtpPacketizer[] calls = new RtpPacketizer[config.calls()];
+        for (int i = 0; i < calls.length; i++) {
+            // SSRC i + 1 identifies the call; timestamps start at 0 so frame
+            // numbers can be recovered from the rescaled reply timestamps
+            calls[i] = new RtpPacketizer(i + 1, config.aLaw() ? 8 : 0, FRAME_BYTES, i, 0);
+        }
+        AtomicLongArray sentAt = new AtomicLongArray(calls.length * RING);
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder sent = new LongAdder();
+        LongAdder sendFailures = new LongAdder();
+        LongAdder received = new LongAdder();
+
+        System.out.println("--- Jopus RTP Traffic Generator ---");
+        System.out.printf("%d calls (%s) to %s:%d-%d for %d s after %d s warm-up%n", calls.length,
+                config.aLaw() ? "PCMA" : "PCMU", config.host(), config.port(), config.port() + channels.length - 1,
+                config.durationSeconds(), config.warmupSeconds());
+
+        long begin = System.nanoTime();
+        long measureFrom = begin + TimeUnit.SECONDS.toNanos(config.warmupSeconds());
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(config.durationSeconds());
+
+        Thread receiver = Thread.ofPlatform().name("rtp-receiver").start(() -> {
+            ByteBuffer in = ByteBuffer.allocateDirect(2048);
+            RtpPacket rtp = new RtpPacket();
+            // Keep listening briefly after the last send for stragglers
+            long stop = end + TimeUnit.MILLISECONDS.toNanos(500);
+            try {
+                while (System.nanoTime() < stop) {
+                    selector.select(100);
+                    selector.selectedKeys().clear();
+                    long now = System.nanoTime();
+                    for (DatagramChannel channel : channels) {
+                        while (channel.receive(in.clear()) != null) {
+                            if (!rtp.wrap(in.flip()) || rtp.ssrc() < 1 || rtp.ssrc() > calls.length) {
+                                continue;
+                            }
+                            long frame = Integer.toUnsignedLong(rtp.timestamp()) / 960;
+                            int slot = (rtp.ssrc() - 1) * RING + (int) (frame % RING);
+                            long at = sentAt.getAndSet(slot, 0);
+                            if (at >= measureFrom) {
+                                latency.record(now - at);
+                                received.increment();
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Receiver failed: " + e.getMessage());
+            }
+        });
+
+        // One sender thread paces every call on a 1 ms tick; call i sends on
+        // ticks where tick % 20 == i % 20
+        long frames = 0;
+        for (long tick = begin; tick < end; tick += TICK_NANOS) {
+            long wait = tick - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            int phase = (int) ((tick - begin) / TICK_NANOS % 20);
+            for (int i = phase; i < calls.length; i += 20) {
+                RtpPacketizer call = calls[i];
+                int frame = (int) (Integer.toUnsignedLong(call.nextTimestamp()) / FRAME_BYTES % RING);
+                int start = (int) ((i * 37L + frames) * FRAME_BYTES % (speech.length - FRAME_BYTES));
+                MemorySegment.copy(speech, start, call.payload(), ValueLayout.JAVA_BYTE, 0, FRAME_BYTES);
+                ByteBuffer packet = call.finish(FRAME_BYTES, false);
+                long now = System.nanoTime();
+                sentAt.set(i * RING + frame, now);
+                if (channels[i % channels.length].write(packet) > 0) {
+                    if (now >= measureFrom) {
+                        sent.increment();
+                    }
+                } else {
+                    sentAt.set(i * RING + frame, 0);
+                    sendFailures.increment();
+                }
+            }
+            if (phase == 19) {
+                frames++;
+            }
+        }
+        receiver.join();
+        selector.close();
+        for (DatagramChannel channel : channels) {
+            channel.close();
+        }
+
+        long sentCount = sent.sum();
+        long receivedCount = received.sum();
+        double loss = sentCount == 0 ? 0.0 : 1.0 - (double) receivedCount / sentCount;
+        System.out.printf(Locale.ROOT, "Sent: %d packets (%.0f pkt/s), send failures: %d%n", sentCount,
+                sentCount / (double) config.durationSeconds(), sendFailures.sum());
+        System.out.printf(Locale.ROOT, "Received: %d packets (%.0f pkt/s), loss: %.4f%%%n", receivedCount,
+                receivedCount / (double) config.durationSeconds(), Math.max(0.0, loss) * 100);
+        System.out.printf(Locale.ROOT, "Latency: p50=%.3f ms  p99=%.3f ms  p99.9=%.3f ms  max=%.3f ms%n",
+                latency.percentile(50) / 1e6, latency.percentile(99) / 1e6, latency.percentile(99.9) / 1e6,
+                latency.max() / 1e6);
+    }
+}
@@ -1,14 +1,45 @@
 package io.github.kinsleykajiva;
 
+import io.github.kinsleykajiva.flow.TranscodingProcessor;
+import io.github.kinsleykajiva.jfr.ConversionEvent;
+import io.github.kinsleykajiva.metrics.CodecMetrics;
+import io.github.kinsleykajiva.opus.CodecExecutor;
+import io.github.kinsleykajiva.opus.EncoderComplexityGovernor;
+import io.github.kinsleykajiva.opus.EncoderHandle;
+import io.github.kinsleykajiva.opus.EncoderProfile;
+import io.github.kinsleykajiva.opus.OggOpusStreamEncoder;
 import io.github.kinsleykajiva.opus.OpusCodec;
+import io.github.kinsleykajiva.opus.ParallelOggEncoder;
+import io.github.kinsleykajiva.opus.SilenceSuppressor;
 import io.github.kinsleykajiva.opusenc.opusenc_h;
+import io.github.kinsleykajiva.ratecontrol.EncoderSettings;
+import io.github.kinsleykajiva.ratecontrol.NetworkFeedback;
+import io.github.kinsleykajiva.ratecontrol.RateControlPolicy;
+import io.github.kinsleykajiva.ratecontrol.RateController;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.lang.foreign.*;
+import java.lang.ref.Cleaner;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 
 import static io.github.kinsleykajiva.opusenc.opusenc_h.*;
 
@@ -18,10 +49,16 @@ import static io.github.kinsleykajiva.opusenc.opusenc_h.*;
 public class AudioBuilder {
     private final byte[] inputData;
     private final File inputFile;
+    private final InputStream inputStream;
+    // File or stream contents, once a terminal operation needed them whole
+    private byte[] fileData;
+    // Set once a terminal operation has started reading inputStream
+    private boolean streamConsumed;
     private int sampleRate = 8000;
     private int bitrate = 16000;
     private int channels = 1;
     private InputFormat format;
+    private ForkJoinPool parallelPool;
 
     private enum InputFormat {
         ALAW, ULAW, PCM, OPUS
@@ -30,11 +67,19 @@ public class AudioBuilder {
     AudioBuilder(byte[] data) {
         this.inputData = data;
         this.inputFile = null;
+        this.inputStream = null;
     }
 
     AudioBuilder(File file) {
         this.inputFile = file;
         this.inputData = null;
+        this.inputStream = null;
+    }
+
+    AudioBuilder(InputStream stream) {
+        this.inputStream = stream;
+        this.inputData = null;
+        this.inputFile = null;
     }
 
     /**
@@ -87,6 +132,28 @@ public class AudioBuilder {
         return this;
     }
 
+    /**
+     * Encode long inputs in parallel segments on the common fork/join pool.
+     * See {@link #parallel(ForkJoinPool)}.
+     */
+    public AudioBuilder parallel() {
+        return parallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Encode long inputs in parallel: the audio is split into segments that
+     * are encoded concurrently with independent encoders and stitched into a
+     * single Ogg Opus stream. Inputs of 30 seconds or less use one encoder.
+     * The sample rate must be one Opus supports natively (8, 12, 16, 24 or 48
+     * kHz), and the configured bitrate is applied.
+     *
+     * @param pool Pool to encode the segments on
+     */
+    public AudioBuilder parallel(ForkJoinPool pool) {
+        this.parallelPool = pool;
+        return this;
+    }
+
     /**
      * Convert to Opus and return as Base64 string.
      */
@@ -98,7 +165,12 @@ public class AudioBuilder {
      * Convert to Opus and return as Base64 string.
      */
     public String asOpusBase64() {
-        byte[] data = getInputData();
+        return cached(parallelPool == null ? "opus" : "opus-parallel", this::convertToOpusBase64);
+    }
+
+    private String convertToOpusBase64() {
+        String op = "asOpusBase64";
+        byte[] data = stage(op, "read", this::getInputData);
 
         if (format == null) {
             throw new IllegalStateException(
@@ -106,14 +178,15 @@ public class AudioBuilder {
         }
 
         if (format == InputFormat.OPUS) {
-            return Base64.getEncoder().encodeToString(data);
+            return stage(op, "base64", () -> Base64.getEncoder().encodeToString(data));
         }
 
         // Convert G.711 to PCM first if needed
-        byte[] pcmData = convertToPcm(data);
+        byte[] pcmData = stage(op, "pcm", () -> convertToPcm(data));
 
         // Encode to Opus using opusenc
-        return encodeToOpusBase64(pcmData);
+        byte[] oggOpus = stage(op, "opus-encode", () -> encodeToOggOpus(pcmData));
+        return stage(op, "base64", () -> Base64.getEncoder().encodeToString(oggOpus));
     }
 
     /**
@@ -131,7 +204,26 @@ public class AudioBuilder {
     }
 
     private String asG711Base64(boolean isAlaw) {
-        byte[] data = getInputData();
+        return cached(isAlaw ? "alaw" : "ulaw", () -> convertToG711Base64(isAlaw));
+    }
+
+    /**
+     * Runs a terminal conversion through the conversion cache when it is
+     * enabled.
+     */
+    private String cached(String output, Supplier<String> conversion) {
+        TranscodeCache cache = AudioLib.cache();
+        if (cache == null || format == null) {
+            return conversion.get();
+        }
+        TranscodeCache.Key key = stage(output, "cache-key", () -> TranscodeCache.key(getInputData(), format.name(),
+                output, sampleRate, bitrate, channels));
+        return cache.getOrCompute(key, conversion);
+    }
+
+    private String convertToG711Base64(boolean isAlaw) {
+        String op = isAlaw ? "asAlawBase64" : "asUlawBase64";
+        byte[] data = stage(op, "read", this::getInputData);
 
         if (format == null) {
             throw new IllegalStateException(
@@ -140,12 +232,33 @@ public class AudioBuilder {
 
         if (format == InputFormat.OPUS) {
             // Opus -> G.711
-            return OpusCodec.convertOpusToG711(Base64.getEncoder().encodeToString(data), isAlaw);
+            return stage(op, "opus-decode",
+                    () -> OpusCodec.convertOpusToG711(Base64.getEncoder().encodeToString(data), isAlaw));
         }
 
-        byte[] pcmData = convertToPcm(data);
-        byte[] g711Data = isAlaw ? G711Utils.pcmToAlaw(pcmData) : G711Utils.pcmToUlaw(pcmData);
-        return Base64.getEncoder().encodeToString(g711Data);
+        byte[] pcmData = stage(op, "pcm", () -> convertToPcm(data));
+        byte[] g711Data = stage(op, "g711-encode",
+                () -> isAlaw ? G711Utils.pcmToAlaw(pcmData) : G711Utils.pcmToUlaw(pcmData));
+        return stage(op, "base64", () -> Base64.getEncoder().encodeToString(g711Data));
+    }
+
+    /**
+     * Runs one stage of a terminal conversion, recording it as a JFR
+     * {@link ConversionEvent} when a recording is active.
+     */
+    private <T> T stage(String operation, String stage, Supplier<T> body) {
+        ConversionEvent event = new ConversionEvent();
+        event.begin();
+        T result = body.get();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.stage = stage;
+            event.inputFormat = format == null ? null : format.name();
+            event.bytes = result instanceof byte[] bytes ? bytes.length
+                    : result instanceof String text ? text.length() : 0;
+            event.commit();
+        }
+        return result;
     }
 
     private byte[] convertToPcm(byte[] data) {
@@ -166,6 +279,17 @@ public class AudioBuilder {
      * Convert to Opus and save to file.
      */
     public void asFile(String outputPath) {
+        requireFormat();
+        // Opus input is already encoded; the serial path handles it
+        if (parallelPool != null && format != InputFormat.OPUS) {
+            byte[] pcmData = convertToPcm(getInputData());
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outputPath))) {
+                parallelEncoder().encode(toShorts(pcmData), out);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to write Opus file: " + e.getMessage(), e);
+            }
+            return;
+        }
         byte[] opusData = Base64.getDecoder().decode(asOpusBase64());
 
         try (FileOutputStream fos = new FileOutputStream(outputPath)) {
@@ -176,20 +300,271 @@ public class AudioBuilder {
         }
     }
 
+    // --- Async terminals ---
+
+    /**
+     * Convert to Opus Base64 on the shared {@link CodecExecutor}. The calling
+     * thread, typically a virtual thread, is not pinned by the native encode
+     * and can simply join the future.
+     */
+    public CompletableFuture<String> asBase64Async() {
+        return asBase64Async(CodecExecutor.shared());
+    }
+
+    /**
+     * Convert to Opus Base64 on the given executor.
+     */
+    public CompletableFuture<String> asBase64Async(Executor executor) {
+        return CompletableFuture.supplyAsync(this::asOpusBase64, executor);
+    }
+
+    /**
+     * Convert to G.711 A-law Base64 on the shared {@link CodecExecutor}.
+     */
+    public CompletableFuture<String> asAlawBase64Async() {
+        return CompletableFuture.supplyAsync(this::asAlawBase64, CodecExecutor.shared());
+    }
+
+    /**
+     * Convert to G.711 U-law Base64 on the shared {@link CodecExecutor}.
+     */
+    public CompletableFuture<String> asUlawBase64Async() {
+        return CompletableFuture.supplyAsync(this::asUlawBase64, CodecExecutor.shared());
+    }
+
+    /**
+     * Convert to Opus and save to file on the shared {@link CodecExecutor}.
+     */
+    public CompletableFuture<Void> asFileAsync(String outputPath) {
+        return CompletableFuture.runAsync(() -> asFile(outputPath), CodecExecutor.shared());
+    }
+
     private byte[] getInputData() {
         if (inputData != null) {
             return inputData;
         } else if (inputFile != null) {
+            if (fileData != null) {
+                return fileData;
+            }
             try {
-                return Files.readAllBytes(inputFile.toPath());
+                // Kept so the cache key and the conversion share one read
+                fileData = Files.readAllBytes(inputFile.toPath());
+                return fileData;
             } catch (IOException e) {
                 throw new RuntimeException("Failed to read input file: " + e.getMessage(), e);
             }
+        } else if (inputStream != null) {
+            // Async terminals may get here together; one reads, the rest reuse
+            synchronized (this) {
+                if (fileData != null) {
+                    return fileData;
+                }
+                try (InputStream in = claimStream()) {
+                    fileData = in.readAllBytes();
+                    return fileData;
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to read input stream: " + e.getMessage(), e);
+                }
+            }
         }
         throw new IllegalStateException("No input data provided");
     }
 
-    private String encodeToOpusBase64(byte[] pcmData) {
+    // --- Streaming output ---
+
+    /**
+     * Convert to Ogg Opus and write it to a stream as it is encoded. Input is
+     * read one 20 ms frame at a time, so memory use stays at a few KB
+     * whatever the input length. The sample rate must be one Opus supports
+     * natively (8, 12, 16, 24 or 48 kHz).
+     *
+     * @param out Destination; flushed but not closed
+     */
+    public void writeOpus(OutputStream out) {
+        requireFormat();
+        if (format == InputFormat.OPUS) {
+            try (InputStream in = openInput()) {
+                in.transferTo(out);
+                out.flush();
+                return;
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to copy Opus input: " + e.getMessage(), e);
+            }
+        }
+        EncoderProfile profile = EncoderProfile.DEFAULT.withSampleRate(sampleRate).withChannels(channels)
+                .withBitrate(bitrate);
+        // G.711 is one byte per sample, PCM two
+        int frameBytes = profile.frameSize() * channels * (format == InputFormat.PCM ? 2 : 1);
+        byte[] chunk = new byte[frameBytes];
+        try (InputStream in = openInput()) {
+            // The encoder closes its stream; the caller's must stay open
+            OutputStream target = new FilterOutputStream(out) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+            OggOpusStreamEncoder encoder = new OggOpusStreamEncoder(profile, target);
+            try {
+                int read;
+                while ((read = in.readNBytes(chunk, 0, frameBytes)) > 0) {
+                    if (format == InputFormat.PCM) {
+                        encoder.write(chunk, 0, read);
+                    } else {
+                        byte[] frame = read == frameBytes ? chunk : Arrays.copyOf(chunk, read);
+                        byte[] pcm = format == InputFormat.ALAW ? G711Utils.aLawToPcm(frame)
+                                : G711Utils.uLawToPcm(frame);
+                        encoder.write(pcm, 0, pcm.length);
+                    }
+                }
+                encoder.finish();
+                out.flush();
+            } finally {
+                encoder.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to stream Opus output: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Convert to Ogg Opus and append it to the sink as Base64 text, encoding
+     * incrementally. Combined with {@link AudioLib#convertStreaming} no
+     * full-size copy of the input or output is held on the heap.
+     *
+     * @param out For example a StringBuilder or a response Writer; not closed
+     */
+    public void writeOpusBase64(Appendable out) {
+        try (OutputStream base64 = Base64Streams.encoding(out)) {
+            writeOpus(base64);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write Base64 output: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Convert to G.711 A-law and append it to the sink as Base64 text,
+     * incrementally.
+     */
+    public void writeAlawBase64(Appendable out) {
+        writeG711Base64(out, true);
+    }
+
+    /**
+     * Convert to G.711 U-law and append it to the sink as Base64 text,
+     * incrementally.
+     */
+    public void writeUlawBase64(Appendable out) {
+        writeG711Base64(out, false);
+    }
+
+    private void writeG711Base64(Appendable out, boolean isAlaw) {
+        requireFormat();
+        if (format == InputFormat.OPUS) {
+            // Ogg demuxing needs the whole file; fall back to the buffered path
+            try {
+                out.append(asG711Base64(isAlaw));
+                return;
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to write Base64 output: " + e.getMessage(), e);
+            }
+        }
+        // 20 ms at the input rate; G.711 output is one byte per sample
+        int frameBytes = sampleRate / 50 * channels * (format == InputFormat.PCM ? 2 : 1);
+        byte[] chunk = new byte[frameBytes];
+        try (InputStream in = openInput(); OutputStream base64 = Base64Streams.encoding(out)) {
+            int read;
+            while ((read = in.readNBytes(chunk, 0, frameBytes)) > 0) {
+                byte[] frame = read == frameBytes ? chunk : Arrays.copyOf(chunk, read);
+                boolean sameLaw = (format == InputFormat.ALAW) == isAlaw && format != InputFormat.PCM;
+                byte[] g711;
+                if (sameLaw) {
+                    g711 = frame;
+                } else {
+                    byte[] pcm = format == InputFormat.PCM ? frame : convertToPcm(frame);
+                    g711 = isAlaw ? G711Utils.pcmToAlaw(pcm) : G711Utils.pcmToUlaw(pcm);
+                }
+                base64.write(g711);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write Base64 output: " + e.getMessage(), e);
+        }
+    }
+
+    private void requireFormat() {
+        if (format == null) {
+            throw new IllegalStateException(
+                    "Input format not specified. Call fromAlaw(), fromUlaw(), fromPcm() or fromOpus()");
+        }
+    }
+
+    /**
+     * Opens the input for incremental reading without loading it whole.
+     */
+    private InputStream openInput() throws IOException {
+        if (fileData != null) {
+            return new ByteArrayInputStream(fileData);
+        } else if (inputData != null) {
+            return new ByteArrayInputStream(inputData);
+        } else if (inputFile != null) {
+            return new BufferedInputStream(Files.newInputStream(inputFile.toPath()), 8192);
+        } else if (inputStream != null) {
+            return claimStream();
+        }
+        throw new IllegalStateException("No input data provided");
+    }
+
+    /**
+     * Hands out the input stream to the first terminal operation only. A
+     * stream can be read once; later operations reuse its contents if the
+     * first one buffered them, and fail otherwise.
+     */
+    private synchronized InputStream claimStream() {
+        if (streamConsumed) {
+            throw new IllegalStateException(
+                    "Input stream already consumed; a stream-input builder supports one streaming conversion");
+        }
+        streamConsumed = true;
+        return inputStream;
+    }
+
+    private ParallelOggEncoder parallelEncoder() {
+        EncoderProfile profile = EncoderProfile.DEFAULT.withSampleRate(sampleRate).withChannels(channels)
+                .withBitrate(bitrate);
+        return new ParallelOggEncoder(profile, parallelPool);
+    }
+
+    private static short[] toShorts(byte[] pcmData) {
+        short[] pcmShorts = new short[pcmData.length / 2];
+        for (int i = 0; i < pcmShorts.length; i++) {
+            pcmShorts[i] = (short) ((pcmData[i * 2] & 0xFF) | ((pcmData[i * 2 + 1] & 0xFF) << 8));
+        }
+        return pcmShorts;
+    }
+
+    private byte[] encodeToOggOpus(byte[] pcmData) {
+        if (parallelPool != null) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(pcmData.length / 8);
+            try {
+                parallelEncoder().encode(toShorts(pcmData), out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return out.toByteArray();
+        }
+        // libopusenc writes to a path; one file per call so concurrent
+        // conversions never share it
+        Path tempFile;
+        try {
+            tempFile = Files.createTempFile("jopus-", ".opus");
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create temporary Opus file: " + e.getMessage(), e);
+        }
         try (Arena arena = Arena.ofConfined()) {
             // Load native libraries using cross-platform loader
             OpusCodec.loadNativeLibraries();
@@ -203,7 +578,7 @@ public class AudioBuilder {
             // Create encoder
             MemorySegment errorPtr = arena.allocate(ValueLayout.JAVA_INT);
             MemorySegment enc = ope_encoder_create_file(
-                    arena.allocateFrom("temp_opus_output.opus"),
+                    arena.allocateFrom(tempFile.toString()),
                     comments,
                     sampleRate,
                     channels,
@@ -215,10 +590,7 @@ public class AudioBuilder {
                 ope_comments_destroy(comments);
                 throw new RuntimeException("Failed to create Opus encoder: Error code " + error);
             }
-
-            // Set bitrate - skipping for now as ope_encoder_ctl is variadic and requires
-            // makeInvoker
-            // The default bitrate is suitable for most VoIP applications
+            applyBitrate(enc, comments);
 
             // Convert PCM bytes to shorts
             short[] pcmShorts = new short[pcmData.length / 2];
@@ -241,14 +613,35 @@ public class AudioBuilder {
             ope_encoder_destroy(enc);
             ope_comments_destroy(comments);
 
-            // Read the output file and encode to Base64
-            byte[] opusFileData = Files.readAllBytes(new File("temp_opus_output.opus").toPath());
-            new File("temp_opus_output.opus").delete();
-
-            return Base64.getEncoder().encodeToString(opusFileData);
+            // Read the output file back
+            return Files.readAllBytes(tempFile);
 
         } catch (IOException e) {
             throw new RuntimeException("Failed to encode to Opus: " + e.getMessage(), e);
+        } finally {
+            try {
+                Files.deleteIfExists(tempFile);
+            } catch (IOException e) {
+                System.err.println("Warning: Could not delete " + tempFile + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // ope_encoder_ctl is variadic; one invoker per argument shape
+    private static class OpeCtl {
+        static final ope_encoder_ctl INT_ARG = ope_encoder_ctl.makeInvoker(C_INT);
+    }
+
+    /**
+     * Applies the configured bitrate to a libopusenc encoder, destroying it
+     * and its comments if libopus rejects the value.
+     */
+    private void applyBitrate(MemorySegment enc, MemorySegment comments) {
+        int result = OpeCtl.INT_ARG.apply(enc, OPUS_SET_BITRATE_REQUEST(), bitrate);
+        if (result != OPE_OK()) {
+            ope_encoder_destroy(enc);
+            ope_comments_destroy(comments);
+            throw new RuntimeException("Opus set bitrate " + bitrate + " error: " + result);
         }
     }
 
@@ -285,10 +678,7 @@ public class AudioBuilder {
                 ope_comments_destroy(comments);
                 throw new RuntimeException("Failed to create Opus encoder");
             }
-
-            // Set bitrate - skipping for now as ope_encoder_ctl is variadic and requires
-            // makeInvoker
-            // The default bitrate is suitable for most VoIP applications
+            applyBitrate(enc, comments);
 
             // Convert PCM bytes to shorts
             short[] pcmShorts = new short[pcmData.length / 2];
@@ -337,26 +727,197 @@ public class AudioBuilder {
         if (encoderPool == null) {
             initializePool(10); // Default pool size
         }
-        return new AudioStreamEncoder(encoderPool.borrowEncoder());
+        return new AudioStreamEncoder(encoderPool.borrowEncoderHandle());
+    }
+
+    /**
+     * Start a streaming session as a {@link Flow.Processor}
+     * of G.711 chunks to Opus packets, using the same encoder pool as
+     * {@link #stream()}. Input is pulled from upstream only as fast as the
+     * subscriber requests packets, and the encoder is returned to the pool
+     * when the stream completes, fails or is cancelled.
+     *
+     * @param isALaw True for A-law input, false for U-law
+     */
+    public static TranscodingProcessor streamProcessor(boolean isALaw) {
+        if (encoderPool == null) {
+            initializePool(10);
+        }
+        return TranscodingProcessor.g711ToOpus(encoderPool, isALaw);
+    }
+
+    /**
+     * Reclaim the encoder of any streaming session that has not encoded for
+     * longer than the timeout, so abandoned sessions cannot exhaust the pool.
+     * A reclaimed session throws {@link IllegalStateException} on its next
+     * call.
+     *
+     * @param timeout Idle time before reclamation, or null to disable
+     */
+    public static synchronized void setSessionIdleTimeout(Duration timeout) {
+        if (encoderPool == null) {
+            initializePool(10);
+        }
+        encoderPool.setIdleTimeout(timeout);
+    }
+
+    /**
+     * Let a governor lower the complexity of streaming sessions opened from
+     * now on while encoding falls behind, and raise it again once it keeps
+     * up.
+     *
+     * @param governor The governor, or null for sessions at the default
+     *                 complexity
+     */
+    public static synchronized void setComplexityGovernor(EncoderComplexityGovernor governor) {
+        if (encoderPool == null) {
+            initializePool(10);
+        }
+        encoderPool.setComplexityGovernor(governor);
     }
 
+    // Decrements the live session count once, on close() or when an
+    // unclosed session is garbage collected
+    private static final Cleaner SESSION_CLEANER = Cleaner.create();
+
     public static class AudioStreamEncoder implements AutoCloseable {
-        private final MemorySegment encoder;
+        private final EncoderHandle encoder;
+        private final Cleaner.Cleanable sessionCount;
         private final byte[] outBuffer;
+        private SilenceSuppressor silenceSuppressor;
+        // Native samples for the MemorySegment paths, allocated on first use;
+        // room for a 60 ms packet
+        private MemorySegment pcmScratch;
+        // Network adaptation, when enabled
+        private RateController rateController;
+        private EncoderSettings appliedSettings;
+        // 20 ms frames buffered towards a longer packet
+        private int pendingFrames;
+        // Native G.711 input and packet output for the byte[] path with
+        // longer packets
+        private MemorySegment g711Scratch;
+        private MemorySegment packetScratch;
+        // Last async encode; the next one is chained after it
+        private CompletableFuture<?> tail = CompletableFuture
+                .completedFuture(null);
 
-        AudioStreamEncoder(MemorySegment encoder) {
+        AudioStreamEncoder(EncoderHandle encoder) {
             this.encoder = encoder;
+            CodecMetrics.global().sessionOpened();
+            this.sessionCount = SESSION_CLEANER.register(this, CodecMetrics.global()::sessionClosed);
             this.outBuffer = new byte[4000]; // sample for 20ms frames
         }
 
+        /**
+         * Skip the Opus encoder for silent frames (idle codes or energy below
+         * about -60 dBFS) and send a pre-encoded digital silence packet
+         * instead. The encoder is reset when speech resumes. Off by default.
+         */
+        public AudioStreamEncoder withSilenceSuppression() {
+            // Pooled encoders use the default profile
+            this.silenceSuppressor = new SilenceSuppressor(EncoderProfile.DEFAULT);
+            return this;
+        }
+
+        /**
+         * Like {@link #withSilenceSuppression()}, but replace silent frames
+         * with low-level comfort noise instead of digital silence.
+         */
+        public AudioStreamEncoder withComfortNoise() {
+            this.silenceSuppressor = new SilenceSuppressor(EncoderProfile.DEFAULT,
+                    SilenceSuppressor.DEFAULT_MEAN_SQUARE_THRESHOLD, true);
+            return this;
+        }
+
+        /**
+         * Encode every frame, including silence, with the Opus encoder. This
+         * is the default.
+         */
+        public AudioStreamEncoder withoutSilenceSuppression() {
+            this.silenceSuppressor = null;
+            return this;
+        }
+
+        /**
+         * @return Number of silent frames served from the pre-encoded cache
+         */
+        public long suppressedFrames() {
+            return silenceSuppressor == null ? 0 : silenceSuppressor.suppressedFrames();
+        }
+
+        /**
+         * Adapt bitrate, in-band FEC, planned loss and packet duration to
+         * receiver feedback passed to {@link #onFeedback}, starting from
+         * {@link EncoderSettings#INITIAL}.
+         *
+         * @param policy The session's own policy instance
+         */
+        public AudioStreamEncoder withRateControl(RateControlPolicy policy) {
+            return withRateControl(new RateController(policy, EncoderSettings.INITIAL));
+        }
+
+        /**
+         * Adapt the encoder to the settings of a controller. New settings are
+         * applied before the next frame is encoded.
+         * <p>
+         * With packets longer than 20 ms, 20 ms chunks are buffered and an
+         * encode call returns nothing until a packet is complete; silence
+         * suppression only applies to 20 ms packets. Frames still buffered
+         * when the session closes are dropped.
+         */
+        public AudioStreamEncoder withRateControl(RateController controller) {
+            this.rateController = controller;
+            return this;
+        }
+
+        /**
+         * Passes a receiver report to the session's rate control.
+         *
+         * @return The settings the next frame will be encoded with
+         * @throws IllegalStateException Without {@link #withRateControl rate
+         *                               control}
+         */
+        public EncoderSettings onFeedback(NetworkFeedback feedback) {
+            RateController controller = rateController;
+            if (controller == null) {
+                throw new IllegalStateException("Rate control is not enabled for this session");
+            }
+            return controller.onFeedback(feedback);
+        }
+
         /**
          * Encodes a G.711 A-law chunk to Opus.
          * 
          * @param alawData The G.711 A-law bytes
-         * @return The encoded Opus bytes (copied from internal buffer)
+         * @return The encoded Opus bytes (copied from internal buffer), empty while
+         *         a 40 or 60 ms packet under rate control is still filling
          */
         public byte[] encodeAlaw(byte[] alawData) {
-            int len = OpusCodec.convertG711Chunk(encoder, alawData, true, outBuffer);
+            return encodeChunk(alawData, true);
+        }
+
+        /**
+         * Encodes a G.711 U-law chunk to Opus.
+         *
+         * @param ulawData The G.711 U-law bytes
+         * @return The encoded Opus bytes, empty while a 40 or 60 ms packet
+         *         under rate control is still filling
+         */
+        public byte[] encodeUlaw(byte[] ulawData) {
+            return encodeChunk(ulawData, false);
+        }
+
+        private byte[] encodeChunk(byte[] g711Data, boolean isALaw) {
+            MemorySegment nativeEncoder = encoder.acquire();
+            int len;
+            try {
+                int framesPerPacket = applyRateControl(nativeEncoder);
+                len = framesPerPacket == 1 && pendingFrames == 0
+                        ? OpusCodec.convertG711Chunk(nativeEncoder, g711Data, isALaw, outBuffer, silenceSuppressor)
+                        : encodeBuffered(nativeEncoder, g711Data, isALaw, framesPerPacket);
+            } finally {
+                encoder.release();
+            }
             if (len < 0) {
                 throw new RuntimeException("Opus encoding failed: " + len);
             }
@@ -365,13 +926,169 @@ public class AudioBuilder {
             return copy;
         }
 
+        /**
+         * Encodes one 20 ms A-law frame from native memory straight into
+         * native memory, e.g. from a received RTP payload into an
+         * {@code RtpPacketizer}, without copying or allocating.
+         *
+         * @param alaw 160 A-law bytes
+         * @param out  Receives the Opus packet
+         * @return The packet length, or 0 for a silent frame under DTX
+         */
+        public int encodeAlaw(MemorySegment alaw, MemorySegment out) {
+            return encodeFrame(alaw, true, out);
+        }
+
+        /**
+         * Encodes one 20 ms U-law frame from native memory straight into
+         * native memory.
+         *
+         * @param ulaw 160 U-law bytes
+         * @param out  Receives the Opus packet
+         * @return The packet length, or 0 for a silent frame under DTX
+         */
+        public int encodeUlaw(MemorySegment ulaw, MemorySegment out) {
+            return encodeFrame(ulaw, false, out);
+        }
+
+        private int encodeFrame(MemorySegment g711, boolean isALaw, MemorySegment out) {
+            MemorySegment nativeEncoder = encoder.acquire();
+            int len;
+            try {
+                if (pcmScratch == null) {
+                    pcmScratch = Arena.ofAuto().allocate(ValueLayout.JAVA_SHORT, 480);
+                }
+                int framesPerPacket = applyRateControl(nativeEncoder);
+                len = framesPerPacket == 1 && pendingFrames == 0
+                        ? OpusCodec.convertG711Frame(nativeEncoder, g711, isALaw, pcmScratch, out, silenceSuppressor)
+                        : bufferFrame(nativeEncoder, g711, isALaw, out, framesPerPacket);
+            } finally {
+                encoder.release();
+            }
+            if (len < 0) {
+                throw new RuntimeException("Opus encoding failed: " + len);
+            }
+            return len;
+        }
+
+        /**
+         * Brings the encoder to the controller's current settings.
+         *
+         * @return 20 ms frames per packet
+         */
+        private int applyRateControl(MemorySegment nativeEncoder) {
+            RateController controller = rateController;
+            if (controller == null) {
+                return 1;
+            }
+            EncoderSettings target = controller.settings();
+            if (appliedSettings == null || target.bitrate() != appliedSettings.bitrate()
+                    || target.packetLossPercent() != appliedSettings.packetLossPercent()
+                    || target.inbandFec() != appliedSettings.inbandFec()) {
+                // The pool restores the profile's settings however the
+                // encoder comes back
+                encoder.markRateControlled();
+                OpusCodec.applyRateSettings(nativeEncoder, target.bitrate(), target.packetLossPercent(),
+                        target.inbandFec());
+            }
+            appliedSettings = target;
+            return target.framesPerPacket();
+        }
+
+        /**
+         * Adds one 20 ms frame to the packet being filled, and encodes the
+         * packet once it holds enough frames.
+         *
+         * @return The packet length, or 0 while the packet is still filling
+         */
+        private int bufferFrame(MemorySegment nativeEncoder, MemorySegment g711, boolean isALaw, MemorySegment out,
+                int framesPerPacket) {
+            // Longer packets bypass the suppressor, so every frame here is
+            // speech to it
+            OpusCodec.resumeSpeech(nativeEncoder, silenceSuppressor);
+            MemorySegment pcm = pcmScratch.asSlice(pendingFrames * 160L * 2, 160L * 2);
+            if (isALaw) {
+                G711Utils.aLawToPcm(g711, pcm, 160);
+            } else {
+                G711Utils.uLawToPcm(g711, pcm, 160);
+            }
+            // A shorter duration may have taken effect since the first frame
+            if (++pendingFrames < framesPerPacket) {
+                return 0;
+            }
+            int frames = pendingFrames;
+            pendingFrames = 0;
+            return OpusCodec.encodeFrame(nativeEncoder, pcmScratch, frames * 160, out);
+        }
+
+        /**
+         * The byte[] path for packets longer than 20 ms: every 20 ms frame of
+         * the chunk goes through {@link #bufferFrame}, and the completed
+         * packets are concatenated into {@code outBuffer} as
+         * {@code convertG711Chunk} does.
+         */
+        private int encodeBuffered(MemorySegment nativeEncoder, byte[] g711Data, boolean isALaw,
+                int framesPerPacket) {
+            if (pcmScratch == null) {
+                pcmScratch = Arena.ofAuto().allocate(ValueLayout.JAVA_SHORT, 480);
+            }
+            if (g711Scratch == null) {
+                g711Scratch = Arena.ofAuto().allocate(160);
+                packetScratch = Arena.ofAuto().allocate(outBuffer.length);
+            }
+            int total = 0;
+            for (int offset = 0; offset + 160 <= g711Data.length; offset += 160) {
+                MemorySegment.copy(g711Data, offset, g711Scratch, ValueLayout.JAVA_BYTE, 0, 160);
+                int len = bufferFrame(nativeEncoder, g711Scratch, isALaw, packetScratch.asSlice(0,
+                        outBuffer.length - total), framesPerPacket);
+                if (len < 0) {
+                    return len;
+                }
+                MemorySegment.copy(packetScratch, ValueLayout.JAVA_BYTE, 0, outBuffer, total, len);
+                total += len;
+            }
+            return total;
+        }
+
+        /**
+         * Encodes a G.711 A-law chunk on the shared {@link CodecExecutor}.
+         * Calls on one session run one at a time, in submission order, so
+         * packets come out in the order their chunks went in.
+         *
+         * @param alawData The G.711 A-law bytes
+         * @return The encoded Opus bytes, or the encoding failure
+         */
+        public CompletableFuture<byte[]> encodeAlawAsync(byte[] alawData) {
+            synchronized (this) {
+                CompletableFuture<byte[]> result = tail
+                        .handleAsync((previous, failure) -> encodeAlaw(alawData), CodecExecutor.shared());
+                tail = result;
+                return result;
+            }
+        }
+
+        /**
+         * Returns the encoder to the pool. With async encodes still pending,
+         * this happens once the last of them has finished.
+         */
         @Override
         public void close() {
-            if (encoderPool != null) {
-                encoderPool.returnEncoder(encoder);
+            CompletableFuture<?> pending;
+            synchronized (this) {
+                pending = tail;
+            }
+            if (pending.isDone()) {
+                release();
             } else {
-                OpusCodec.destroyEncoder(encoder);
+                pending.whenComplete((result, failure) -> release());
             }
         }
+
+        private void release() {
+            // The handle returns the encoder to the pool it came from, which
+            // also restores any rate settings changed here
+            encoder.close();
+            sessionCount.clean();
+        }
     }
 }
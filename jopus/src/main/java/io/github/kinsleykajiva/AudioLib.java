@@ -1,6 +1,7 @@
 package io.github.kinsleykajiva;
 
 import java.io.File;
+import java.io.InputStream;
 import java.util.Base64;
 
 /**
@@ -8,6 +9,8 @@ import java.util.Base64;
  */
 public class AudioLib {
 
+    private static volatile TranscodeCache cache;
+
     /**
      * Start a conversion from a Base64 encoded string.
      * 
@@ -28,6 +31,35 @@ public class AudioLib {
         return new AudioBuilder(input);
     }
 
+    /**
+     * Start a conversion from Base64 text that is decoded incrementally while
+     * the conversion runs, instead of up front. Use with the
+     * {@code AudioBuilder.write*} methods to keep large payloads from being
+     * materialized on the heap. Like {@link #convert(InputStream)},
+     * the builder supports one {@code write*} conversion.
+     *
+     * @param base64Input Base64 text, for example a String or a slice of a
+     *                    request body
+     * @return An AudioBuilder to configure the conversion
+     */
+    public static AudioBuilder convertStreaming(CharSequence base64Input) {
+        return new AudioBuilder(Base64Streams.decoding(base64Input));
+    }
+
+    /**
+     * Start a conversion that reads its input incrementally from a stream.
+     * The stream is consumed by the conversion and closed when it completes,
+     * so the builder supports one {@code write*} conversion; a second throws
+     * {@link IllegalStateException}. Buffered terminals such as
+     * {@code asBase64()} read the stream whole and can be repeated.
+     *
+     * @param input G.711, PCM or Opus data
+     * @return An AudioBuilder to configure the conversion
+     */
+    public static AudioBuilder convert(InputStream input) {
+        return new AudioBuilder(input);
+    }
+
     /**
      * Start a conversion from a file.
      * 
@@ -37,4 +69,34 @@ public class AudioLib {
     public static AudioBuilder convert(File file) {
         return new AudioBuilder(file);
     }
+
+    /**
+     * Enable the content-addressed cache for one-shot conversions. Repeated
+     * conversions of identical input with identical parameters are then served
+     * from memory without native codec work.
+     *
+     * @param maxBytes Upper bound for the combined size of cached results
+     */
+    public static synchronized void enableCache(long maxBytes) {
+        cache = new TranscodeCache(maxBytes);
+    }
+
+    /**
+     * Disable and drop the conversion cache.
+     */
+    public static synchronized void disableCache() {
+        cache = null;
+    }
+
+    /**
+     * @return Current cache counters, or null if the cache is disabled
+     */
+    public static TranscodeCache.Stats cacheStats() {
+        TranscodeCache current = cache;
+        return current == null ? null : current.stats();
+    }
+
+    static TranscodeCache cache() {
+        return cache;
+    }
 }
@@ -0,0 +1,117 @@
+package io.github.kinsleykajiva;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.CharBuffer;
+import java.util.Base64;
+
+/**
+ * Adapters that let Base64 text flow through the codec a chunk at a time
+ * instead of being decoded or built as one large array or string.
+ */
+final class Base64Streams {
+
+    private Base64Streams() {
+    }
+
+    /**
+     * @return A stream of the bytes encoded by the Base64 text, decoded as it
+     *         is read
+     */
+    static InputStream decoding(CharSequence base64) {
+        return Base64.getDecoder().wrap(new AsciiInputStream(base64));
+    }
+
+    /**
+     * @return A stream whose bytes are Base64 encoded into the sink as they
+     *         are written. Closing it writes the final padding but leaves the
+     *         sink open.
+     */
+    static OutputStream encoding(Appendable sink) {
+        return Base64.getEncoder().wrap(new AppendableOutputStream(sink));
+    }
+
+    /**
+     * Reads the characters of a CharSequence as ASCII bytes, without copying
+     * it.
+     */
+    private static final class AsciiInputStream extends InputStream {
+        private final CharSequence text;
+        private int position;
+
+        AsciiInputStream(CharSequence text) {
+            this.text = text;
+        }
+
+        @Override
+        public int read() {
+            return position < text.length() ? text.charAt(position++) & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            int remaining = text.length() - position;
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = Math.min(len, remaining);
+            for (int i = 0; i < n; i++) {
+                b[off + i] = (byte) text.charAt(position + i);
+            }
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return text.length() - position;
+        }
+    }
+
+    /**
+     * Forwards Base64 output bytes to an Appendable as characters.
+     */
+    private static final class AppendableOutputStream extends OutputStream {
+        private final Appendable sink;
+        private final char[] chars = new char[1024];
+
+        AppendableOutputStream(Appendable sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            sink.append((char) (b & 0xFF));
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, chars.length);
+                for (int i = 0; i < n; i++) {
+                    chars[i] = (char) (b[off + i] & 0xFF);
+                }
+                sink.append(CharBuffer.wrap(chars, 0, n));
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (sink instanceof Flushable flushable) {
+                flushable.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
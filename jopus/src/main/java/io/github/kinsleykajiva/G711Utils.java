@@ -1,5 +1,8 @@
 package io.github.kinsleykajiva;
 
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
 public class G711Utils {
     private static final short[] ALAW_TO_PCM = new short[256];
     private static final short[] ULAW_TO_PCM = new short[256];
@@ -57,6 +60,112 @@ public class G711Utils {
         return ulaw;
     }
 
+    /**
+     * Encodes 16-bit PCM samples to A-law without an intermediate byte buffer.
+     */
+    public static byte[] pcmToAlaw(short[] pcm) {
+        return pcmToAlaw(pcm, pcm.length);
+    }
+
+    /**
+     * Encodes the first {@code length} samples of a reusable PCM buffer to
+     * A-law.
+     */
+    public static byte[] pcmToAlaw(short[] pcm, int length) {
+        byte[] alaw = new byte[length];
+        for (int i = 0; i < length; i++) {
+            alaw[i] = PCM_TO_ALAW[pcm[i] & 0xFFFF];
+        }
+        return alaw;
+    }
+
+    /**
+     * Encodes 16-bit PCM samples to U-law without an intermediate byte buffer.
+     */
+    public static byte[] pcmToUlaw(short[] pcm) {
+        return pcmToUlaw(pcm, pcm.length);
+    }
+
+    /**
+     * Encodes the first {@code length} samples of a reusable PCM buffer to
+     * U-law.
+     */
+    public static byte[] pcmToUlaw(short[] pcm, int length) {
+        byte[] ulaw = new byte[length];
+        for (int i = 0; i < length; i++) {
+            ulaw[i] = PCM_TO_ULAW[pcm[i] & 0xFFFF];
+        }
+        return ulaw;
+    }
+
+    /**
+     * Decodes A-law into a caller-owned sample buffer, for hot loops that
+     * must not allocate.
+     *
+     * @param pcm Receives {@code alaw.length} samples
+     */
+    public static void aLawToPcm(byte[] alaw, short[] pcm) {
+        for (int i = 0; i < alaw.length; i++) {
+            pcm[i] = ALAW_TO_PCM[alaw[i] & 0xFF];
+        }
+    }
+
+    /**
+     * Decodes U-law into a caller-owned sample buffer, for hot loops that
+     * must not allocate.
+     *
+     * @param pcm Receives {@code ulaw.length} samples
+     */
+    public static void uLawToPcm(byte[] ulaw, short[] pcm) {
+        for (int i = 0; i < ulaw.length; i++) {
+            pcm[i] = ULAW_TO_PCM[ulaw[i] & 0xFF];
+        }
+    }
+
+    // --- Native segments ---
+
+    /**
+     * Decodes A-law from native memory, such as an RTP payload slice, into a
+     * native PCM buffer ready for {@code opus_encode}.
+     *
+     * @param pcm Receives {@code samples} 16-bit samples in native byte order
+     */
+    public static void aLawToPcm(MemorySegment alaw, MemorySegment pcm, int samples) {
+        for (int i = 0; i < samples; i++) {
+            pcm.setAtIndex(ValueLayout.JAVA_SHORT, i, ALAW_TO_PCM[alaw.get(ValueLayout.JAVA_BYTE, i) & 0xFF]);
+        }
+    }
+
+    /**
+     * Decodes U-law from native memory into a native PCM buffer.
+     *
+     * @param pcm Receives {@code samples} 16-bit samples in native byte order
+     */
+    public static void uLawToPcm(MemorySegment ulaw, MemorySegment pcm, int samples) {
+        for (int i = 0; i < samples; i++) {
+            pcm.setAtIndex(ValueLayout.JAVA_SHORT, i, ULAW_TO_PCM[ulaw.get(ValueLayout.JAVA_BYTE, i) & 0xFF]);
+        }
+    }
+
+    /**
+     * Encodes native PCM, such as {@code opus_decode} output, to A-law
+     * directly into native memory, such as an outgoing RTP payload.
+     */
+    public static void pcmToAlaw(MemorySegment pcm, MemorySegment alaw, int samples) {
+        for (int i = 0; i < samples; i++) {
+            alaw.set(ValueLayout.JAVA_BYTE, i, PCM_TO_ALAW[pcm.getAtIndex(ValueLayout.JAVA_SHORT, i) & 0xFFFF]);
+        }
+    }
+
+    /**
+     * Encodes native PCM to U-law directly into native memory.
+     */
+    public static void pcmToUlaw(MemorySegment pcm, MemorySegment ulaw, int samples) {
+        for (int i = 0; i < samples; i++) {
+            ulaw.set(ValueLayout.JAVA_BYTE, i, PCM_TO_ULAW[pcm.getAtIndex(ValueLayout.JAVA_SHORT, i) & 0xFFFF]);
+        }
+    }
+
     private static short decodeAlaw(int alaw) {
         alaw ^= 0xD5;
         int sign = (alaw & 0x80) != 0 ? -1 : 1;
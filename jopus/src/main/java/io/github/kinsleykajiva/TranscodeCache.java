@@ -0,0 +1,216 @@
+package io.github.kinsleykajiva;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, content-addressed cache for one-shot {@link AudioBuilder}
+ * conversions.
+ * <p>
+ * Entries are keyed on a 128-bit MurmurHash3 of the input bytes together with
+ * the conversion parameters, so repeated conversions of the same prompt or
+ * greeting are answered without any native codec work. Results are kept
+ * off-heap and evicted least-recently-used once their combined size exceeds
+ * the configured budget.
+ * <p>
+ * Enable it with {@link AudioLib#enableCache(long)}.
+ */
+public class TranscodeCache {
+
+    /**
+     * Snapshot of cache counters.
+     *
+     * @param hits      Lookups answered from the cache
+     * @param misses    Lookups that ran the conversion
+     * @param evictions Entries dropped to stay within the size budget
+     * @param entries   Entries currently cached
+     * @param bytes     Off-heap bytes held by cached results
+     * @param maxBytes  Configured size budget
+     */
+    public record Stats(long hits, long misses, long evictions, int entries, long bytes, long maxBytes) {
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+    }
+
+    record Key(long hashHigh, long hashLow, int inputLength, String format, String output, int sampleRate,
+            int bitrate, int channels) {
+    }
+
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class,
+            ByteOrder.LITTLE_ENDIAN);
+
+    private final long maxBytes;
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<Key, MemorySegment> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long currentBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxBytes Upper bound for the combined size of cached results
+     */
+    public TranscodeCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cached result for a key, or runs the conversion and caches
+     * its result.
+     */
+    String getOrCompute(Key key, Supplier<String> conversion) {
+        MemorySegment cached;
+        synchronized (this) {
+            cached = entries.get(key);
+        }
+        if (cached != null) {
+            hits.increment();
+            return new String(cached.toArray(ValueLayout.JAVA_BYTE), StandardCharsets.ISO_8859_1);
+        }
+
+        misses.increment();
+        String result = conversion.get();
+        // Base64 output is pure ASCII, so Latin-1 stores it one byte per char
+        byte[] bytes = result.getBytes(StandardCharsets.ISO_8859_1);
+        if (bytes.length <= maxBytes) {
+            // Auto arena: an evicted value is freed by the GC once no reader
+            // is still copying out of it
+            MemorySegment value = Arena.ofAuto().allocate(bytes.length);
+            MemorySegment.copy(bytes, 0, value, ValueLayout.JAVA_BYTE, 0, bytes.length);
+            put(key, value);
+        }
+        return result;
+    }
+
+    private synchronized void put(Key key, MemorySegment value) {
+        MemorySegment previous = entries.put(key, value);
+        if (previous != null) {
+            currentBytes -= previous.byteSize();
+        }
+        currentBytes += value.byteSize();
+
+        Iterator<Map.Entry<Key, MemorySegment>> it = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && it.hasNext()) {
+            Map.Entry<Key, MemorySegment> eldest = it.next();
+            currentBytes -= eldest.getValue().byteSize();
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Drops every cached entry. Counters are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), entries.size(), currentBytes, maxBytes);
+    }
+
+    static Key key(byte[] input, String format, String output, int sampleRate, int bitrate, int channels) {
+        long[] hash = murmur3x64_128(input, 0x6A6F707573L);
+        return new Key(hash[0], hash[1], input.length, format, output, sampleRate, bitrate, channels);
+    }
+
+    // MurmurHash3 x64 128-bit (public domain, Austin Appleby)
+    static long[] murmur3x64_128(byte[] data, long seed) {
+        final long c1 = 0x87c37b91114253d5L;
+        final long c2 = 0x4cf5ad432745937fL;
+        long h1 = seed;
+        long h2 = seed;
+        int length = data.length;
+        int blocks = length / 16;
+
+        for (int i = 0; i < blocks; i++) {
+            long k1 = (long) LONG_LE.get(data, i * 16);
+            long k2 = (long) LONG_LE.get(data, i * 16 + 8);
+
+            k1 *= c1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= c2;
+            h1 ^= k1;
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            k2 *= c2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= c1;
+            h2 ^= k2;
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        long k1 = 0;
+        long k2 = 0;
+        int tail = blocks * 16;
+        switch (length & 15) {
+            case 15: k2 ^= (long) (data[tail + 14] & 0xFF) << 48;
+            case 14: k2 ^= (long) (data[tail + 13] & 0xFF) << 40;
+            case 13: k2 ^= (long) (data[tail + 12] & 0xFF) << 32;
+            case 12: k2 ^= (long) (data[tail + 11] & 0xFF) << 24;
+            case 11: k2 ^= (long) (data[tail + 10] & 0xFF) << 16;
+            case 10: k2 ^= (long) (data[tail + 9] & 0xFF) << 8;
+            case 9:
+                k2 ^= data[tail + 8] & 0xFF;
+                k2 *= c2;
+                k2 = Long.rotateLeft(k2, 33);
+                k2 *= c1;
+                h2 ^= k2;
+            case 8: k1 ^= (long) (data[tail + 7] & 0xFF) << 56;
+            case 7: k1 ^= (long) (data[tail + 6] & 0xFF) << 48;
+            case 6: k1 ^= (long) (data[tail + 5] & 0xFF) << 40;
+            case 5: k1 ^= (long) (data[tail + 4] & 0xFF) << 32;
+            case 4: k1 ^= (long) (data[tail + 3] & 0xFF) << 24;
+            case 3: k1 ^= (long) (data[tail + 2] & 0xFF) << 16;
+            case 2: k1 ^= (long) (data[tail + 1] & 0xFF) << 8;
+            case 1:
+                k1 ^= data[tail] & 0xFF;
+                k1 *= c1;
+                k1 = Long.rotateLeft(k1, 31);
+                k1 *= c2;
+                h1 ^= k1;
+            default:
+                break;
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        h2 += h1;
+        return new long[] { h1, h2 };
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -0,0 +1,354 @@
+package io.github.kinsleykajiva.broadcast;
+
+import io.github.kinsleykajiva.G711Utils;
+import io.github.kinsleykajiva.opus.EncoderProfile;
+import io.github.kinsleykajiva.opus.OpusCodec;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static io.github.kinsleykajiva.opus.opus_h.*;
+
+/**
+ * One-to-many audio fan-out for hold music and live announcements.
+ * <p>
+ * The publisher hands in each 20 ms PCM frame once. The channel encodes it
+ * once per distinct output format (one Opus encode per {@link EncoderProfile},
+ * one G.711 transcode per law) and publishes the immutable packet into a
+ * lock-free ring for that format. Any number of {@link Subscription}s read the
+ * ring through their own cursor, so CPU cost follows the number of formats
+ * rather than the number of listeners.
+ * <p>
+ * A subscriber that falls more than one ring length behind skips ahead to the
+ * oldest packet still available instead of holding the publisher back; the
+ * skipped packets are counted in {@link Subscription#droppedPackets()}.
+ * <p>
+ * {@link #publish(short[])} must be called from a single thread.
+ * Subscriptions may be opened, polled and closed from any thread, but each
+ * subscription must be polled by one thread at a time. {@link #close()} waits
+ * for a publish in progress to finish before it frees the encoders.
+ */
+public class BroadcastChannel implements AutoCloseable {
+
+    private static final int MAX_PACKET_BYTES = 4000;
+
+    private final int sampleRate;
+    private final int frameSize;
+    private final int ringCapacity;
+
+    private final Map<Object, Track> tracksByFormat = new ConcurrentHashMap<>();
+    private final List<Track> tracks = new CopyOnWriteArrayList<>();
+    // Tracks without subscribers; their encoders are destroyed on the
+    // publishing thread so an encode in progress is never pulled away
+    private final Queue<Track> retired = new ConcurrentLinkedQueue<>();
+
+    private final Arena arena = Arena.ofShared();
+    private final MemorySegment pcmNative;
+    private final MemorySegment outNative;
+    // Held for a whole publish, and by close() while it frees the encoders
+    // and native scratch that publish uses. Only the publisher and close()
+    // ever take it, so a publish never waits on subscribers
+    private final Object publishLock = new Object();
+    private volatile boolean closed;
+
+    /**
+     * @param sampleRate   Sample rate of the published mono PCM
+     * @param ringCapacity Packets retained per format; rounded up to a power of
+     *                     two. At 20 ms per packet, 64 keeps 1.28 s of backlog.
+     */
+    public BroadcastChannel(int sampleRate, int ringCapacity) {
+        if (ringCapacity < 2) {
+            throw new IllegalArgumentException("Ring capacity must be at least 2: " + ringCapacity);
+        }
+        this.sampleRate = sampleRate;
+        this.frameSize = sampleRate / 50;
+        this.ringCapacity = Integer.highestOneBit(ringCapacity - 1) << 1;
+        this.pcmNative = arena.allocate(C_SHORT, frameSize);
+        this.outNative = arena.allocate(C_CHAR, MAX_PACKET_BYTES);
+    }
+
+    /**
+     * Subscribe to the stream encoded as Opus with the given profile. The
+     * profile must be mono and use the channel's sample rate.
+     */
+    public Subscription subscribeOpus(EncoderProfile profile) {
+        if (profile.sampleRate() != sampleRate || profile.channels() != 1) {
+            throw new IllegalArgumentException("Profile must be mono at " + sampleRate + " Hz: " + profile);
+        }
+        return subscribe(profile);
+    }
+
+    /**
+     * Subscribe to the stream transcoded to G.711. Requires an 8 kHz channel.
+     *
+     * @param isALaw True for A-law, False for u-law
+     */
+    public Subscription subscribeG711(boolean isALaw) {
+        if (sampleRate != 8000) {
+            throw new IllegalStateException("G.711 requires an 8000 Hz channel, not " + sampleRate);
+        }
+        return subscribe(isALaw ? G711Law.ALAW : G711Law.ULAW);
+    }
+
+    private enum G711Law {
+        ALAW, ULAW
+    }
+
+    private synchronized Subscription subscribe(Object format) {
+        if (closed) {
+            throw new IllegalStateException("Broadcast channel is closed");
+        }
+        Track track = tracksByFormat.get(format);
+        if (track == null) {
+            track = new Track(format, ringCapacity);
+            tracksByFormat.put(format, track);
+            tracks.add(track);
+        }
+        track.subscribers++;
+        return new Subscription(this, track);
+    }
+
+    private synchronized void unsubscribe(Track track) {
+        if (--track.subscribers == 0 && tracksByFormat.remove(track.format, track)) {
+            tracks.remove(track);
+            retired.offer(track);
+        }
+    }
+
+    /**
+     * @return Number of distinct formats currently being produced
+     */
+    public int formatCount() {
+        return tracks.size();
+    }
+
+    /**
+     * Encodes one 20 ms frame once per subscribed format and publishes the
+     * results.
+     *
+     * @param pcm Exactly one frame of mono 16-bit PCM (sampleRate / 50 samples)
+     */
+    public void publish(short[] pcm) {
+        if (pcm.length != frameSize) {
+            throw new IllegalArgumentException("Expected " + frameSize + " samples, got " + pcm.length);
+        }
+        synchronized (publishLock) {
+            if (closed) {
+                throw new IllegalStateException("Broadcast channel is closed");
+            }
+            Track gone;
+            while ((gone = retired.poll()) != null) {
+                gone.release();
+            }
+
+            boolean pcmCopied = false;
+            for (Track track : tracks) {
+                byte[] payload;
+                if (track.format instanceof G711Law law) {
+                    payload = law == G711Law.ALAW ? G711Utils.pcmToAlaw(pcm) : G711Utils.pcmToUlaw(pcm);
+                } else {
+                    if (!pcmCopied) {
+                        MemorySegment.copy(pcm, 0, pcmNative, C_SHORT, 0, frameSize);
+                        pcmCopied = true;
+                    }
+                    int len = opus_encode(track.encoder(), pcmNative, frameSize, outNative, MAX_PACKET_BYTES);
+                    if (len < 0) {
+                        throw new RuntimeException("Opus encode error: " + len);
+                    }
+                    payload = new byte[len];
+                    MemorySegment.copy(outNative, C_CHAR, 0, payload, 0, len);
+                }
+                track.publish(payload);
+            }
+        }
+    }
+
+    /**
+     * Stops the channel and frees its encoders, after any publish in
+     * progress on another thread has finished.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        synchronized (publishLock) {
+            closed = true;
+            Track gone;
+            while ((gone = retired.poll()) != null) {
+                gone.release();
+            }
+            for (Track track : tracks) {
+                track.release();
+            }
+            tracks.clear();
+            tracksByFormat.clear();
+            arena.close();
+        }
+    }
+
+    /**
+     * An immutable encoded frame shared by every subscriber of a format.
+     */
+    public static final class Packet {
+        private final long sequence;
+        private final byte[] payload;
+
+        Packet(long sequence, byte[] payload) {
+            this.sequence = sequence;
+            this.payload = payload;
+        }
+
+        /**
+         * @return Position of this packet in its format's stream, starting at 0
+         */
+        public long sequence() {
+            return sequence;
+        }
+
+        public int size() {
+            return payload.length;
+        }
+
+        /**
+         * Copies the payload into a caller-owned buffer, for example right after
+         * a prebuilt RTP header.
+         */
+        public void copyTo(byte[] destination, int offset) {
+            System.arraycopy(payload, 0, destination, offset, payload.length);
+        }
+
+        /**
+         * @return A read-only view of the payload with its own position
+         */
+        public ByteBuffer asReadOnlyBuffer() {
+            return ByteBuffer.wrap(payload).asReadOnlyBuffer();
+        }
+    }
+
+    /**
+     * Encoder and packet ring for one output format. Written only by the
+     * publishing thread.
+     */
+    private static final class Track {
+        private static final VarHandle PUBLISHED;
+
+        static {
+            try {
+                PUBLISHED = MethodHandles.lookup().findVarHandle(Track.class, "published", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final Object format;
+        private final AtomicReferenceArray<Packet> ring;
+        private final int mask;
+        // Sequence of the newest packet, -1 before the first publish
+        private volatile long published = -1;
+        private MemorySegment encoder;
+        // Guarded by the channel monitor
+        private int subscribers;
+
+        Track(Object format, int capacity) {
+            this.format = format;
+            this.ring = new AtomicReferenceArray<>(capacity);
+            this.mask = capacity - 1;
+        }
+
+        private MemorySegment encoder() {
+            if (encoder == null) {
+                encoder = OpusCodec.createEncoder((EncoderProfile) format);
+            }
+            return encoder;
+        }
+
+        void publish(byte[] payload) {
+            long sequence = published + 1;
+            ring.setRelease((int) (sequence & mask), new Packet(sequence, payload));
+            PUBLISHED.setRelease(this, sequence);
+        }
+
+        void release() {
+            OpusCodec.destroyEncoder(encoder);
+            encoder = null;
+        }
+    }
+
+    /**
+     * A listener's cursor into one format's ring.
+     */
+    public static final class Subscription implements AutoCloseable {
+        private final BroadcastChannel channel;
+        private final Track track;
+        private final int capacity;
+        private long cursor;
+        private long dropped;
+        private boolean closed;
+
+        Subscription(BroadcastChannel channel, Track track) {
+            this.channel = channel;
+            this.track = track;
+            this.capacity = track.mask + 1;
+            // Join live: the first packet delivered is the next one published
+            this.cursor = track.published + 1;
+        }
+
+        /**
+         * Returns the next packet, or null if the subscriber is caught up.
+         * Never blocks.
+         */
+        public Packet poll() {
+            while (true) {
+                long head = track.published;
+                if (cursor > head) {
+                    return null;
+                }
+                long oldest = head - capacity + 1;
+                if (cursor < oldest) {
+                    dropped += oldest - cursor;
+                    cursor = oldest;
+                }
+                Packet packet = track.ring.getAcquire((int) (cursor & track.mask));
+                if (packet != null && packet.sequence == cursor) {
+                    cursor++;
+                    return packet;
+                }
+                // The slot was overwritten while we read it; re-evaluate
+                // against the new head and skip ahead
+            }
+        }
+
+        /**
+         * @return Packets skipped because this subscriber fell behind
+         */
+        public long droppedPackets() {
+            return dropped;
+        }
+
+        /**
+         * @return Packets published but not yet polled
+         */
+        public long backlog() {
+            return Math.min(capacity, Math.max(0, track.published + 1 - cursor));
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                channel.unsubscribe(track);
+            }
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package io.github.kinsleykajiva.engine;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Concurrent map from primitive {@code long} keys (call ids, packed
+ * address/port pairs) to sessions, for per-packet lookups.
+ * <p>
+ * Keys and values sit in two parallel arrays with linear probing, so a
+ * {@link #get} is a multiply, a shift and usually one or two array reads: no
+ * boxing, no nodes, no allocation, no locks. Readers never block. Writers
+ * lock one of {@value #STRIPES} stripes chosen by key, which serialises
+ * writes to the same key while writes to different keys proceed in parallel;
+ * free slots are claimed with a CAS. A removed entry leaves its key behind
+ * as a tombstone with a null value until the next resize, which rebuilds the
+ * table from live entries under all stripe locks.
+ * <p>
+ * Iteration with {@link #forEachValue} is weakly consistent, like the
+ * {@code java.util.concurrent} maps. Null values are not permitted.
+ */
+public final class LongSessionMap<V> {
+
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(Object[].class);
+    private static final int STRIPES = 16;
+    private static final long EMPTY = 0;
+    // Returned by store() when no slot is free
+    private static final Object FULL = new Object();
+
+    /**
+     * One generation of the table; replaced whole on resize.
+     */
+    private static final class Table {
+        final long[] keys;
+        final Object[] values;
+        final int shift;
+        final int mask;
+
+        Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new Object[capacity];
+            this.shift = 64 - Integer.numberOfTrailingZeros(capacity);
+            this.mask = capacity - 1;
+        }
+    }
+
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+    // Key 0 doubles as the empty-slot marker, so its value lives here
+    private volatile Object zeroValue;
+    private volatile Table table;
+    // Slots holding a key, live or tombstone
+    private final AtomicInteger used = new AtomicInteger();
+    private final AtomicInteger size = new AtomicInteger();
+
+    public LongSessionMap() {
+        this(64);
+    }
+
+    /**
+     * @param expectedSize Entries to hold without resizing
+     */
+    public LongSessionMap(int expectedSize) {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.table = new Table(capacityFor(expectedSize));
+    }
+
+    private static int capacityFor(int entries) {
+        // At most half full, so probe runs stay short
+        return Integer.highestOneBit(Math.max(16, entries * 2) - 1) << 1;
+    }
+
+    private static long hash(long key) {
+        return key * 0x9E3779B97F4A7C15L;
+    }
+
+    /**
+     * @return The session for the key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if (key == EMPTY) {
+            return (V) zeroValue;
+        }
+        Table t = table;
+        long[] keys = t.keys;
+        int i = (int) (hash(key) >>> t.shift);
+        // Bounded, since racing writers can briefly fill every slot
+        for (int probes = 0; probes <= t.mask; probes++) {
+            long k = (long) KEYS.getAcquire(keys, i);
+            if (k == key) {
+                return (V) VALUES.getAcquire(t.values, i);
+            }
+            if (k == EMPTY) {
+                return null;
+            }
+            i = (i + 1) & t.mask;
+        }
+        return null;
+    }
+
+    /**
+     * @return The previous session for the key, or null
+     */
+    public V put(long key, V value) {
+        return insert(key, value, false);
+    }
+
+    /**
+     * @return The existing session for the key, or null if the value was
+     *         added
+     */
+    public V putIfAbsent(long key, V value) {
+        return insert(key, value, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V insert(long key, V value, boolean onlyIfAbsent) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        ReentrantLock lock = locks[(int) (hash(key) >>> 32) & (STRIPES - 1)];
+        while (true) {
+            Object previous;
+            lock.lock();
+            try {
+                if (key == EMPTY) {
+                    previous = zeroValue;
+                    if (previous == null || !onlyIfAbsent) {
+                        zeroValue = value;
+                    }
+                    if (previous == null) {
+                        size.incrementAndGet();
+                    }
+                    return (V) previous;
+                }
+                previous = store(table, key, value, onlyIfAbsent);
+            } finally {
+                lock.unlock();
+            }
+            // Resize outside the stripe lock, so the all-locks resize cannot
+            // deadlock with another writer
+            if (previous != FULL) {
+                if (used.get() > (table.mask + 1) / 2) {
+                    resize();
+                }
+                return (V) previous;
+            }
+            // Other stripes took the last free slots first
+            resize();
+        }
+    }
+
+    /**
+     * Sets the key's value, claiming a slot if the key has none. Called under
+     * the key's stripe lock.
+     *
+     * @return The previous value, null, or {@link #FULL}
+     */
+    private Object store(Table t, long key, Object value, boolean onlyIfAbsent) {
+        int i = (int) (hash(key) >>> t.shift);
+        for (int probes = 0; probes <= t.mask; probes++) {
+            long k = (long) KEYS.getAcquire(t.keys, i);
+            // Writers of other stripes may race for the same free slot
+            if (k == EMPTY && KEYS.compareAndSet(t.keys, i, EMPTY, key)) {
+                used.incrementAndGet();
+                k = key;
+            }
+            if (k == key) {
+                Object previous = VALUES.getAcquire(t.values, i);
+                if (previous == null || !onlyIfAbsent) {
+                    VALUES.setRelease(t.values, i, value);
+                }
+                if (previous == null) {
+                    size.incrementAndGet();
+                }
+                return previous;
+            }
+            i = (i + 1) & t.mask;
+        }
+        return FULL;
+    }
+
+    /**
+     * @return The removed session, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        ReentrantLock lock = locks[(int) (hash(key) >>> 32) & (STRIPES - 1)];
+        lock.lock();
+        try {
+            if (key == EMPTY) {
+                Object previous = zeroValue;
+                zeroValue = null;
+                if (previous != null) {
+                    size.decrementAndGet();
+                }
+                return (V) previous;
+            }
+            Table t = table;
+            int i = (int) (hash(key) >>> t.shift);
+            for (int probes = 0; probes <= t.mask; probes++) {
+                long k = (long) KEYS.getAcquire(t.keys, i);
+                if (k == key) {
+                    Object previous = VALUES.getAcquire(t.values, i);
+                    if (previous != null) {
+                        // Tombstone: the key stays, so probe runs through it
+                        // remain intact
+                        VALUES.setRelease(t.values, i, null);
+                        size.decrementAndGet();
+                    }
+                    return (V) previous;
+                }
+                if (k == EMPTY) {
+                    return null;
+                }
+                i = (i + 1) & t.mask;
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void resize() {
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+        try {
+            Table old = table;
+            if (used.get() <= (old.mask + 1) / 2) {
+                return; // Another writer resized first
+            }
+            // Sized for the live entries only; tombstones are dropped, so a
+            // table churning through short calls stays the same size
+            int live = 0;
+            for (int i = 0; i <= old.mask; i++) {
+                if (old.values[i] != null) {
+                    live++;
+                }
+            }
+            Table t = new Table(Math.max(old.mask + 1, capacityFor(live * 2)));
+            for (int i = 0; i <= old.mask; i++) {
+                Object value = old.values[i];
+                if (value != null) {
+                    int j = (int) (hash(old.keys[i]) >>> t.shift);
+                    while (t.keys[j] != EMPTY) {
+                        j = (j + 1) & t.mask;
+                    }
+                    t.keys[j] = old.keys[i];
+                    t.values[j] = value;
+                }
+            }
+            used.set(live);
+            // The volatile write publishes the filled arrays to readers
+            table = t;
+        } finally {
+            for (ReentrantLock lock : locks) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Visits every live session. Weakly consistent: sessions added or removed
+     * during the walk may or may not be seen, and the action may remove
+     * entries.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> action) {
+        Object zero = zeroValue;
+        if (zero != null) {
+            action.accept((V) zero);
+        }
+        Table t = table;
+        for (int i = 0; i <= t.mask; i++) {
+            Object value = VALUES.getAcquire(t.values, i);
+            if (value != null) {
+                action.accept((V) value);
+            }
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public boolean isEmpty() {
+        return size.get() == 0;
+    }
+}
@@ -0,0 +1,575 @@
+package io.github.kinsleykajiva.engine;
+
+import io.github.kinsleykajiva.G711Utils;
+import io.github.kinsleykajiva.metrics.CodecMetrics;
+import io.github.kinsleykajiva.metrics.LatencyHistogram;
+import io.github.kinsleykajiva.opus.EncoderProfile;
+import io.github.kinsleykajiva.opus.OpusCodec;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static io.github.kinsleykajiva.opus.opus_h.*;
+
+/**
+ * Media engine that shards sessions across single-threaded event loops, one
+ * per core.
+ * <p>
+ * A session is pinned to one loop for its whole life, chosen by hashing its
+ * call id, so both legs of a call share a loop. The loop creates the session's
+ * native encoder or decoder and owns the scratch buffers used to drive it, so
+ * the tens of KB of codec state stay in that core's caches instead of
+ * migrating between threads on every frame.
+ * <p>
+ * Each loop runs a {@link TimerWheel} with 1 ms resolution and services every
+ * session once per 20 ms frame. Session phases are staggered over the 20
+ * slots of a frame, so a loop's work is spread evenly rather than arriving as
+ * one burst per frame. Frames enter a session through its own
+ * {@link SpscQueue}; loop commands (open, close) go through a per-loop SPSC
+ * queue whose producers take turns. Encoded packets and decoded frames are
+ * handed to the session's {@link PacketSink} on the loop thread, where a
+ * non-blocking send, for example on a {@code DatagramChannel}, avoids any
+ * further hand-off. A failure while servicing one session is confined to it
+ * and reported to the {@link FailureListener}; a loop without sessions
+ * sleeps until there is work.
+ * <p>
+ * Sessions are mono at 8 kHz, matching G.711. {@link Session#offer} may be
+ * called by one producer thread per session.
+ */
+public class MediaEngine implements AutoCloseable {
+
+    // Wheel resolution; sessions are serviced every FRAME_TICKS ticks
+    private static final long TICK_NANOS = 1_000_000L;
+    private static final int FRAME_TICKS = 20;
+    private static final int WHEEL_SLOTS = 64;
+    // 20ms @ 8000Hz
+    private static final int FRAME_SIZE = 160;
+    // 120 ms, the longest frame an Opus packet can carry
+    private static final int MAX_FRAME_SIZE = 960;
+    private static final int MAX_PACKET_BYTES = 4000;
+    private static final int INBOUND_CAPACITY = 16;
+    private static final int COMMAND_CAPACITY = 1024;
+    // A session with more than this many frames queued works off the backlog
+    // at up to MAX_CATCH_UP frames per tick
+    private static final int CATCH_UP_THRESHOLD = 2;
+    private static final int MAX_CATCH_UP = 3;
+    // A loop with no sessions has nothing to pace; it sleeps this long
+    // between checks unless new work wakes it
+    private static final long IDLE_PARK_NANOS = 50_000_000L;
+
+    /**
+     * Receives a session's output on its loop thread. Must not block.
+     */
+    @FunctionalInterface
+    public interface PacketSink {
+        /**
+         * @param payload An Opus packet for encoding sessions, a G.711 frame
+         *                for decoding sessions. Owned by the sink.
+         */
+        void onPacket(Session session, byte[] payload);
+    }
+
+    /**
+     * Told about failures on a loop thread: a codec that could not be
+     * created, a sink that threw, or an unexpected error while servicing a
+     * session. The loop keeps running. Called on the loop thread; must not
+     * block.
+     */
+    @FunctionalInterface
+    public interface FailureListener {
+        /**
+         * @param session The affected session, or null for a failed loop
+         *                command
+         */
+        void onFailure(Session session, Throwable error);
+    }
+
+    private final EventLoop[] loops;
+    private final LatencyHistogram tickLateness = new LatencyHistogram();
+    private final AtomicLong nextSessionId = new AtomicLong();
+    private final LongAdder failures = new LongAdder();
+    private volatile FailureListener failureListener;
+    private volatile boolean closed;
+
+    /**
+     * Creates an engine with one loop per available processor.
+     */
+    public MediaEngine() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param loopCount Number of event loop threads
+     */
+    public MediaEngine(int loopCount) {
+        if (loopCount < 1) {
+            throw new IllegalArgumentException("Loop count must be positive: " + loopCount);
+        }
+        OpusCodec.loadNativeLibraries();
+        this.loops = new EventLoop[loopCount];
+        for (int i = 0; i < loopCount; i++) {
+            loops[i] = new EventLoop(i);
+        }
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+    }
+
+    /**
+     * Opens a G.711 to Opus session using the default encoder profile.
+     *
+     * @param callId Sessions with the same call id share a loop
+     */
+    public Session openEncoder(long callId, boolean isALaw, PacketSink sink) {
+        return openEncoder(callId, EncoderProfile.DEFAULT, isALaw, sink);
+    }
+
+    /**
+     * Opens a G.711 to Opus session. Each offered 20 ms G.711 frame yields one
+     * Opus packet.
+     *
+     * @param callId  Sessions with the same call id share a loop
+     * @param profile Mono 8 kHz encoder settings
+     */
+    public Session openEncoder(long callId, EncoderProfile profile, boolean isALaw, PacketSink sink) {
+        if (profile.sampleRate() != 8000 || profile.channels() != 1) {
+            throw new IllegalArgumentException("Profile must be mono at 8000 Hz: " + profile);
+        }
+        return open(callId, profile, isALaw, sink);
+    }
+
+    /**
+     * Opens an Opus to G.711 session. Each offered Opus packet yields one
+     * G.711 frame.
+     *
+     * @param callId Sessions with the same call id share a loop
+     */
+    public Session openDecoder(long callId, boolean isALaw, PacketSink sink) {
+        return open(callId, null, isALaw, sink);
+    }
+
+    private Session open(long callId, EncoderProfile profile, boolean isALaw, PacketSink sink) {
+        if (closed) {
+            throw new IllegalStateException("Media engine is closed");
+        }
+        EventLoop loop = loops[shard(callId)];
+        Session session = new Session(loop, nextSessionId.incrementAndGet(), callId, profile, isALaw, sink);
+        if (!loop.submit(() -> loop.register(session))) {
+            session.closed = true;
+            throw new IllegalStateException("Media engine is closed");
+        }
+        return session;
+    }
+
+    private int shard(long callId) {
+        // Fibonacci hashing spreads sequential ids evenly
+        long hash = callId * 0x9E3779B97F4A7C15L;
+        return Math.floorMod((int) (hash >>> 32), loops.length);
+    }
+
+    public int loopCount() {
+        return loops.length;
+    }
+
+    /**
+     * @return Sessions currently registered across all loops
+     */
+    public int sessionCount() {
+        int count = 0;
+        for (EventLoop loop : loops) {
+            count += loop.sessionCount;
+        }
+        return count;
+    }
+
+    /**
+     * How late each loop woke for its timer ticks, in nanoseconds. The tail of
+     * this histogram is the scheduling jitter added to every packet.
+     */
+    public LatencyHistogram tickLateness() {
+        return tickLateness;
+    }
+
+    /**
+     * @param listener Receives loop failures from now on; null for none
+     */
+    public void setFailureListener(FailureListener listener) {
+        this.failureListener = listener;
+    }
+
+    /**
+     * @return Failures reported on any loop: codecs that could not be
+     *         created, sinks that threw and errors while servicing a session
+     */
+    public long failures() {
+        return failures.sum();
+    }
+
+    private void reportFailure(Session session, Throwable error) {
+        failures.increment();
+        FailureListener listener = failureListener;
+        if (listener != null) {
+            try {
+                listener.onFailure(session, error);
+            } catch (RuntimeException ignored) {
+                // A faulty listener must not take the loop down with it
+            }
+        }
+    }
+
+    /**
+     * Stops every loop and releases all session codecs.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (EventLoop loop : loops) {
+            loop.running = false;
+            LockSupport.unpark(loop.thread);
+        }
+        for (EventLoop loop : loops) {
+            try {
+                loop.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // --- Event loop ---
+
+    private final class EventLoop implements Runnable {
+        private final Thread thread;
+        // Many threads may open and close sessions; they take turns as the
+        // single producer
+        private final SpscQueue<Runnable> commands = new SpscQueue<>(COMMAND_CAPACITY);
+        private final TimerWheel wheel = new TimerWheel(WHEEL_SLOTS);
+        private final List<Session> sessions = new ArrayList<>();
+        private volatile boolean running = true;
+        // Set under the commands lock once the loop has drained its last
+        // commands; later submissions are refused
+        private boolean stopped;
+        // Parked with no sessions; submit() wakes it
+        private volatile boolean idle;
+        private volatile int sessionCount;
+        private int nextPhase;
+
+        // Scratch, created and used only on the loop thread
+        private MemorySegment pcmNative;
+        private MemorySegment packetNative;
+        private final short[] pcm = new short[MAX_FRAME_SIZE];
+
+        EventLoop(int index) {
+            this.thread = new Thread(this, "jopus-media-" + index);
+            thread.setDaemon(true);
+        }
+
+        /**
+         * @return False if the loop has stopped and the command will never run
+         */
+        boolean submit(Runnable command) {
+            synchronized (commands) {
+                while (!stopped && !commands.offer(command)) {
+                    if (!running) {
+                        // Stopping; its shutdown releases every session anyway
+                        return false;
+                    }
+                    Thread.onSpinWait();
+                }
+                if (stopped) {
+                    return false;
+                }
+            }
+            if (idle) {
+                LockSupport.unpark(thread);
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            try (Arena arena = Arena.ofConfined()) {
+                pcmNative = arena.allocate(C_SHORT, MAX_FRAME_SIZE);
+                packetNative = arena.allocate(C_CHAR, MAX_PACKET_BYTES);
+                long start = System.nanoTime();
+                try {
+                    while (running) {
+                        long now = System.nanoTime();
+                        long due = (now - start) / TICK_NANOS;
+                        if (due > wheel.tick()) {
+                            // An idle sleep is not lateness
+                            if (!idle) {
+                                tickLateness.record(now - start - (wheel.tick() + 1) * TICK_NANOS);
+                            }
+                            wheel.advanceTo(due);
+                        }
+                        // After advancing, so sessions opened while idle are
+                        // phased from the current tick
+                        runCommands();
+                        // Published before the queue is checked, so a
+                        // concurrent submit() either is seen here or unparks
+                        idle = sessions.isEmpty();
+                        if (idle) {
+                            if (commands.size() == 0) {
+                                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                            }
+                        } else {
+                            LockSupport.parkNanos(start + (wheel.tick() + 1) * TICK_NANOS - System.nanoTime());
+                        }
+                    }
+                } finally {
+                    // Registrations that race with shutdown are refused
+                    // rather than left with nobody to release their codec
+                    synchronized (commands) {
+                        stopped = true;
+                    }
+                    runCommands();
+                    for (Session session : sessions) {
+                        session.release();
+                    }
+                    sessions.clear();
+                    sessionCount = 0;
+                }
+            }
+        }
+
+        private void runCommands() {
+            Runnable command;
+            while ((command = commands.poll()) != null) {
+                try {
+                    command.run();
+                } catch (RuntimeException e) {
+                    reportFailure(null, e);
+                }
+            }
+        }
+
+        void register(Session session) {
+            if (session.closed || !running) {
+                session.closed = true;
+                return;
+            }
+            try {
+                session.codec = session.isEncoder() ? OpusCodec.createEncoder(session.profile)
+                        : OpusCodec.createDecoder();
+            } catch (RuntimeException e) {
+                session.closed = true;
+                reportFailure(session, e);
+                return;
+            }
+            sessions.add(session);
+            sessionCount = sessions.size();
+            CodecMetrics.global().sessionOpened();
+            // Stagger phases so a frame's work is spread over its 20 slots
+            wheel.schedule(session.pacer, wheel.tick() + 1 + nextPhase);
+            nextPhase = (nextPhase + 1) % FRAME_TICKS;
+        }
+
+        void unregister(Session session) {
+            if (sessions.remove(session)) {
+                wheel.cancel(session.pacer);
+                session.release();
+                sessionCount = sessions.size();
+            }
+        }
+
+        void service(Session session, long tick) {
+            try {
+                for (int i = 0; i < MAX_CATCH_UP; i++) {
+                    byte[] input = session.inbound.poll();
+                    if (input == null) {
+                        break;
+                    }
+                    if (session.isEncoder()) {
+                        encode(session, input);
+                    } else {
+                        decode(session, input);
+                    }
+                    if (session.inbound.size() <= CATCH_UP_THRESHOLD) {
+                        break;
+                    }
+                }
+            } catch (RuntimeException e) {
+                // Confined to this session; the others on the loop carry on
+                session.errors++;
+                reportFailure(session, e);
+            } finally {
+                // Keep the phase even when this tick ran late
+                wheel.schedule(session.pacer, session.pacer.deadline() + FRAME_TICKS);
+            }
+        }
+
+        private void encode(Session session, byte[] g711) {
+            long start = System.nanoTime();
+            if (session.isALaw) {
+                G711Utils.aLawToPcm(g711, pcm);
+            } else {
+                G711Utils.uLawToPcm(g711, pcm);
+            }
+            MemorySegment.copy(pcm, 0, pcmNative, C_SHORT, 0, FRAME_SIZE);
+            int len = opus_encode(session.codec, pcmNative, FRAME_SIZE, packetNative, MAX_PACKET_BYTES);
+            CodecMetrics.global().recordEncode(1, len, System.nanoTime() - start);
+            if (len < 0) {
+                session.errors++;
+                return;
+            }
+            byte[] packet = new byte[len];
+            MemorySegment.copy(packetNative, C_CHAR, 0, packet, 0, len);
+            deliver(session, packet);
+        }
+
+        private void decode(Session session, byte[] packet) {
+            long start = System.nanoTime();
+            MemorySegment.copy(packet, 0, packetNative, C_CHAR, 0, packet.length);
+            int samples = opus_decode(session.codec, packetNative, packet.length, pcmNative, MAX_FRAME_SIZE, 0);
+            CodecMetrics.global().recordDecode(samples < 0 ? samples : samples * 2, System.nanoTime() - start);
+            if (samples < 0) {
+                session.errors++;
+                return;
+            }
+            MemorySegment.copy(pcmNative, C_SHORT, 0, pcm, 0, samples);
+            deliver(session, session.isALaw ? G711Utils.pcmToAlaw(pcm, samples) : G711Utils.pcmToUlaw(pcm, samples));
+        }
+
+        private void deliver(Session session, byte[] payload) {
+            session.framesOut++;
+            try {
+                session.sink.onPacket(session, payload);
+            } catch (RuntimeException e) {
+                // One faulty sink must not stall the other sessions on this loop
+                reportFailure(session, e);
+            }
+        }
+    }
+
+    // --- Sessions ---
+
+    /**
+     * One direction of one call leg.
+     */
+    public static final class Session implements AutoCloseable {
+        private final EventLoop loop;
+        private final long id;
+        private final long callId;
+        // Null for decoding sessions
+        private final EncoderProfile profile;
+        private final boolean isALaw;
+        private final PacketSink sink;
+        private final SpscQueue<byte[]> inbound = new SpscQueue<>(INBOUND_CAPACITY);
+        private final TimerWheel.Timeout pacer = new TimerWheel.Timeout() {
+            @Override
+            void expire(long tick) {
+                loop.service(Session.this, tick);
+            }
+        };
+        private volatile boolean closed;
+        // Written by the producer only
+        private volatile long dropped;
+        // Written by the loop only
+        private volatile long framesOut;
+        private volatile long errors;
+        private MemorySegment codec;
+
+        private Session(EventLoop loop, long id, long callId, EncoderProfile profile, boolean isALaw,
+                PacketSink sink) {
+            this.loop = loop;
+            this.id = id;
+            this.callId = callId;
+            this.profile = profile;
+            this.isALaw = isALaw;
+            this.sink = sink;
+        }
+
+        private boolean isEncoder() {
+            return profile != null;
+        }
+
+        /**
+         * Queues one input frame for the next tick: a 20 ms G.711 frame for
+         * encoding sessions, an Opus packet for decoding sessions. Never
+         * blocks; must be called from one thread at a time.
+         *
+         * @return False if the session is closed or 320 ms of input is
+         *         already queued, in which case the frame is dropped
+         */
+        public boolean offer(byte[] frame) {
+            if (isEncoder() ? frame.length != FRAME_SIZE : frame.length > MAX_PACKET_BYTES) {
+                throw new IllegalArgumentException("Unexpected frame length: " + frame.length);
+            }
+            if (closed || !inbound.offer(frame)) {
+                dropped++;
+                return false;
+            }
+            return true;
+        }
+
+        public long id() {
+            return id;
+        }
+
+        public long callId() {
+            return callId;
+        }
+
+        /**
+         * @return Frames rejected by {@link #offer} because the queue was full
+         *         or the session closed
+         */
+        public long droppedFrames() {
+            return dropped;
+        }
+
+        /**
+         * @return Packets or frames handed to the sink
+         */
+        public long framesOut() {
+            return framesOut;
+        }
+
+        /**
+         * @return Frames the codec rejected with an Opus error, and ticks
+         *         that failed unexpectedly
+         */
+        public long errors() {
+            return errors;
+        }
+
+        /**
+         * Stops the session; its codec is released on its loop within a
+         * millisecond.
+         */
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (loop.running) {
+                loop.submit(() -> loop.unregister(this));
+            }
+        }
+
+        // Loop thread only
+        private void release() {
+            if (codec == null) {
+                return;
+            }
+            if (isEncoder()) {
+                OpusCodec.destroyEncoder(codec);
+            } else {
+                OpusCodec.destroyDecoder(codec);
+            }
+            codec = null;
+            CodecMetrics.global().sessionClosed();
+        }
+    }
+}
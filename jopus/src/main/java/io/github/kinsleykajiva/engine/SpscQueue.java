@@ -0,0 +1,102 @@
+package io.github.kinsleykajiva.engine;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Bounded lock-free queue for exactly one producer thread and one consumer
+ * thread.
+ * <p>
+ * Each side publishes its index with a release store and reads the other's
+ * with an acquire load, so a hand-off costs no locks or CAS. Each side also
+ * keeps a private copy of the other's index and only re-reads the shared one
+ * when the queue looks full (producer) or empty (consumer), which keeps the
+ * two cores from bouncing the index cache lines on every call. The indexes
+ * live in one array, a cache line apart, so they never share a line.
+ * <p>
+ * {@link #offer} must only be called by the producer and {@link #poll} only
+ * by the consumer; {@link #size()} may be called from anywhere.
+ */
+public final class SpscQueue<E> {
+
+    private static final VarHandle INDEX = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // Eight longs apart, so each group sits on its own 64-byte line
+    private static final int HEAD = 8; // consumer
+    private static final int TAIL_CACHE = 9; // consumer's copy of TAIL
+    private static final int TAIL = 16; // producer
+    private static final int HEAD_CACHE = 17; // producer's copy of HEAD
+
+    private final long[] indexes = new long[25];
+    private final Object[] buffer;
+    private final int mask;
+
+    /**
+     * @param capacity Maximum queued elements; rounded up to a power of two
+     */
+    public SpscQueue(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Capacity must be at least 2: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.buffer = new Object[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Producer side. Never blocks.
+     *
+     * @return False if the queue is full
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        long tail = indexes[TAIL];
+        if (tail - indexes[HEAD_CACHE] > mask) {
+            long head = (long) INDEX.getAcquire(indexes, HEAD);
+            indexes[HEAD_CACHE] = head;
+            if (tail - head > mask) {
+                return false;
+            }
+        }
+        buffer[(int) tail & mask] = element;
+        INDEX.setRelease(indexes, TAIL, tail + 1);
+        return true;
+    }
+
+    /**
+     * Consumer side. Never blocks.
+     *
+     * @return The oldest element, or null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long head = indexes[HEAD];
+        if (head >= indexes[TAIL_CACHE]) {
+            long tail = (long) INDEX.getAcquire(indexes, TAIL);
+            indexes[TAIL_CACHE] = tail;
+            if (head >= tail) {
+                return null;
+            }
+        }
+        int slot = (int) head & mask;
+        E element = (E) buffer[slot];
+        buffer[slot] = null;
+        INDEX.setRelease(indexes, HEAD, head + 1);
+        return element;
+    }
+
+    /**
+     * @return Approximate number of queued elements
+     */
+    public int size() {
+        long head = (long) INDEX.getAcquire(indexes, HEAD);
+        long tail = (long) INDEX.getAcquire(indexes, TAIL);
+        return (int) Math.max(0, tail - head);
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
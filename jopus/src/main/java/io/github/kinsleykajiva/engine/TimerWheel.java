@@ -0,0 +1,138 @@
+package io.github.kinsleykajiva.engine;
+
+import java.util.ArrayList;
+
+/**
+ * Hashed timer wheel for one event loop thread.
+ * <p>
+ * Time is counted in ticks. A timeout due at tick {@code t} is linked into
+ * slot {@code t mod slots}, so scheduling, cancelling and expiring are O(1)
+ * however many timeouts are pending; a slot visit only skips entries that
+ * are due on a later revolution. Not thread-safe.
+ */
+final class TimerWheel {
+
+    /**
+     * Intrusive list node; a timeout is in at most one slot at a time.
+     */
+    abstract static class Timeout {
+        private long deadline;
+        private Timeout prev;
+        private Timeout next;
+        private int slot = UNSCHEDULED;
+
+        /**
+         * Runs on the loop thread. May reschedule this or any other timeout.
+         *
+         * @param tick Tick being processed, possibly later than the deadline
+         *             when the loop fell behind
+         */
+        abstract void expire(long tick);
+
+        final long deadline() {
+            return deadline;
+        }
+
+        final boolean isScheduled() {
+            return slot >= 0;
+        }
+    }
+
+    private static final int UNSCHEDULED = -1;
+    private static final int EXPIRING = -2;
+
+    private final Timeout[] slots;
+    private final int mask;
+    private final ArrayList<Timeout> expiring = new ArrayList<>();
+    private long tick;
+
+    /**
+     * @param slots Number of slots; rounded up to a power of two
+     */
+    TimerWheel(int slots) {
+        int size = Integer.highestOneBit(Math.max(2, slots) - 1) << 1;
+        this.slots = new Timeout[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return The last tick processed
+     */
+    long tick() {
+        return tick;
+    }
+
+    /**
+     * Schedules or reschedules a timeout. Deadlines not after the current
+     * tick fire on the next one.
+     */
+    void schedule(Timeout timeout, long deadline) {
+        cancel(timeout);
+        timeout.deadline = Math.max(deadline, tick + 1);
+        int slot = (int) timeout.deadline & mask;
+        timeout.slot = slot;
+        timeout.prev = null;
+        timeout.next = slots[slot];
+        if (slots[slot] != null) {
+            slots[slot].prev = timeout;
+        }
+        slots[slot] = timeout;
+    }
+
+    void cancel(Timeout timeout) {
+        if (timeout.slot == EXPIRING) {
+            // Due on the tick being processed; dropping the mark stops it
+            timeout.slot = UNSCHEDULED;
+            return;
+        }
+        if (!timeout.isScheduled()) {
+            return;
+        }
+        unlink(timeout);
+    }
+
+    /**
+     * Processes every tick up to and including {@code target}, expiring the
+     * timeouts due in each.
+     */
+    void advanceTo(long target) {
+        while (tick < target) {
+            tick++;
+            // Move everything due out of the slot first, so expiring callbacks
+            // can freely schedule and cancel without disturbing the walk
+            Timeout timeout = slots[(int) tick & mask];
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.deadline <= tick) {
+                    unlink(timeout);
+                    timeout.slot = EXPIRING;
+                    expiring.add(timeout);
+                }
+                timeout = next;
+            }
+            for (int i = 0; i < expiring.size(); i++) {
+                Timeout due = expiring.get(i);
+                // Skipped if an earlier callback cancelled or rescheduled it
+                if (due.slot == EXPIRING) {
+                    due.slot = UNSCHEDULED;
+                    due.expire(tick);
+                }
+            }
+            expiring.clear();
+        }
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            slots[timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.slot = UNSCHEDULED;
+    }
+}
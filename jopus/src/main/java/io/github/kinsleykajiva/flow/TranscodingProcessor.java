@@ -0,0 +1,453 @@
+package io.github.kinsleykajiva.flow;
+
+import io.github.kinsleykajiva.opus.CodecHandle;
+import io.github.kinsleykajiva.opus.OpusCodec;
+
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link Flow.Processor} that transcodes a stream of audio chunks with a
+ * pooled Opus codec.
+ * <p>
+ * Input is only requested from upstream while the downstream subscriber has
+ * outstanding demand, and never more than the prefetch limit ahead, so a
+ * producer feeding a slow consumer is throttled instead of queueing without
+ * bound. When downstream requests many items at once, upstream is asked for
+ * up to a full prefetch in one call and the whole batch is transcoded under
+ * a single codec acquisition.
+ * <p>
+ * Encoding processors accept chunks of any length and emit one Opus packet per
+ * 20 ms frame; a trailing partial frame is padded with silence on completion.
+ * The decoding processor expects one Opus packet per item and emits the
+ * decoded G.711 frame. The codec is borrowed from its pool on the first item
+ * and returned on completion, or reset and returned on cancel or error. An
+ * exhausted pool blocks the signalling thread until a codec is free, in the
+ * same way as {@code AudioBuilder.stream()}.
+ * <p>
+ * A processor serves a single subscriber and cannot be reused.
+ */
+public abstract class TranscodingProcessor implements Flow.Processor<byte[], byte[]> {
+
+    /**
+     * Input items requested ahead of consumption by default; 320 ms of 20 ms
+     * chunks.
+     */
+    public static final int DEFAULT_PREFETCH = 16;
+
+    private static final int MAX_PACKET_BYTES = 4000;
+
+    private final int prefetch;
+    // Input bytes per native call, or 0 when every item is one packet
+    private final int frameBytes;
+    private final byte silence;
+
+    private final Queue<byte[]> inbox = new ConcurrentLinkedQueue<>();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicReference<Flow.Subscription> upstream = new AtomicReference<>();
+    private final AtomicReference<Flow.Subscriber<? super byte[]>> downstream = new AtomicReference<>();
+    private volatile boolean upstreamDone;
+    private volatile Throwable error;
+    private volatile boolean cancelled;
+
+    // Only touched inside drain()
+    private final ArrayDeque<byte[]> outbox = new ArrayDeque<>();
+    private final byte[] outBuffer = new byte[MAX_PACKET_BYTES];
+    private final byte[] frame;
+    private int frameLength;
+    private int outstanding;
+    private boolean terminated;
+    private CodecHandle codec;
+
+    TranscodingProcessor(int prefetch, int frameBytes, byte silence) {
+        if (prefetch < 1) {
+            throw new IllegalArgumentException("Prefetch must be positive: " + prefetch);
+        }
+        this.prefetch = prefetch;
+        this.frameBytes = frameBytes;
+        this.silence = silence;
+        this.frame = frameBytes > 0 ? new byte[frameBytes] : null;
+    }
+
+    // --- Factories ---
+
+    /**
+     * G.711 to Opus, at 8 kHz mono with the encoder pool's profile.
+     */
+    public static TranscodingProcessor g711ToOpus(OpusCodec.OpusEncoderPool pool, boolean isALaw) {
+        return g711ToOpus(pool, isALaw, DEFAULT_PREFETCH);
+    }
+
+    /**
+     * G.711 to Opus, at 8 kHz mono with the encoder pool's profile.
+     *
+     * @param prefetch Maximum input items requested ahead of consumption
+     */
+    public static TranscodingProcessor g711ToOpus(OpusCodec.OpusEncoderPool pool, boolean isALaw, int prefetch) {
+        // A-law and u-law idle codes, used to pad the final frame
+        return new Encoding(pool, isALaw, prefetch, 160, isALaw ? (byte) 0xD5 : (byte) 0xFF);
+    }
+
+    /**
+     * 16-bit little-endian PCM to Opus, at 8 kHz mono with the encoder pool's
+     * profile.
+     */
+    public static TranscodingProcessor pcmToOpus(OpusCodec.OpusEncoderPool pool) {
+        return pcmToOpus(pool, DEFAULT_PREFETCH);
+    }
+
+    /**
+     * 16-bit little-endian PCM to Opus, at 8 kHz mono with the encoder pool's
+     * profile.
+     *
+     * @param prefetch Maximum input items requested ahead of consumption
+     */
+    public static TranscodingProcessor pcmToOpus(OpusCodec.OpusEncoderPool pool, int prefetch) {
+        return new Encoding(pool, null, prefetch, 320, (byte) 0);
+    }
+
+    /**
+     * Opus packets to G.711 frames at 8 kHz mono.
+     */
+    public static TranscodingProcessor opusToG711(OpusCodec.OpusDecoderPool pool, boolean isALaw) {
+        return opusToG711(pool, isALaw, DEFAULT_PREFETCH);
+    }
+
+    /**
+     * Opus packets to G.711 frames at 8 kHz mono.
+     *
+     * @param prefetch Maximum input items requested ahead of consumption
+     */
+    public static TranscodingProcessor opusToG711(OpusCodec.OpusDecoderPool pool, boolean isALaw, int prefetch) {
+        return new Decoding(pool, isALaw, prefetch);
+    }
+
+    abstract CodecHandle borrow();
+
+    /**
+     * @return Bytes written to the output buffer, or a negative Opus error
+     */
+    abstract int transcode(MemorySegment codec, byte[] input, byte[] output);
+
+    abstract void reset(MemorySegment codec);
+
+    abstract String operation();
+
+    // --- Subscriber side ---
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        Objects.requireNonNull(subscription);
+        if (cancelled || !upstream.compareAndSet(null, subscription)) {
+            subscription.cancel();
+            return;
+        }
+        drain();
+    }
+
+    @Override
+    public void onNext(byte[] item) {
+        inbox.offer(Objects.requireNonNull(item));
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        error = Objects.requireNonNull(throwable);
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        drain();
+    }
+
+    // --- Publisher side ---
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super byte[]> subscriber) {
+        Objects.requireNonNull(subscriber);
+        if (!downstream.compareAndSet(null, subscriber)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("TranscodingProcessor supports a single subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    error = new IllegalArgumentException("Non-positive request: " + n);
+                } else {
+                    demand.getAndAccumulate(n, (current, add) -> current + add < 0 ? Long.MAX_VALUE : current + add);
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                drain();
+            }
+        });
+        drain();
+    }
+
+    // --- Drain loop ---
+
+    // Serializes all work onto whichever thread signalled first; signals
+    // arriving meanwhile make it loop again
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            drainOnce();
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void drainOnce() {
+        if (terminated) {
+            return;
+        }
+        if (cancelled) {
+            terminate(true);
+            return;
+        }
+        Flow.Subscriber<? super byte[]> subscriber = downstream.get();
+        if (subscriber == null) {
+            return;
+        }
+        Throwable failure = error;
+        if (failure != null) {
+            terminate(true);
+            subscriber.onError(failure);
+            return;
+        }
+        try {
+            emit(subscriber);
+            if (demand.get() > outbox.size() && !inbox.isEmpty()) {
+                transcodeBatch();
+                emit(subscriber);
+            }
+            if (upstreamDone && inbox.isEmpty()) {
+                if (frameLength > 0) {
+                    Arrays.fill(frame, frameLength, frameBytes, silence);
+                    frameLength = 0;
+                    transcodeFrame();
+                    emit(subscriber);
+                }
+                if (outbox.isEmpty() && !cancelled) {
+                    terminate(false);
+                    subscriber.onComplete();
+                }
+                return;
+            }
+        } catch (RuntimeException e) {
+            terminate(true);
+            subscriber.onError(e);
+            return;
+        }
+        replenish();
+    }
+
+    private void emit(Flow.Subscriber<? super byte[]> subscriber) {
+        while (!outbox.isEmpty() && !cancelled) {
+            long requested = demand.get();
+            if (requested == 0) {
+                return;
+            }
+            if (requested != Long.MAX_VALUE) {
+                demand.decrementAndGet();
+            }
+            subscriber.onNext(outbox.poll());
+        }
+    }
+
+    // Transcodes queued input while downstream still wants more than is
+    // already buffered, holding the codec for the whole batch
+    private void transcodeBatch() {
+        MemorySegment segment = codec().acquire();
+        try {
+            byte[] item;
+            while (demand.get() > outbox.size() && (item = inbox.poll()) != null) {
+                outstanding--;
+                if (frameBytes == 0) {
+                    addOutput(transcode(segment, item, outBuffer));
+                    continue;
+                }
+                for (int offset = 0; offset < item.length;) {
+                    int n = Math.min(item.length - offset, frameBytes - frameLength);
+                    System.arraycopy(item, offset, frame, frameLength, n);
+                    frameLength += n;
+                    offset += n;
+                    if (frameLength == frameBytes) {
+                        frameLength = 0;
+                        addOutput(transcode(segment, frame, outBuffer));
+                    }
+                }
+            }
+        } finally {
+            codec.release();
+        }
+    }
+
+    private void transcodeFrame() {
+        MemorySegment segment = codec().acquire();
+        try {
+            addOutput(transcode(segment, frame, outBuffer));
+        } finally {
+            codec.release();
+        }
+    }
+
+    private void addOutput(int len) {
+        if (len < 0) {
+            throw new RuntimeException("Opus " + operation() + " failed: " + len);
+        }
+        if (len > 0) {
+            byte[] copy = new byte[len];
+            System.arraycopy(outBuffer, 0, copy, 0, len);
+            outbox.add(copy);
+        }
+    }
+
+    private CodecHandle codec() {
+        if (codec == null) {
+            codec = borrow();
+        }
+        return codec;
+    }
+
+    // Pulls more input only while downstream wants more than is buffered, so
+    // a slow consumer holds the producer back. Larger demand yields larger
+    // upstream requests, up to the prefetch limit
+    private void replenish() {
+        Flow.Subscription subscription = upstream.get();
+        if (subscription == null || upstreamDone || cancelled) {
+            return;
+        }
+        long wanted = demand.get() - outbox.size() - outstanding;
+        if (wanted <= 0 || outstanding > prefetch / 2) {
+            return;
+        }
+        int n = (int) Math.min(wanted, prefetch - outstanding);
+        outstanding += n;
+        subscription.request(n);
+    }
+
+    private void terminate(boolean aborted) {
+        terminated = true;
+        inbox.clear();
+        outbox.clear();
+        if (aborted) {
+            Flow.Subscription subscription = upstream.getAndSet(null);
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+        if (codec != null) {
+            if (aborted) {
+                // The next borrower must not inherit this stream's state
+                try {
+                    MemorySegment segment = codec.acquire();
+                    try {
+                        reset(segment);
+                    } finally {
+                        codec.release();
+                    }
+                } catch (RuntimeException e) {
+                    // Reclaimed after its idle timeout, or the reset failed;
+                    // either way the pool has already dealt with it
+                }
+            }
+            codec.close();
+            codec = null;
+        }
+    }
+
+    // --- Implementations ---
+
+    private static final class Encoding extends TranscodingProcessor {
+        private final OpusCodec.OpusEncoderPool pool;
+        // Null for PCM input
+        private final Boolean isALaw;
+
+        Encoding(OpusCodec.OpusEncoderPool pool, Boolean isALaw, int prefetch, int frameBytes, byte silence) {
+            super(prefetch, frameBytes, silence);
+            this.pool = pool;
+            this.isALaw = isALaw;
+        }
+
+        @Override
+        CodecHandle borrow() {
+            return pool.borrowEncoderHandle();
+        }
+
+        @Override
+        int transcode(MemorySegment codec, byte[] input, byte[] output) {
+            return isALaw == null ? OpusCodec.encodeChunk(codec, input, output)
+                    : OpusCodec.convertG711Chunk(codec, input, isALaw, output);
+        }
+
+        @Override
+        void reset(MemorySegment codec) {
+            OpusCodec.resetEncoder(codec);
+        }
+
+        @Override
+        String operation() {
+            return "encoding";
+        }
+    }
+
+    private static final class Decoding extends TranscodingProcessor {
+        private final OpusCodec.OpusDecoderPool pool;
+        private final boolean isALaw;
+
+        Decoding(OpusCodec.OpusDecoderPool pool, boolean isALaw, int prefetch) {
+            super(prefetch, 0, (byte) 0);
+            this.pool = pool;
+            this.isALaw = isALaw;
+        }
+
+        @Override
+        CodecHandle borrow() {
+            return pool.borrowDecoderHandle();
+        }
+
+        @Override
+        int transcode(MemorySegment codec, byte[] input, byte[] output) {
+            return OpusCodec.convertOpusChunk(codec, input, isALaw, output);
+        }
+
+        @Override
+        void reset(MemorySegment codec) {
+            OpusCodec.resetDecoder(codec);
+        }
+
+        @Override
+        String operation() {
+            return "decoding";
+        }
+    }
+}
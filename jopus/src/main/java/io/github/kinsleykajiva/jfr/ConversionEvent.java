@@ -0,0 +1,38 @@
+package io.github.kinsleykajiva.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * One stage of a one-shot {@code AudioBuilder} conversion, so a slow
+ * conversion can be attributed to input I/O, G.711 expansion, native
+ * encoding or Base64 work.
+ */
+@Name("io.github.kinsleykajiva.jopus.Conversion")
+@Label("One-shot Conversion Stage")
+@Category({ "Jopus", "Conversion" })
+@Description("A stage of an AudioBuilder terminal operation")
+@StackTrace(false)
+@Threshold("1 ms")
+public class ConversionEvent extends jdk.jfr.Event {
+
+    @Label("Operation")
+    @Description("Terminal operation, for example asOpusBase64")
+    public String operation;
+
+    @Label("Stage")
+    public String stage;
+
+    @Label("Input Format")
+    public String inputFormat;
+
+    @Label("Bytes")
+    @Description("Size of the stage output")
+    @DataAmount
+    public long bytes;
+}
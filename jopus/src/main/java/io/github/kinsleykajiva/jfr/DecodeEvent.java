@@ -0,0 +1,37 @@
+package io.github.kinsleykajiva.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * One streaming decode call ({@code OpusCodec.decodeChunk}).
+ */
+@Name("io.github.kinsleykajiva.jopus.Decode")
+@Label("Opus Decode")
+@Category({ "Jopus", "Codec" })
+@Description("Streaming Opus decode of one packet")
+@StackTrace(false)
+@Threshold("1 ms")
+public class DecodeEvent extends jdk.jfr.Event {
+
+    @Label("Frame Size")
+    @Description("Samples per channel decoded")
+    public int frameSize;
+
+    @Label("Bytes In")
+    @DataAmount
+    public long bytesIn;
+
+    @Label("Bytes Out")
+    @DataAmount
+    public long bytesOut;
+
+    @Label("Result")
+    @Description("Bytes written, or the negative Opus error code")
+    public int result;
+}
@@ -0,0 +1,51 @@
+package io.github.kinsleykajiva.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * One streaming encode call ({@code OpusCodec.encodeChunk} or
+ * {@code OpusCodec.convertG711Chunk}).
+ */
+@Name("io.github.kinsleykajiva.jopus.Encode")
+@Label("Opus Encode")
+@Category({ "Jopus", "Codec" })
+@Description("Streaming Opus encode of one chunk")
+@StackTrace(false)
+@Threshold("1 ms")
+public class EncodeEvent extends jdk.jfr.Event {
+
+    @Label("Input Format")
+    public String inputFormat;
+
+    @Label("Profile")
+    public String profile;
+
+    @Label("Frame Size")
+    @Description("Samples per channel in one frame")
+    public int frameSize;
+
+    @Label("Frames")
+    public int frames;
+
+    @Label("Frames Suppressed")
+    @Description("Silent frames served from the pre-encoded cache")
+    public int framesSuppressed;
+
+    @Label("Bytes In")
+    @DataAmount
+    public long bytesIn;
+
+    @Label("Bytes Out")
+    @DataAmount
+    public long bytesOut;
+
+    @Label("Result")
+    @Description("Bytes written, or the negative Opus error code")
+    public int result;
+}
@@ -0,0 +1,54 @@
+package io.github.kinsleykajiva.jfr;
+
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * The JDK Flight Recorder events emitted by jopus.
+ * <p>
+ * Every event is enabled by default but only committed when a recording is
+ * running and its duration reaches the event's threshold, so the cost with
+ * no recording (or below the threshold) is a timestamp and a branch. Default
+ * thresholds: 1 ms for encode, decode and conversion stages, 5 ms for pool
+ * waits, and 0 ms for native library loads.
+ * <p>
+ * Thresholds can be overridden in a custom {@code .jfc}, for example one made
+ * with {@code jfr configure +io.github.kinsleykajiva.jopus.Encode#threshold=0ms},
+ * or programmatically with {@link #enable(Recording, Duration)}.
+ */
+public final class JopusEvents {
+
+    public static final List<Class<? extends Event>> TYPES = List.of(
+            EncodeEvent.class,
+            DecodeEvent.class,
+            PoolBorrowEvent.class,
+            ConversionEvent.class,
+            NativeLibraryLoadEvent.class);
+
+    private JopusEvents() {
+    }
+
+    /**
+     * Enables every jopus event in a recording with one threshold.
+     *
+     * @param threshold Minimum duration for an event to be recorded;
+     *                  {@link Duration#ZERO} records every call
+     */
+    public static void enable(Recording recording, Duration threshold) {
+        for (Class<? extends Event> type : TYPES) {
+            recording.enable(type).withThreshold(threshold);
+        }
+    }
+
+    /**
+     * Disables every jopus event in a recording.
+     */
+    public static void disable(Recording recording) {
+        for (Class<? extends Event> type : TYPES) {
+            recording.disable(type);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package io.github.kinsleykajiva.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Extraction or loading of a bundled native library.
+ */
+@Name("io.github.kinsleykajiva.jopus.NativeLibraryLoad")
+@Label("Native Library Load")
+@Category({ "Jopus", "Native" })
+@Description("Extraction and System.load of the libopus family")
+@StackTrace(false)
+@Threshold("0 ms")
+public class NativeLibraryLoadEvent extends jdk.jfr.Event {
+
+    @Label("Library")
+    public String library;
+
+    @Label("Source")
+    @Description("local, cache, system, or extract for the extraction step")
+    public String source;
+
+    @Label("Path")
+    public String path;
+
+    @Label("Success")
+    public boolean success;
+}
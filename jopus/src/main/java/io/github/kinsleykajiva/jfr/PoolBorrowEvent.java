@@ -0,0 +1,32 @@
+package io.github.kinsleykajiva.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A borrow from an encoder or decoder pool. The event duration is the time
+ * the caller waited for a free codec.
+ */
+@Name("io.github.kinsleykajiva.jopus.PoolBorrow")
+@Label("Codec Pool Borrow")
+@Category({ "Jopus", "Pool" })
+@Description("Wait for a pooled Opus encoder or decoder")
+@StackTrace(true)
+@Threshold("5 ms")
+public class PoolBorrowEvent extends jdk.jfr.Event {
+
+    @Label("Pool")
+    @Description("encoder or decoder")
+    public String pool;
+
+    @Label("Capacity")
+    public int capacity;
+
+    @Label("Available")
+    @Description("Idle codecs left in the pool after this borrow")
+    public int available;
+}
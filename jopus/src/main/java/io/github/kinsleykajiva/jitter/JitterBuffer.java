@@ -0,0 +1,510 @@
+package io.github.kinsleykajiva.jitter;
+
+import io.github.kinsleykajiva.G711Utils;
+import io.github.kinsleykajiva.metrics.CodecMetrics;
+import io.github.kinsleykajiva.opus.DecoderHandle;
+import io.github.kinsleykajiva.opus.DecoderTier;
+import io.github.kinsleykajiva.opus.DecoderTierGovernor;
+import io.github.kinsleykajiva.opus.DredBudget;
+import io.github.kinsleykajiva.opus.DredDecoder;
+import io.github.kinsleykajiva.opus.OpusCodec;
+import io.github.kinsleykajiva.rtp.RtpPacket;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
+
+import static io.github.kinsleykajiva.opus.opus_h.*;
+
+/**
+ * Adaptive jitter buffer in front of a pooled Opus decoder.
+ * <p>
+ * RTP packets are {@link #put put} as they arrive, in any order, and copied
+ * once, straight into a native slot the decoder reads from. A media clock
+ * calls {@link #pull(short[])} every 20 ms and always gets exactly one 20 ms
+ * frame back:
+ * <ul>
+ * <li>the packet due for playout, decoded normally;</li>
+ * <li>if it is missing but the following packet carries in-band FEC, the lost
+ * frame rebuilt from that redundancy ({@code decode_fec=1});</li>
+ * <li>with {@link #withDred DRED} enabled, a frame further back in a loss
+ * burst rebuilt from the Deep REDundancy of the first packet after it;</li>
+ * <li>otherwise a concealment frame from the decoder's packet loss
+ * concealment ({@code opus_decode} with no data).</li>
+ * </ul>
+ * Packets are ordered by RTP sequence number, with 16-bit wrap-around.
+ * Interarrival jitter is estimated as in RFC 3550 from the 48 kHz Opus RTP
+ * timestamps, and the playout delay tracks three times that estimate between
+ * the configured bounds. The delay grows by holding playout when the buffer
+ * runs dry and shrinks by discarding a frame when more than a frame of excess
+ * has built up. A packet may carry up to 120 ms: it is decoded whole and the
+ * frames after its first are played out by the following pulls. The delay,
+ * FEC and DRED bookkeeping still count each packet as 20 ms.
+ * <p>
+ * The decoder runs at the {@link DecoderTier#STANDARD standard} tier unless
+ * the buffer is put under a {@link #withTierGovernor tier governor}.
+ * <p>
+ * {@link #put} and {@link #pull} may be called from different threads.
+ */
+public class JitterBuffer implements AutoCloseable {
+
+    // 20ms @ 8000Hz, matching the OpusCodec decoders
+    private static final int SAMPLE_RATE = 8000;
+    private static final int FRAME_SIZE = 160;
+    // 120 ms, the longest frame an Opus packet can carry
+    private static final int MAX_PACKET_SAMPLES = 960;
+    // One second of DRED history is all libopus can carry
+    private static final int MAX_DRED_SAMPLES = SAMPLE_RATE;
+    // Opus RTP timestamps always run at 48 kHz (RFC 7587)
+    private static final int RTP_CLOCK = 48000;
+    private static final int FRAME_TICKS = RTP_CLOCK / 50;
+    private static final int MAX_PAYLOAD_BYTES = 1500;
+    private static final int CAPACITY = 64; // 1.28 s
+
+    private final DecoderHandle decoder;
+    private final int minDelayFrames;
+    private final int maxDelayFrames;
+
+    private final Arena arena = Arena.ofShared();
+    private final MemorySegment slots;
+    private final MemorySegment pcmNative;
+    private final long[] slotSequence = new long[CAPACITY];
+    // Payload length, or -1 when the slot is empty
+    private final int[] slotLength = new int[CAPACITY];
+    // Samples of the last decoded packet in pcmNative, and how many of them
+    // have been played out
+    private int decodedLength;
+    private int decodedPosition;
+
+    // Extended (unwrapped) sequence numbers
+    private long highest = -1;
+    private long next;
+    private boolean started;
+    private int targetFrames;
+
+    // RFC 3550 jitter state, in RTP clock units
+    private boolean haveTransit;
+    private int lastTransit;
+    private double jitter;
+
+    private long received;
+    private long late;
+    private long duplicates;
+    private long concealed;
+    private long recovered;
+    private long discarded;
+
+    // DRED recovery, when enabled
+    private DredDecoder dred;
+    private DredBudget.Lease dredLease;
+    // Packet whose DRED history is parsed, or -1
+    private long dredParsed = -1;
+    private long dredRecovered;
+
+    // Decoder tier assignment, when governed
+    private DecoderTierGovernor.Leg tierLeg;
+
+    /**
+     * Creates a buffer with a playout delay between 20 and 200 ms.
+     */
+    public JitterBuffer(OpusCodec.OpusDecoderPool pool) {
+        this(pool, 20, 200);
+    }
+
+    /**
+     * @param pool       Pool to borrow the decoder from; it is returned on
+     *                   {@link #close()}
+     * @param minDelayMs Lowest playout delay
+     * @param maxDelayMs Highest playout delay, at most 1200 ms
+     */
+    public JitterBuffer(OpusCodec.OpusDecoderPool pool, int minDelayMs, int maxDelayMs) {
+        this.minDelayFrames = Math.max(1, minDelayMs / 20);
+        this.maxDelayFrames = Math.min(CAPACITY - 4, Math.max(minDelayFrames, maxDelayMs / 20));
+        this.targetFrames = minDelayFrames;
+        this.slots = arena.allocate((long) MAX_PAYLOAD_BYTES * CAPACITY, 64);
+        this.pcmNative = arena.allocate(C_SHORT, MAX_PACKET_SAMPLES);
+        Arrays.fill(slotLength, -1);
+        this.decoder = pool.borrowDecoderHandle();
+    }
+
+    /**
+     * Adds a received packet.
+     *
+     * @param sequence  RTP sequence number (16 bits)
+     * @param timestamp RTP timestamp (32 bits, 48 kHz clock)
+     * @return False if the packet was too late, a duplicate, or too large
+     */
+    public synchronized boolean put(int sequence, int timestamp, byte[] payload, int offset, int length) {
+        long ext = accept(sequence, timestamp, length);
+        if (ext < 0) {
+            return false;
+        }
+        int slot = (int) (ext % CAPACITY);
+        MemorySegment.copy(payload, offset, slots, C_CHAR, (long) slot * MAX_PAYLOAD_BYTES, length);
+        slotSequence[slot] = ext;
+        slotLength[slot] = length;
+        return true;
+    }
+
+    /**
+     * Adds a received packet straight from its datagram: the payload slice is
+     * the only copy made between the socket and the decoder.
+     *
+     * @return False if the packet was too late, a duplicate, or too large
+     */
+    public synchronized boolean put(RtpPacket packet) {
+        MemorySegment payload = packet.payload();
+        long ext = accept(packet.sequence(), packet.timestamp(), (int) payload.byteSize());
+        if (ext < 0) {
+            return false;
+        }
+        int slot = (int) (ext % CAPACITY);
+        MemorySegment.copy(payload, 0, slots, (long) slot * MAX_PAYLOAD_BYTES, payload.byteSize());
+        slotSequence[slot] = ext;
+        slotLength[slot] = (int) payload.byteSize();
+        return true;
+    }
+
+    /**
+     * Places a packet in the ring.
+     *
+     * @return Its extended sequence number, or -1 to reject it
+     */
+    private long accept(int sequence, int timestamp, int length) {
+        if (length > MAX_PAYLOAD_BYTES) {
+            return -1;
+        }
+        long ext;
+        if (highest < 0) {
+            ext = sequence & 0xFFFF;
+            highest = ext;
+            next = ext;
+        } else {
+            // Unwrap relative to the newest packet seen
+            ext = highest + (short) (sequence - (int) highest);
+        }
+        if (ext < next) {
+            late++;
+            return -1;
+        }
+        if (ext >= next + CAPACITY) {
+            // Far ahead of playout: the sender restarted or we stalled. Start
+            // over from this packet
+            Arrays.fill(slotLength, -1);
+            decodedLength = 0;
+            decodedPosition = 0;
+            next = ext;
+            highest = ext;
+            started = false;
+        }
+        int slot = (int) (ext % CAPACITY);
+        if (slotLength[slot] >= 0 && slotSequence[slot] == ext) {
+            duplicates++;
+            return -1;
+        }
+        received++;
+        highest = Math.max(highest, ext);
+        updateJitter(timestamp);
+        return ext;
+    }
+
+    private void updateJitter(int timestamp) {
+        int arrival = (int) (System.nanoTime() / (1_000_000_000L / RTP_CLOCK));
+        int transit = arrival - timestamp;
+        if (haveTransit) {
+            int d = Math.abs(transit - lastTransit);
+            jitter += (d - jitter) / 16.0;
+            int wanted = (int) Math.ceil(3 * jitter / FRAME_TICKS);
+            targetFrames = Math.max(minDelayFrames, Math.min(maxDelayFrames, wanted));
+        }
+        lastTransit = transit;
+        haveTransit = true;
+    }
+
+    /**
+     * Produces the next 20 ms of audio. Call once per 20 ms.
+     *
+     * @param pcm Receives 160 samples of 8 kHz mono PCM; silence until the
+     *            first packets have filled the playout delay
+     * @return Number of samples written (always 160)
+     */
+    public synchronized int pull(short[] pcm) {
+        if (decodedPosition < decodedLength) {
+            // The rest of a packet longer than 20 ms
+            MemorySegment.copy(pcmNative, C_SHORT, (long) decodedPosition * C_SHORT.byteSize(), pcm, 0, FRAME_SIZE);
+            decodedPosition += FRAME_SIZE;
+            return FRAME_SIZE;
+        }
+        if (highest < 0 || !started && highest - next + 1 < targetFrames) {
+            Arrays.fill(pcm, 0, FRAME_SIZE, (short) 0);
+            return FRAME_SIZE;
+        }
+        started = true;
+
+        // Concealment and recovery produce a single frame
+        int produced = FRAME_SIZE;
+        long start = System.nanoTime();
+        MemorySegment codec = decoder.acquire();
+        try {
+            // Shrink: drop one frame when well over the target delay. It is
+            // still decoded so the decoder state stays continuous
+            if (highest - next + 1 > targetFrames + 1 && isPresent(next)) {
+                decodeSlot(codec, next, 0, MAX_PACKET_SAMPLES);
+                release(next);
+                next++;
+                discarded++;
+            }
+
+            if (isPresent(next)) {
+                int samples = decodeSlot(codec, next, 0, MAX_PACKET_SAMPLES);
+                if (samples < 0) {
+                    conceal(codec);
+                } else {
+                    // Pad a packet that does not end on a 20 ms boundary
+                    // rather than play out stale samples
+                    produced = Math.max(FRAME_SIZE, (samples + FRAME_SIZE - 1) / FRAME_SIZE * FRAME_SIZE);
+                    pcmNative.asSlice(samples * C_SHORT.byteSize(), (produced - samples) * C_SHORT.byteSize())
+                            .fill((byte) 0);
+                }
+                release(next);
+                next++;
+            } else if (highest < next) {
+                // Ran dry: conceal without advancing, which grows the delay
+                // by one frame
+                conceal(codec);
+            } else if (isPresent(next + 1) && hasFec(next + 1)
+                    && decodeSlot(codec, next + 1, 1, FRAME_SIZE) >= 0) {
+                recovered++;
+                next++;
+            } else if (decodeDred(codec)) {
+                dredRecovered++;
+                next++;
+            } else {
+                conceal(codec);
+                next++;
+            }
+        } finally {
+            decoder.release();
+        }
+        if (tierLeg != null) {
+            tierLeg.decoded(System.nanoTime() - start);
+        }
+        MemorySegment.copy(pcmNative, C_SHORT, 0, pcm, 0, FRAME_SIZE);
+        decodedLength = produced;
+        decodedPosition = FRAME_SIZE;
+        return FRAME_SIZE;
+    }
+
+    /**
+     * Produces the next 20 ms of audio as G.711.
+     *
+     * @param isALaw True for A-law, False for u-law
+     */
+    public byte[] pullG711(boolean isALaw) {
+        short[] pcm = new short[FRAME_SIZE];
+        pull(pcm);
+        return isALaw ? G711Utils.pcmToAlaw(pcm) : G711Utils.pcmToUlaw(pcm);
+    }
+
+    /**
+     * Enables recovery of loss bursts from the Deep REDundancy that
+     * DRED-enabled senders put in every packet. Without DRED support in
+     * libopus this logs a warning and leaves the buffer unchanged.
+     *
+     * @param budget   Node-wide CPU budget, or null for none
+     * @param priority The leg's importance under the budget
+     */
+    public synchronized JitterBuffer withDred(DredBudget budget, int priority) {
+        if (dred != null) {
+            return this;
+        }
+        if (!OpusCodec.isDredSupported()) {
+            System.err.println("Warning: libopus was built without DRED; loss is concealed with PLC only");
+            return this;
+        }
+        dred = DredDecoder.create();
+        dredLease = budget == null ? null : budget.lease(priority);
+        return this;
+    }
+
+    public synchronized boolean isDredEnabled() {
+        return dred != null;
+    }
+
+    /**
+     * Lets a governor pick the decoder's quality tier from the leg's
+     * priority and the measured decode cost of each tier.
+     *
+     * @param maxTier Best tier the leg may get
+     */
+    public synchronized JitterBuffer withTierGovernor(DecoderTierGovernor governor, int priority,
+            DecoderTier maxTier) {
+        if (tierLeg == null) {
+            tierLeg = governor.register(decoder, priority, maxTier);
+        }
+        return this;
+    }
+
+    /**
+     * Rebuilds the frame at {@code next} from the DRED history of the first
+     * packet after it, if the budget allows and the history reaches back.
+     */
+    private boolean decodeDred(MemorySegment codec) {
+        if (dred == null || dredLease != null && !dredLease.allowed()) {
+            return false;
+        }
+        long after = next + 1;
+        while (after <= highest && !isPresent(after)) {
+            after++;
+        }
+        if (after > highest) {
+            return false;
+        }
+        long start = System.nanoTime();
+        try {
+            if (dredParsed != after) {
+                int slot = (int) (after % CAPACITY);
+                dred.parse(slots.asSlice((long) slot * MAX_PAYLOAD_BYTES), slotLength[slot], MAX_DRED_SAMPLES,
+                        SAMPLE_RATE);
+                dredParsed = after;
+            }
+            int offset = (int) (after - next) * FRAME_SIZE;
+            return dred.covers(offset) && dred.decode(codec, offset, pcmNative, FRAME_SIZE) >= 0;
+        } finally {
+            if (dredLease != null) {
+                dredLease.charge(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private boolean isPresent(long ext) {
+        int slot = (int) (ext % CAPACITY);
+        return slotLength[slot] >= 0 && slotSequence[slot] == ext;
+    }
+
+    private void release(long ext) {
+        slotLength[(int) (ext % CAPACITY)] = -1;
+    }
+
+    private boolean hasFec(long ext) {
+        int slot = (int) (ext % CAPACITY);
+        return opus_packet_has_lbrr(slots.asSlice((long) slot * MAX_PAYLOAD_BYTES), slotLength[slot]) > 0;
+    }
+
+    /**
+     * @param frameSize Samples pcmNative may receive: a whole packet for
+     *                  normal decoding, the one lost frame for FEC
+     */
+    private int decodeSlot(MemorySegment codec, long ext, int decodeFec, int frameSize) {
+        int slot = (int) (ext % CAPACITY);
+        long start = System.nanoTime();
+        int samples = opus_decode(codec, slots.asSlice((long) slot * MAX_PAYLOAD_BYTES), slotLength[slot],
+                pcmNative, frameSize, decodeFec);
+        CodecMetrics.global().recordDecode(samples < 0 ? samples : samples * 2, System.nanoTime() - start);
+        return samples;
+    }
+
+    private void conceal(MemorySegment codec) {
+        long start = System.nanoTime();
+        int samples = opus_decode(codec, MemorySegment.NULL, 0, pcmNative, FRAME_SIZE, 0);
+        CodecMetrics.global().recordDecode(samples < 0 ? samples : samples * 2, System.nanoTime() - start);
+        if (samples < 0) {
+            pcmNative.fill((byte) 0);
+        }
+        concealed++;
+    }
+
+    // --- Statistics ---
+
+    /**
+     * @return Current playout delay target
+     */
+    public synchronized int targetDelayMillis() {
+        return targetFrames * 20;
+    }
+
+    /**
+     * @return RFC 3550 interarrival jitter estimate
+     */
+    public synchronized double jitterMillis() {
+        return jitter * 1000.0 / RTP_CLOCK;
+    }
+
+    /**
+     * @return Frames between the playout point and the newest packet
+     */
+    public synchronized int depth() {
+        return highest < 0 ? 0 : (int) Math.max(0, highest - next + 1);
+    }
+
+    public synchronized long receivedPackets() {
+        return received;
+    }
+
+    /**
+     * @return Packets that arrived after their playout time
+     */
+    public synchronized long latePackets() {
+        return late;
+    }
+
+    public synchronized long duplicatePackets() {
+        return duplicates;
+    }
+
+    /**
+     * @return Frames filled by packet loss concealment
+     */
+    public synchronized long concealedFrames() {
+        return concealed;
+    }
+
+    /**
+     * @return Lost frames rebuilt from the next packet's in-band FEC
+     */
+    public synchronized long fecRecoveredFrames() {
+        return recovered;
+    }
+
+    /**
+     * @return Lost frames rebuilt from a later packet's DRED history
+     */
+    public synchronized long dredRecoveredFrames() {
+        return dredRecovered;
+    }
+
+    /**
+     * @return Frames dropped to bring the delay back down to the target
+     */
+    public synchronized long discardedFrames() {
+        return discarded;
+    }
+
+    /**
+     * @return Quality tier the decoder is running at
+     */
+    public DecoderTier decoderTier() {
+        return decoder.tier();
+    }
+
+    /**
+     * Returns the decoder to its pool and frees the packet slots.
+     */
+    @Override
+    public synchronized void close() {
+        if (decoder.isClosed()) {
+            return;
+        }
+        decoder.close();
+        if (dred != null) {
+            dred.close();
+        }
+        if (dredLease != null) {
+            dredLease.close();
+        }
+        if (tierLeg != null) {
+            tierLeg.close();
+        }
+        arena.close();
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.kinsleykajiva.metrics;
+
+import java.util.Map;
+
+/**
+ * Process-wide codec counters, registered as
+ * {@code io.github.kinsleykajiva.jopus:type=Codec}.
+ */
+public interface CodecMXBean {
+
+    /**
+     * @return Streaming sessions opened with {@code AudioBuilder.stream()} and
+     *         not yet closed
+     */
+    int getLiveSessions();
+
+    /**
+     * @return Native encoders currently allocated, pooled or not
+     */
+    int getLiveEncoders();
+
+    int getLiveDecoders();
+
+    /**
+     * @return Native memory held by live codecs, as reported by
+     *         {@code opus_encoder_get_size}/{@code opus_decoder_get_size}
+     */
+    long getNativeCodecBytes();
+
+    /**
+     * @return Codec handles garbage collected without being closed
+     */
+    long getLeakedHandles();
+
+    /**
+     * @return Borrowed handles taken back by a pool after its idle timeout
+     */
+    long getIdleReclaims();
+
+    long getFramesEncoded();
+
+    long getFramesDecoded();
+
+    /**
+     * @return Opus bytes produced by the streaming encode paths
+     */
+    long getBytesEncoded();
+
+    /**
+     * @return PCM bytes produced by the streaming decode paths
+     */
+    long getBytesDecoded();
+
+    /**
+     * @return Failed calls keyed by Opus error name, for example
+     *         {@code OPUS_INVALID_PACKET}
+     */
+    Map<String, Long> getErrorCounts();
+
+    long getEncodeLatencyP50Micros();
+
+    long getEncodeLatencyP99Micros();
+
+    long getEncodeLatencyP999Micros();
+
+    long getEncodeLatencyMaxMicros();
+
+    long getDecodeLatencyP50Micros();
+
+    long getDecodeLatencyP99Micros();
+
+    long getDecodeLatencyP999Micros();
+
+    long getDecodeLatencyMaxMicros();
+
+    /**
+     * Clears the counters and histograms. Live sessions, live codecs and
+     * native memory are not affected.
+     */
+    void reset();
+}
@@ -0,0 +1,267 @@
+package io.github.kinsleykajiva.metrics;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * Process-wide codec counters behind the {@link CodecMXBean}. The instance is
+ * registered with the platform MBean server on first use.
+ */
+public final class CodecMetrics implements CodecMXBean {
+
+    // Opus error codes run from -1 (OPUS_BAD_ARG) to -7 (OPUS_ALLOC_FAIL)
+    private static final String[] ERROR_NAMES = {
+            "OTHER", "OPUS_BAD_ARG", "OPUS_BUFFER_TOO_SMALL", "OPUS_INTERNAL_ERROR", "OPUS_INVALID_PACKET",
+            "OPUS_UNIMPLEMENTED", "OPUS_INVALID_STATE", "OPUS_ALLOC_FAIL" };
+
+    private static final CodecMetrics INSTANCE = new CodecMetrics();
+
+    static {
+        Jmx.register("Codec", null, INSTANCE);
+    }
+
+    private final AtomicInteger liveSessions = new AtomicInteger();
+    private final LongAdder framesEncoded = new LongAdder();
+    private final LongAdder framesDecoded = new LongAdder();
+    private final LongAdder bytesEncoded = new LongAdder();
+    private final LongAdder bytesDecoded = new LongAdder();
+    private final AtomicLongArray errors = new AtomicLongArray(ERROR_NAMES.length);
+    private final LatencyHistogram encodeLatency = new LatencyHistogram();
+    private final LatencyHistogram decodeLatency = new LatencyHistogram();
+    private final AtomicInteger liveEncoders = new AtomicInteger();
+    private final AtomicInteger liveDecoders = new AtomicInteger();
+    private final AtomicLong nativeBytes = new AtomicLong();
+    private final LongAdder leakedHandles = new LongAdder();
+    private final LongAdder idleReclaims = new LongAdder();
+    // Told the latency of every successful encode, e.g. by a complexity
+    // governor; copied on write, as watchers rarely change
+    private volatile LongConsumer[] encodeWatchers = new LongConsumer[0];
+
+    private CodecMetrics() {
+    }
+
+    public static CodecMetrics global() {
+        return INSTANCE;
+    }
+
+    // --- Recording ---
+
+    public void sessionOpened() {
+        liveSessions.incrementAndGet();
+    }
+
+    public void sessionClosed() {
+        liveSessions.decrementAndGet();
+    }
+
+    /**
+     * Records one streaming encode call.
+     *
+     * @param result Bytes produced, or a negative Opus error code
+     */
+    public void recordEncode(int frames, int result, long nanos) {
+        if (result < 0) {
+            recordError(result);
+            return;
+        }
+        framesEncoded.add(frames);
+        bytesEncoded.add(result);
+        encodeLatency.record(nanos);
+        for (LongConsumer watcher : encodeWatchers) {
+            watcher.accept(nanos);
+        }
+    }
+
+    /**
+     * Passes the latency of every successful encode recorded from now on to
+     * the watcher, on the encoding thread. The watcher must be cheap.
+     */
+    public synchronized void watchEncodes(LongConsumer watcher) {
+        LongConsumer[] watchers = Arrays.copyOf(encodeWatchers,
+                encodeWatchers.length + 1);
+        watchers[watchers.length - 1] = watcher;
+        encodeWatchers = watchers;
+    }
+
+    public synchronized void unwatchEncodes(LongConsumer watcher) {
+        encodeWatchers = Arrays.stream(encodeWatchers).filter(w -> w != watcher)
+                .toArray(LongConsumer[]::new);
+    }
+
+    /**
+     * Records one streaming decode call.
+     *
+     * @param result PCM bytes produced, or a negative Opus error code
+     */
+    public void recordDecode(int result, long nanos) {
+        if (result < 0) {
+            recordError(result);
+            return;
+        }
+        framesDecoded.increment();
+        bytesDecoded.add(result);
+        decodeLatency.record(nanos);
+    }
+
+    public void recordError(int opusErrorCode) {
+        int slot = opusErrorCode < 0 && opusErrorCode >= -7 ? -opusErrorCode : 0;
+        errors.incrementAndGet(slot);
+    }
+
+    /**
+     * Records a native codec allocation.
+     *
+     * @param bytes Size reported by {@code opus_encoder_get_size} or
+     *              {@code opus_decoder_get_size}
+     */
+    public void nativeAllocated(boolean encoder, long bytes) {
+        (encoder ? liveEncoders : liveDecoders).incrementAndGet();
+        nativeBytes.addAndGet(bytes);
+    }
+
+    public void nativeFreed(boolean encoder, long bytes) {
+        (encoder ? liveEncoders : liveDecoders).decrementAndGet();
+        nativeBytes.addAndGet(-bytes);
+    }
+
+    public void handleLeaked() {
+        leakedHandles.increment();
+    }
+
+    public void handleReclaimedIdle() {
+        idleReclaims.increment();
+    }
+
+    public LatencyHistogram encodeLatency() {
+        return encodeLatency;
+    }
+
+    public LatencyHistogram decodeLatency() {
+        return decodeLatency;
+    }
+
+    // --- CodecMXBean ---
+
+    @Override
+    public int getLiveSessions() {
+        return liveSessions.get();
+    }
+
+    @Override
+    public int getLiveEncoders() {
+        return liveEncoders.get();
+    }
+
+    @Override
+    public int getLiveDecoders() {
+        return liveDecoders.get();
+    }
+
+    @Override
+    public long getNativeCodecBytes() {
+        return nativeBytes.get();
+    }
+
+    @Override
+    public long getLeakedHandles() {
+        return leakedHandles.sum();
+    }
+
+    @Override
+    public long getIdleReclaims() {
+        return idleReclaims.sum();
+    }
+
+    @Override
+    public long getFramesEncoded() {
+        return framesEncoded.sum();
+    }
+
+    @Override
+    public long getFramesDecoded() {
+        return framesDecoded.sum();
+    }
+
+    @Override
+    public long getBytesEncoded() {
+        return bytesEncoded.sum();
+    }
+
+    @Override
+    public long getBytesDecoded() {
+        return bytesDecoded.sum();
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < ERROR_NAMES.length; i++) {
+            long count = errors.get(i);
+            if (count > 0) {
+                counts.put(ERROR_NAMES[i], count);
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public long getEncodeLatencyP50Micros() {
+        return encodeLatency.percentile(50) / 1000;
+    }
+
+    @Override
+    public long getEncodeLatencyP99Micros() {
+        return encodeLatency.percentile(99) / 1000;
+    }
+
+    @Override
+    public long getEncodeLatencyP999Micros() {
+        return encodeLatency.percentile(99.9) / 1000;
+    }
+
+    @Override
+    public long getEncodeLatencyMaxMicros() {
+        return encodeLatency.max() / 1000;
+    }
+
+    @Override
+    public long getDecodeLatencyP50Micros() {
+        return decodeLatency.percentile(50) / 1000;
+    }
+
+    @Override
+    public long getDecodeLatencyP99Micros() {
+        return decodeLatency.percentile(99) / 1000;
+    }
+
+    @Override
+    public long getDecodeLatencyP999Micros() {
+        return decodeLatency.percentile(99.9) / 1000;
+    }
+
+    @Override
+    public long getDecodeLatencyMaxMicros() {
+        return decodeLatency.max() / 1000;
+    }
+
+    @Override
+    public void reset() {
+        framesEncoded.reset();
+        framesDecoded.reset();
+        bytesEncoded.reset();
+        bytesDecoded.reset();
+        for (int i = 0; i < ERROR_NAMES.length; i++) {
+            errors.set(i, 0);
+        }
+        encodeLatency.reset();
+        decodeLatency.reset();
+        leakedHandles.reset();
+        idleReclaims.reset();
+    }
+}
@@ -0,0 +1,42 @@
+package io.github.kinsleykajiva.metrics;
+
+/**
+ * Live state of an Opus encoder or decoder pool, registered under
+ * {@code io.github.kinsleykajiva.jopus:type=EncoderPool} or
+ * {@code type=DecoderPool}.
+ */
+public interface CodecPoolMXBean {
+
+    int getCapacity();
+
+    /**
+     * @return Codecs currently borrowed
+     */
+    int getInUse();
+
+    /**
+     * @return Idle codecs ready to be borrowed
+     */
+    int getAvailable();
+
+    /**
+     * @return Threads blocked waiting for a codec; non-zero means the pool is
+     *         exhausted
+     */
+    int getWaiters();
+
+    /**
+     * @return Native codec creations that failed
+     */
+    long getCreationFailures();
+
+    long getBorrowCount();
+
+    long getBorrowWaitP50Micros();
+
+    long getBorrowWaitP99Micros();
+
+    long getBorrowWaitP999Micros();
+
+    long getBorrowWaitMaxMicros();
+}
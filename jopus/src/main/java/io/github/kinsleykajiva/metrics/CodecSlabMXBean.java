@@ -0,0 +1,45 @@
+package io.github.kinsleykajiva.metrics;
+
+/**
+ * Occupancy of a codec slab allocator, registered under
+ * {@code io.github.kinsleykajiva.jopus:type=CodecSlab}.
+ */
+public interface CodecSlabMXBean {
+
+    /**
+     * @return "encoder" or "decoder"
+     */
+    String getKind();
+
+    /**
+     * @return Bytes per slot: the codec state size rounded up to a cache line
+     */
+    int getSlotBytes();
+
+    int getSlabCount();
+
+    /**
+     * @return Slots across all slabs
+     */
+    int getCapacity();
+
+    /**
+     * @return Slots holding a live codec
+     */
+    int getInUse();
+
+    /**
+     * @return In-use slots as a fraction of capacity, 0 to 1
+     */
+    double getOccupancy();
+
+    /**
+     * @return Native memory reserved by the slabs
+     */
+    long getReservedBytes();
+
+    /**
+     * @return Slots handed out since creation, new or recycled
+     */
+    long getAllocations();
+}
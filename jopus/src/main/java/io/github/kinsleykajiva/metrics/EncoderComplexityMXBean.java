@@ -0,0 +1,33 @@
+package io.github.kinsleykajiva.metrics;
+
+/**
+ * State of the encoder complexity governor, registered as
+ * {@code io.github.kinsleykajiva.jopus:type=EncoderComplexity}.
+ */
+public interface EncoderComplexityMXBean {
+
+    /**
+     * @return Complexity governed encoders are set to on their next use
+     */
+    int getComplexity();
+
+    /**
+     * @return Steps below full complexity; 0 when not degraded
+     */
+    int getTier();
+
+    /**
+     * @return 99th percentile encode latency over the last full second
+     */
+    long getWindowP99Micros();
+
+    /**
+     * @return Encodes slower than the deadline, plus misses reported by
+     *         callers
+     */
+    long getDeadlineMisses();
+
+    long getStepDowns();
+
+    long getStepUps();
+}
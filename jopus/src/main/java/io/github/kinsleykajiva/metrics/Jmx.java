@@ -0,0 +1,77 @@
+package io.github.kinsleykajiva.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registration helpers for the jopus MBeans. JMX problems are reported as
+ * warnings and never fail codec operations.
+ * <p>
+ * A registered MBean is referenced by the platform MBeanServer, so the
+ * object behind it stays reachable until it is unregistered. Every jopus
+ * class that registers itself unregisters in {@code close()}; one that is
+ * never closed is never garbage collected.
+ */
+public final class Jmx {
+
+    public static final String DOMAIN = "io.github.kinsleykajiva.jopus";
+
+    private static final AtomicInteger POOL_IDS = new AtomicInteger();
+
+    private Jmx() {
+    }
+
+    /**
+     * @return A process-unique name for an unnamed pool, for example
+     *         {@code pool-3}
+     */
+    public static String nextPoolName() {
+        return "pool-" + POOL_IDS.incrementAndGet();
+    }
+
+    /**
+     * Registers an MBean as {@code io.github.kinsleykajiva.jopus:type=<type>[,name=<name>]}.
+     * If another MBean already has that name, a suffix makes it unique
+     * ({@code name-2}, {@code name-3}, or {@code name=2} without a name), so
+     * a second instance never takes over the first one's metrics.
+     *
+     * @return The registered name, or null if registration failed
+     */
+    public static ObjectName register(String type, String name, Object mbean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (int n = 1;; n++) {
+                String unique = n == 1 ? name : name == null ? String.valueOf(n) : name + "-" + n;
+                ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type
+                        + (unique == null ? "" : ",name=" + ObjectName.quote(unique)));
+                try {
+                    server.registerMBean(mbean, objectName);
+                    return objectName;
+                } catch (InstanceAlreadyExistsException e) {
+                    // Taken; try the next suffix
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Warning: Could not register MBean " + type + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public static void unregister(ObjectName objectName) {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (Exception e) {
+            System.err.println("Warning: Could not unregister MBean " + objectName + ": " + e.getMessage());
+        }
+    }
+}
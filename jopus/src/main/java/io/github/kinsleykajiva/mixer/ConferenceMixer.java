@@ -0,0 +1,377 @@
+package io.github.kinsleykajiva.mixer;
+
+import io.github.kinsleykajiva.opus.OpusCodec;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static io.github.kinsleykajiva.opus.opus_h.*;
+
+/**
+ * N-party conference mixer built on the {@link OpusCodec} decoder and encoder
+ * sessions.
+ * <p>
+ * Every participant hears everyone except themselves. On each {@link #tick()}
+ * the mixer decodes each leg exactly once, sums the active speakers into a
+ * single total mix, and derives each speaker's N-1 mix by subtracting that
+ * speaker's own signal. Every listener that is not speaking hears the same
+ * total mix, so those legs share a single encoder and a single output packet.
+ * Encoding cost therefore grows with the number of active speakers rather
+ * than with N². A leg that starts or stops speaking switches between its own
+ * stream and the shared one, which receiving decoders handle like any other
+ * packet discontinuity.
+ * <p>
+ * Legs may send 20, 40 or 60 ms packets; longer packets are decoded whole and
+ * played out one 20 ms frame per tick. A missing packet from a leg that was
+ * speaking is filled by the decoder's packet loss concealment, and a packet
+ * that fails to decode counts as lost, so one bad leg never holds up the
+ * others.
+ * <p>
+ * {@link Participant#offer(byte[])} may be called from any thread;
+ * {@link #tick()} must be driven by a single thread every 20 ms.
+ */
+public class ConferenceMixer implements AutoCloseable {
+
+    // 20ms @ 8000Hz, matching the OpusCodec sessions
+    private static final int FRAME_SIZE = 160;
+    // 120 ms @ 8000Hz, the longest an Opus packet can be
+    private static final int MAX_PACKET_SAMPLES = 960;
+    private static final int MAX_PACKET_BYTES = 4000;
+    private static final float SHORT_SCALE = 32768f;
+
+    private final List<Participant> participants = new CopyOnWriteArrayList<>();
+    // Legs that left since the last tick; their native state is released on
+    // the ticking thread so a concurrent leave() never frees a live decoder
+    private final Queue<Participant> departed = new ConcurrentLinkedQueue<>();
+    private final Arena arena = Arena.ofShared();
+    private final long speechEnergyThreshold;
+
+    // Native scratch, owned by the ticking thread
+    private final MemorySegment packetNative;
+    private final MemorySegment pcmNative;
+    private final MemorySegment floatNative;
+    private final MemorySegment outNative;
+
+    // Total mix of all active speakers, accumulated in 32 bits so the sum
+    // cannot wrap before it is soft-clipped
+    private final int[] total = new int[FRAME_SIZE];
+    private final int[] mix = new int[FRAME_SIZE];
+
+    // Shared stream heard by every non-speaking listener
+    private final MemorySegment sharedEncoder;
+    private final MemorySegment sharedSoftClipMem;
+    private volatile byte[] sharedOutput = new byte[0];
+
+    private boolean closed;
+    private volatile long decodeErrors;
+
+    /**
+     * Creates a mixer using the default speech energy threshold.
+     */
+    public ConferenceMixer() {
+        this(FRAME_SIZE * 64L * 64L);
+    }
+
+    /**
+     * Creates a mixer.
+     *
+     * @param speechEnergyThreshold Sum of squared samples per 20 ms frame above
+     *                              which a leg counts as an active speaker
+     */
+    public ConferenceMixer(long speechEnergyThreshold) {
+        this.speechEnergyThreshold = speechEnergyThreshold;
+        this.packetNative = arena.allocate(C_CHAR, MAX_PACKET_BYTES);
+        this.pcmNative = arena.allocate(C_SHORT, MAX_PACKET_SAMPLES);
+        this.floatNative = arena.allocate(C_FLOAT, FRAME_SIZE);
+        this.outNative = arena.allocate(C_CHAR, MAX_PACKET_BYTES);
+        this.sharedEncoder = OpusCodec.createEncoder();
+        this.sharedSoftClipMem = arena.allocate(C_FLOAT, 1);
+    }
+
+    /**
+     * Adds a participant to the conference.
+     *
+     * @param id Caller supplied identifier, for example the call leg id
+     * @return The participant handle used to feed and read audio
+     */
+    public Participant join(String id) {
+        if (closed) {
+            throw new IllegalStateException("Mixer is closed");
+        }
+        Participant participant = new Participant(id);
+        participants.add(participant);
+        return participant;
+    }
+
+    /**
+     * Removes a participant. Its native codec and soft-clip state is released
+     * at the start of the next tick.
+     */
+    public void leave(Participant participant) {
+        if (participants.remove(participant)) {
+            departed.offer(participant);
+        }
+    }
+
+    /**
+     * @return Number of participants currently in the conference
+     */
+    public int size() {
+        return participants.size();
+    }
+
+    /**
+     * @return Packets that were too large or failed to decode, and were mixed
+     *         as lost
+     */
+    public long decodeErrors() {
+        return decodeErrors;
+    }
+
+    /**
+     * Runs one 20 ms mixing cycle: decode each leg once, build the total mix,
+     * then encode one N-1 mix per active speaker plus one shared mix for
+     * everybody else.
+     *
+     * @return Number of Opus encodes performed in this tick
+     */
+    public int tick() {
+        if (closed) {
+            throw new IllegalStateException("Mixer is closed");
+        }
+
+        Participant gone;
+        while ((gone = departed.poll()) != null) {
+            gone.release();
+        }
+
+        Arrays.fill(total, 0);
+        for (Participant p : participants) {
+            p.decodeInto(this);
+            if (p.speaking) {
+                accumulate(total, p.pcm);
+            }
+        }
+
+        int encodes = 0;
+        boolean sharedEncoded = false;
+        for (Participant p : participants) {
+            if (p.speaking) {
+                subtract(total, p.pcm, mix);
+                p.output = encodeMix(p.encoder(), p.softClipMem);
+                encodes++;
+            } else {
+                if (!sharedEncoded) {
+                    System.arraycopy(total, 0, mix, 0, FRAME_SIZE);
+                    sharedOutput = encodeMix(sharedEncoder, sharedSoftClipMem);
+                    sharedEncoded = true;
+                    encodes++;
+                }
+                p.output = sharedOutput;
+            }
+        }
+        return encodes;
+    }
+
+    // Plain counted loops over primitive arrays so C2 can vectorise them
+    private static void accumulate(int[] acc, short[] pcm) {
+        for (int i = 0; i < acc.length; i++) {
+            acc[i] += pcm[i];
+        }
+    }
+
+    private static void subtract(int[] acc, short[] own, int[] out) {
+        for (int i = 0; i < acc.length; i++) {
+            out[i] = acc[i] - own[i];
+        }
+    }
+
+    private byte[] encodeMix(MemorySegment encoder, MemorySegment softClipMem) {
+        // The unclipped mix may exceed full scale; soft-clipping it in float
+        // bends overloaded conferences smoothly instead of hard-clipping
+        for (int i = 0; i < FRAME_SIZE; i++) {
+            floatNative.setAtIndex(C_FLOAT, i, mix[i] / SHORT_SCALE);
+        }
+        opus_pcm_soft_clip(floatNative, FRAME_SIZE, 1, softClipMem);
+        for (int i = 0; i < FRAME_SIZE; i++) {
+            float f = floatNative.getAtIndex(C_FLOAT, i) * SHORT_SCALE;
+            pcmNative.setAtIndex(C_SHORT, i, (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, f)));
+        }
+
+        int len = opus_encode(encoder, pcmNative, FRAME_SIZE, outNative, MAX_PACKET_BYTES);
+        if (len < 0) {
+            throw new RuntimeException("Opus encode error: " + len);
+        }
+        byte[] packet = new byte[len];
+        MemorySegment.copy(outNative, C_CHAR, 0, packet, 0, len);
+        return packet;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Participant gone;
+        while ((gone = departed.poll()) != null) {
+            gone.release();
+        }
+        for (Participant p : participants) {
+            p.release();
+        }
+        participants.clear();
+        OpusCodec.destroyEncoder(sharedEncoder);
+        arena.close();
+    }
+
+    /**
+     * A single conference leg. Inbound Opus packets are handed over with
+     * {@link #offer(byte[])}; the mixed packet for this listener is available
+     * from {@link #output()} after each tick.
+     */
+    public static class Participant {
+        private final String id;
+        private final AtomicReference<byte[]> pending = new AtomicReference<>();
+        private final short[] pcm = new short[FRAME_SIZE];
+        // The whole of the last packet, played out 20 ms per tick
+        private final short[] decoded = new short[MAX_PACKET_SAMPLES];
+        private int decodedPosition;
+        private int decodedLength;
+        // Per-leg so leaving frees the soft-clip state instead of growing the
+        // mixer's arena with every join
+        private final Arena arena = Arena.ofShared();
+        private final MemorySegment softClipMem;
+        private final MemorySegment decoder;
+        private MemorySegment encoder;
+        private boolean speaking;
+        private volatile byte[] output = new byte[0];
+
+        Participant(String id) {
+            this.id = id;
+            this.softClipMem = arena.allocate(C_FLOAT, 1);
+            try {
+                this.decoder = OpusCodec.createDecoder();
+            } catch (RuntimeException e) {
+                arena.close();
+                throw e;
+            }
+        }
+
+        public String id() {
+            return id;
+        }
+
+        /**
+         * Queues the next Opus packet from this leg. If several packets
+         * arrive before the mixer takes one only the newest one is mixed. A
+         * 40 or 60 ms packet is only taken once the previous one has been
+         * played out.
+         */
+        public void offer(byte[] opusPacket) {
+            pending.set(opusPacket);
+        }
+
+        /**
+         * @return The Opus packet this participant should hear for the last
+         *         tick. Non-speakers share the same array, so it must not be
+         *         modified.
+         */
+        public byte[] output() {
+            return output;
+        }
+
+        /**
+         * @return Whether this leg was mixed as an active speaker in the last
+         *         tick
+         */
+        public boolean isSpeaking() {
+            return speaking;
+        }
+
+        // Speakers need their own encoder for the N-1 mix; it is created on
+        // first use so silent listeners never pay for one
+        private MemorySegment encoder() {
+            if (encoder == null) {
+                encoder = OpusCodec.createEncoder();
+            }
+            return encoder;
+        }
+
+        private void decodeInto(ConferenceMixer mixer) {
+            if (decodedPosition >= decodedLength) {
+                byte[] packet = pending.getAndSet(null);
+                int samples = packet == null || packet.length == 0 ? 0 : decode(mixer, packet);
+                if (samples <= 0) {
+                    if (speaking) {
+                        conceal(mixer);
+                    } else {
+                        Arrays.fill(pcm, (short) 0);
+                        return;
+                    }
+                } else {
+                    decodedPosition = 0;
+                    decodedLength = samples;
+                }
+            }
+            if (decodedPosition < decodedLength) {
+                int samples = Math.min(FRAME_SIZE, decodedLength - decodedPosition);
+                System.arraycopy(decoded, decodedPosition, pcm, 0, samples);
+                Arrays.fill(pcm, samples, FRAME_SIZE, (short) 0);
+                decodedPosition += FRAME_SIZE;
+            }
+
+            long energy = 0;
+            for (int i = 0; i < FRAME_SIZE; i++) {
+                energy += pcm[i] * pcm[i];
+            }
+            speaking = energy > mixer.speechEnergyThreshold;
+        }
+
+        /**
+         * Decodes a whole packet into {@link #decoded}.
+         *
+         * @return Samples decoded, or -1 if the packet is unusable
+         */
+        private int decode(ConferenceMixer mixer, byte[] packet) {
+            if (packet.length > MAX_PACKET_BYTES) {
+                mixer.decodeErrors++;
+                return -1;
+            }
+            MemorySegment.copy(packet, 0, mixer.packetNative, C_CHAR, 0, packet.length);
+            int samples = opus_decode(decoder, mixer.packetNative, packet.length, mixer.pcmNative,
+                    MAX_PACKET_SAMPLES, 0);
+            if (samples < 0) {
+                mixer.decodeErrors++;
+                return -1;
+            }
+            MemorySegment.copy(mixer.pcmNative, C_SHORT, 0, decoded, 0, samples);
+            return samples;
+        }
+
+        // Extrapolates the lost frame so a speaker fades out instead of
+        // cutting to silence
+        private void conceal(ConferenceMixer mixer) {
+            int samples = opus_decode(decoder, MemorySegment.NULL, 0, mixer.pcmNative, FRAME_SIZE, 0);
+            if (samples < 0) {
+                Arrays.fill(pcm, (short) 0);
+                return;
+            }
+            MemorySegment.copy(mixer.pcmNative, C_SHORT, 0, pcm, 0, samples);
+            Arrays.fill(pcm, samples, FRAME_SIZE, (short) 0);
+        }
+
+        private void release() {
+            OpusCodec.destroyDecoder(decoder);
+            OpusCodec.destroyEncoder(encoder);
+            encoder = null;
+            arena.close();
+        }
+    }
+}
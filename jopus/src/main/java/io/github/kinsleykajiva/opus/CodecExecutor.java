@@ -0,0 +1,62 @@
+package io.github.kinsleykajiva.opus;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Platform threads reserved for native codec work.
+ * <p>
+ * A virtual thread that calls into libopus stays pinned to its carrier for the
+ * whole downcall, so a few long encodes (a whole file through
+ * {@code ope_encoder_write}, say) can occupy every carrier and stall unrelated
+ * I/O. Handing codec work to this executor keeps the carriers free: virtual
+ * threads wait on a {@link CompletableFuture}, which
+ * unmounts them, while a fixed set of platform threads, one per core, runs
+ * the native calls. Excess work queues instead of oversubscribing the CPU, so
+ * throughput under mixed load stays predictable.
+ */
+public final class CodecExecutor {
+
+    private static volatile ExecutorService shared;
+
+    private CodecExecutor() {
+    }
+
+    /**
+     * @return The shared executor, created on first use with one daemon
+     *         thread per available processor
+     */
+    public static ExecutorService shared() {
+        if (shared == null) {
+            synchronized (CodecExecutor.class) {
+                if (shared == null) {
+                    shared = create(Runtime.getRuntime().availableProcessors());
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Creates a separate codec executor, for example to isolate one workload
+     * from the shared one. The caller shuts it down.
+     *
+     * @param threads Number of platform threads
+     */
+    public static ExecutorService create(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, "jopus-codec-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        // Threads are only kept while there is codec work to do
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
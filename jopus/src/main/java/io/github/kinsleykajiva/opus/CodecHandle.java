@@ -0,0 +1,205 @@
+package io.github.kinsleykajiva.opus;
+
+import io.github.kinsleykajiva.metrics.CodecMetrics;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.ref.Cleaner;
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Owning reference to a native Opus encoder or decoder.
+ * <p>
+ * Unlike a raw {@link MemorySegment}, a handle cannot be lost silently. If it
+ * becomes unreachable without {@link #close()}, a {@link Cleaner} reports the
+ * leak (with the allocation site when
+ * {@link #setCaptureAllocationSites(boolean) capture} is on) and returns the
+ * codec to its pool, or destroys it when it was not pooled. Pools can also
+ * take back handles that have been idle longer than a configured timeout, so
+ * a session abandoned on an exception path cannot exhaust the pool.
+ * <p>
+ * Callers wrap each native call in {@link #acquire()} and {@link #release()};
+ * a handle is used by one thread at a time.
+ */
+public abstract class CodecHandle implements AutoCloseable {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private static volatile boolean captureAllocationSites = Boolean.getBoolean("jopus.captureAllocationSites");
+
+    private static final int IDLE = 0;
+    private static final int IN_USE = 1;
+    private static final int CLOSED = 2;
+    private static final int REVOKED = 3;
+
+    /**
+     * Receives the native codec back when a handle is closed, leaked or
+     * revoked.
+     */
+    interface Owner {
+        /**
+         * @param aborted True when the stream using the codec ended without a
+         *                close, so its state should be reset before reuse
+         */
+        void reclaim(State state, boolean aborted);
+    }
+
+    /**
+     * Cleaner state. Must not reference the handle, or the handle would never
+     * become unreachable.
+     */
+    static final class State implements Runnable {
+        final MemorySegment segment;
+        final String kind;
+        private final Owner owner;
+        private final Throwable allocationSite;
+        private final AtomicInteger status = new AtomicInteger(IDLE);
+        private volatile long lastUsedNanos = System.nanoTime();
+
+        State(MemorySegment segment, String kind, Owner owner) {
+            this.segment = segment;
+            this.kind = kind;
+            this.owner = owner;
+            this.allocationSite = captureAllocationSites ? new Throwable(kind + " handle allocated here") : null;
+        }
+
+        // Runs once: from close(), or from the Cleaner once the handle is
+        // unreachable
+        @Override
+        public void run() {
+            while (true) {
+                int s = status.get();
+                if (s == REVOKED) {
+                    return; // Already taken back by the idle reaper
+                }
+                if (s == CLOSED) {
+                    owner.reclaim(this, false);
+                    return;
+                }
+                if (status.compareAndSet(s, CLOSED)) {
+                    CodecMetrics.global().handleLeaked();
+                    report("Opus " + kind + " handle was garbage collected without close(); reclaiming it");
+                    owner.reclaim(this, true);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Revokes the handle if it has been idle for at least the timeout.
+         */
+        boolean revokeIfIdle(long now, long timeoutNanos) {
+            if (now - lastUsedNanos < timeoutNanos || !status.compareAndSet(IDLE, REVOKED)) {
+                return false;
+            }
+            CodecMetrics.global().handleReclaimedIdle();
+            report("Opus " + kind + " handle idle for over " + timeoutNanos / 1_000_000 + " ms; reclaiming it");
+            owner.reclaim(this, true);
+            return true;
+        }
+
+        private void report(String message) {
+            System.err.println("Warning: " + message
+                    + (allocationSite == null ? " (set -Djopus.captureAllocationSites=true to see where it was allocated)"
+                            : ""));
+            if (allocationSite != null) {
+                allocationSite.printStackTrace();
+            }
+        }
+    }
+
+    private final State state;
+    private final Cleaner.Cleanable cleanable;
+
+    CodecHandle(State state) {
+        this.state = state;
+        this.cleanable = CLEANER.register(this, state);
+    }
+
+    /**
+     * Records where every handle created from now on was allocated, at the
+     * cost of a stack trace per handle. Also enabled with
+     * {@code -Djopus.captureAllocationSites=true}.
+     */
+    public static void setCaptureAllocationSites(boolean capture) {
+        captureAllocationSites = capture;
+    }
+
+    /**
+     * Marks the handle busy and returns the native codec.
+     *
+     * @throws IllegalStateException If the handle is closed, was reclaimed
+     *                               after its idle timeout, or is in use
+     */
+    public MemorySegment acquire() {
+        if (!state.status.compareAndSet(IDLE, IN_USE)) {
+            throw new IllegalStateException(switch (state.status.get()) {
+                case REVOKED -> "Opus " + state.kind + " was reclaimed after its idle timeout";
+                case CLOSED -> "Opus " + state.kind + " handle is closed";
+                default -> "Opus " + state.kind + " handle is already in use";
+            });
+        }
+        return state.segment;
+    }
+
+    /**
+     * Marks the end of a native call started with {@link #acquire()}.
+     */
+    public void release() {
+        state.lastUsedNanos = System.nanoTime();
+        state.status.compareAndSet(IN_USE, IDLE);
+    }
+
+    /**
+     * @return True once the handle was closed or reclaimed
+     */
+    public boolean isClosed() {
+        int s = state.status.get();
+        return s == CLOSED || s == REVOKED;
+    }
+
+    /**
+     * Returns the codec to its pool, or destroys it if it was not pooled.
+     *
+     * @throws IllegalStateException If called while a native call is running
+     */
+    @Override
+    public void close() {
+        int s;
+        while ((s = state.status.get()) == IDLE && !state.status.compareAndSet(IDLE, CLOSED)) {
+            // Lost a race with acquire() or the idle reaper; look again
+        }
+        if (s == IN_USE) {
+            throw new IllegalStateException("Opus " + state.kind + " handle closed while in use");
+        }
+        cleanable.clean();
+    }
+
+    // --- Idle reclamation ---
+
+    private static volatile ScheduledExecutorService reaper;
+
+    static ScheduledExecutorService reaper() {
+        if (reaper == null) {
+            synchronized (CodecHandle.class) {
+                if (reaper == null) {
+                    reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread thread = new Thread(r, "jopus-idle-reaper");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return reaper;
+    }
+
+    static void revokeIdle(Collection<State> borrowed, long timeoutNanos) {
+        long now = System.nanoTime();
+        for (State state : borrowed) {
+            state.revokeIfIdle(now, timeoutNanos);
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package io.github.kinsleykajiva.opus;
+
+import io.github.kinsleykajiva.metrics.CodecMetrics;
+import io.github.kinsleykajiva.metrics.CodecSlabMXBean;
+import io.github.kinsleykajiva.metrics.Jmx;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import javax.management.ObjectName;
+
+import static io.github.kinsleykajiva.opus.opus_h.*;
+
+/**
+ * Slab allocator for native Opus encoder or decoder state.
+ * <p>
+ * {@code opus_encoder_create} and {@code opus_decoder_create} each call
+ * {@code malloc}; with tens of thousands of sessions that fragments the native
+ * heap and scatters codec state across pages. A slab instead reserves large
+ * segments up front and carves them into fixed-size slots, each rounded up to
+ * a cache line so no two codecs share one. A slot is initialised in place
+ * with {@code opus_encoder_init} or {@code opus_decoder_init}, which also
+ * clears it, and a released slot goes back on a free list to be
+ * re-initialised by the next allocation. After warm-up, creating a codec
+ * costs one init call and no allocation at all.
+ * <p>
+ * Free slots are reused most-recently-released first, while their memory is
+ * still likely to be cached. Slab codecs work with every {@link OpusCodec}
+ * call but must be returned with {@link #release(MemorySegment)}, never
+ * {@code destroyEncoder}/{@code destroyDecoder}. Registered as an MBean under
+ * {@code io.github.kinsleykajiva.jopus:type=CodecSlab} until closed, which
+ * also keeps an unclosed slab reachable.
+ */
+public class CodecSlab implements CodecSlabMXBean, AutoCloseable {
+
+    private static final int CACHE_LINE = 64;
+    // Decoders match the OpusCodec sessions: 8 kHz mono
+    private static final int DECODER_SAMPLE_RATE = 8000;
+    private static final int DECODER_CHANNELS = 1;
+
+    // Null for decoder slabs
+    private final EncoderProfile profile;
+    private final int slotBytes;
+    private final int slotsPerSlab;
+    private final int maxSlabs;
+    private final Arena arena = Arena.ofShared();
+    private final List<MemorySegment> slabs = new ArrayList<>();
+    private final BitSet inUse = new BitSet();
+    private final ObjectName objectName;
+
+    // Stack of released slot indexes
+    private int[] free = new int[64];
+    private int freeCount;
+    // Slots ever carved from the slabs; indexes below this exist
+    private int carved;
+    private int inUseCount;
+    private long allocations;
+    // Refusing allocations; the slabs are freed once the last slot returns
+    private boolean closed;
+    private boolean freed;
+
+    private CodecSlab(EncoderProfile profile, int stateBytes, int slotsPerSlab, int maxSlabs, String name) {
+        if (slotsPerSlab < 1 || maxSlabs < 1) {
+            throw new IllegalArgumentException(
+                    "Slab sizes must be positive: slotsPerSlab=" + slotsPerSlab + " maxSlabs=" + maxSlabs);
+        }
+        this.profile = profile;
+        this.slotBytes = (stateBytes + CACHE_LINE - 1) / CACHE_LINE * CACHE_LINE;
+        this.slotsPerSlab = slotsPerSlab;
+        this.maxSlabs = maxSlabs;
+        this.objectName = Jmx.register("CodecSlab", name, this);
+    }
+
+    /**
+     * Creates a slab allocator for encoders configured from a profile.
+     *
+     * @param slotsPerSlab Codecs per contiguous segment
+     * @param maxSlabs     Segments the allocator may grow to
+     */
+    public static CodecSlab forEncoders(EncoderProfile profile, int slotsPerSlab, int maxSlabs) {
+        OpusCodec.loadNativeLibraries();
+        return new CodecSlab(profile, opus_encoder_get_size(profile.channels()), slotsPerSlab, maxSlabs,
+                Jmx.nextPoolName());
+    }
+
+    /**
+     * Creates a slab allocator for 8 kHz mono decoders.
+     *
+     * @param slotsPerSlab Codecs per contiguous segment
+     * @param maxSlabs     Segments the allocator may grow to
+     */
+    public static CodecSlab forDecoders(int slotsPerSlab, int maxSlabs) {
+        OpusCodec.loadNativeLibraries();
+        return new CodecSlab(null, opus_decoder_get_size(DECODER_CHANNELS), slotsPerSlab, maxSlabs,
+                Jmx.nextPoolName());
+    }
+
+    /**
+     * Takes a free slot, growing by one slab if needed, and initialises a
+     * codec in it.
+     *
+     * @return The codec, usable with every {@link OpusCodec} call
+     * @throws RuntimeException If every slab is full or the init fails
+     */
+    public MemorySegment allocate() {
+        MemorySegment slot;
+        int index;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Codec slab is closed");
+            }
+            index = takeSlot();
+            slot = slot(index);
+            inUse.set(index);
+            inUseCount++;
+            allocations++;
+        }
+        try {
+            initialize(slot);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                inUse.clear(index);
+                inUseCount--;
+                pushFree(index);
+            }
+            throw e;
+        }
+        CodecMetrics.global().nativeAllocated(profile != null, slotBytes);
+        return slot;
+    }
+
+    /**
+     * Returns the codec state to its slot from scratch, as a fresh
+     * {@link #allocate()} would.
+     */
+    public void reinitialize(MemorySegment codec) {
+        synchronized (this) {
+            int index = indexOf(codec);
+            if (index < 0 || !inUse.get(index)) {
+                throw new IllegalArgumentException("Not a live codec from this slab");
+            }
+        }
+        initialize(codec);
+    }
+
+    /**
+     * Puts a codec's slot back on the free list. Nothing is freed; the slot
+     * is re-initialised when it is next allocated.
+     */
+    public void release(MemorySegment codec) {
+        synchronized (this) {
+            int index = indexOf(codec);
+            if (index < 0 || !inUse.get(index)) {
+                throw new IllegalArgumentException("Not a live codec from this slab");
+            }
+            inUse.clear(index);
+            inUseCount--;
+            pushFree(index);
+            if (closed && inUseCount == 0) {
+                free();
+            }
+        }
+        CodecMetrics.global().nativeFreed(profile != null, slotBytes);
+    }
+
+    /**
+     * @return The encoder profile, or null for a decoder slab
+     */
+    EncoderProfile profile() {
+        return profile;
+    }
+
+    /**
+     * @return True if the codec was allocated from this slab
+     */
+    public synchronized boolean owns(MemorySegment codec) {
+        return indexOf(codec) >= 0;
+    }
+
+    private void initialize(MemorySegment slot) {
+        if (profile != null) {
+            int result = opus_encoder_init(slot, profile.sampleRate(), profile.channels(), profile.application());
+            if (result != OPUS_OK()) {
+                throw new RuntimeException("Failed to initialise Opus encoder: Error code " + result);
+            }
+            OpusCodec.applyProfile(slot, profile);
+        } else {
+            int result = opus_decoder_init(slot, DECODER_SAMPLE_RATE, DECODER_CHANNELS);
+            if (result != OPUS_OK()) {
+                throw new RuntimeException("Failed to initialise Opus decoder: Error code " + result);
+            }
+        }
+    }
+
+    private int takeSlot() {
+        if (freeCount > 0) {
+            return free[--freeCount];
+        }
+        if (carved == slabs.size() * slotsPerSlab) {
+            if (slabs.size() == maxSlabs) {
+                throw new RuntimeException("Codec slab exhausted: " + carved + " " + getKind() + "s in use");
+            }
+            slabs.add(arena.allocate((long) slotBytes * slotsPerSlab, CACHE_LINE));
+        }
+        return carved++;
+    }
+
+    private void pushFree(int index) {
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, freeCount * 2);
+        }
+        free[freeCount++] = index;
+    }
+
+    private MemorySegment slot(int index) {
+        return slabs.get(index / slotsPerSlab).asSlice((long) (index % slotsPerSlab) * slotBytes, slotBytes);
+    }
+
+    private int indexOf(MemorySegment codec) {
+        long address = codec.address();
+        for (int i = 0; i < slabs.size(); i++) {
+            long offset = address - slabs.get(i).address();
+            if (offset >= 0 && offset < (long) slotBytes * slotsPerSlab && offset % slotBytes == 0) {
+                return i * slotsPerSlab + (int) (offset / slotBytes);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Stops allocation and frees every slab. While slots are still in use the
+     * free is deferred until the last of them is released, since the codecs
+     * in them would otherwise be left dangling.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Jmx.unregister(objectName);
+        if (inUseCount == 0) {
+            free();
+        }
+    }
+
+    private void free() {
+        if (freed) {
+            return;
+        }
+        freed = true;
+        slabs.clear();
+        arena.close();
+    }
+
+    // --- CodecSlabMXBean ---
+
+    @Override
+    public String getKind() {
+        return profile != null ? "encoder" : "decoder";
+    }
+
+    @Override
+    public int getSlotBytes() {
+        return slotBytes;
+    }
+
+    @Override
+    public synchronized int getSlabCount() {
+        return slabs.size();
+    }
+
+    @Override
+    public synchronized int getCapacity() {
+        return slabs.size() * slotsPerSlab;
+    }
+
+    @Override
+    public synchronized int getInUse() {
+        return inUseCount;
+    }
+
+    @Override
+    public synchronized double getOccupancy() {
+        int capacity = slabs.size() * slotsPerSlab;
+        return capacity == 0 ? 0.0 : (double) inUseCount / capacity;
+    }
+
+    @Override
+    public synchronized long getReservedBytes() {
+        return (long) slabs.size() * slotsPerSlab * slotBytes;
+    }
+
+    @Override
+    public synchronized long getAllocations() {
+        return allocations;
+    }
+}
@@ -0,0 +1,50 @@
+package io.github.kinsleykajiva.opus;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * {@link CodecHandle} to a native Opus decoder.
+ */
+public final class DecoderHandle extends CodecHandle {
+
+    private volatile DecoderTier tier = DecoderTier.STANDARD;
+
+    DecoderHandle(State state) {
+        super(state);
+    }
+
+    /**
+     * Creates an unpooled decoder that is destroyed on close, or when the
+     * handle is garbage collected without one.
+     */
+    public static DecoderHandle create() {
+        return new DecoderHandle(
+                new State(OpusCodec.createDecoder(), "decoder",
+                        (state, aborted) -> OpusCodec.destroyDecoder(state.segment)));
+    }
+
+    /**
+     * Switches the decoder to a quality tier; the change applies from the
+     * next frame decoded. Must not be called while the handle is
+     * {@link #acquire() acquired}.
+     *
+     * @return The tier now in effect, which is {@link DecoderTier#STANDARD}
+     *         if libopus predates decoder tiers
+     */
+    public DecoderTier setTier(DecoderTier tier) {
+        if (tier == this.tier) {
+            return tier;
+        }
+        MemorySegment decoder = acquire();
+        try {
+            this.tier = OpusCodec.setDecoderTier(decoder, tier);
+        } finally {
+            release();
+        }
+        return this.tier;
+    }
+
+    public DecoderTier tier() {
+        return tier;
+    }
+}
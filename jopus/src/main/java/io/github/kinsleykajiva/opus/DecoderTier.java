@@ -0,0 +1,36 @@
+package io.github.kinsleykajiva.opus;
+
+/**
+ * Decoder quality tiers, set through {@code OPUS_SET_COMPLEXITY} on the
+ * decoder. Each tier adds one of the deep-learning stages of libopus 1.5+ on
+ * top of the one below it, at a higher cost per frame; compare them with the
+ * {@code DecoderTierBenchmark}.
+ * <p>
+ * The enhancement stages only run when libopus was built with them (deep PLC
+ * by default, LACE and NoLACE with {@code --enable-osce}); otherwise a higher
+ * tier decodes like {@link #STANDARD}.
+ */
+public enum DecoderTier {
+
+    /** Classic decoding and packet loss concealment. */
+    STANDARD(0),
+    /** Neural packet loss concealment; costs nothing extra while no packet is lost. */
+    DEEP_PLC(5),
+    /** Deep PLC plus LACE, a light post-filter that enhances SILK speech. */
+    LACE(6),
+    /** Deep PLC plus NoLACE, the heavier and better SILK speech enhancer. */
+    NOLACE(7);
+
+    private final int complexity;
+
+    DecoderTier(int complexity) {
+        this.complexity = complexity;
+    }
+
+    /**
+     * @return Decoder complexity that selects the tier
+     */
+    public int complexity() {
+        return complexity;
+    }
+}
@@ -0,0 +1,236 @@
+package io.github.kinsleykajiva.opus;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Node-wide assignment of {@link DecoderTier decoder tiers} to legs.
+ * <p>
+ * Each leg registers its decoder with a priority and the highest tier it is
+ * entitled to, then reports the time each 20 ms frame took to decode. The
+ * governor averages those reports per tier into a cost per frame. Once per
+ * second it hands out tiers again: every leg is costed at
+ * {@link DecoderTier#STANDARD}, and then, from the highest priority down,
+ * each leg gets the best tier up to its entitlement that still fits in
+ * {@code maxCores}. A tier nobody has used yet is assumed to cost twice the
+ * tier below it until it has been measured.
+ * <p>
+ * The whole machine's CPU load caps the budget as well. Above 90%, decoding
+ * may only use three quarters of what it used in the last second, so the
+ * lowest priority legs step down; between 75% and 90% it may not grow, so
+ * nobody steps up. A leg's new tier is applied on its own thread at its next
+ * report.
+ */
+public final class DecoderTierGovernor {
+
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+    private static final int FRAMES_PER_SECOND = 50;
+    private static final double SATURATED_LOAD = 0.90;
+    private static final double RELAXED_LOAD = 0.75;
+    private static final double SHED_FACTOR = 0.75;
+    private static final double UNMEASURED_FACTOR = 2.0;
+
+    private static final DecoderTier[] TIERS = DecoderTier.values();
+
+    private final double maxCores;
+    // In registration order, so equal priorities keep their places
+    private final List<Leg> legs = new ArrayList<>();
+    private final LongAdder[] spentNanos = new LongAdder[TIERS.length];
+    private final LongAdder[] frames = new LongAdder[TIERS.length];
+    // Average nanoseconds per frame by tier; 0 until measured
+    private final double[] costNanos = new double[TIERS.length];
+    private volatile long windowStart = System.nanoTime();
+    private volatile double coresUsed;
+
+    /**
+     * @param maxCores CPU, in cores, that decoding on the registered legs may
+     *                 use across the node
+     */
+    public DecoderTierGovernor(double maxCores) {
+        if (!(maxCores > 0)) {
+            throw new IllegalArgumentException("Decoder budget must be positive: " + maxCores);
+        }
+        this.maxCores = maxCores;
+        for (int i = 0; i < TIERS.length; i++) {
+            spentNanos[i] = new LongAdder();
+            frames[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * One leg's decoder under the governor. Close it when the leg ends.
+     */
+    public final class Leg implements AutoCloseable {
+        private final DecoderHandle decoder;
+        private final int priority;
+        private final DecoderTier maxTier;
+        private volatile DecoderTier assigned = DecoderTier.STANDARD;
+        private boolean closed;
+
+        private Leg(DecoderHandle decoder, int priority, DecoderTier maxTier) {
+            this.decoder = decoder;
+            this.priority = priority;
+            this.maxTier = maxTier;
+        }
+
+        /**
+         * Records the time one frame took to decode, and moves the decoder to
+         * its assigned tier if that changed. Call from the decoding thread,
+         * outside {@link DecoderHandle#acquire()}.
+         */
+        public void decoded(long nanos) {
+            int tier = decoder.tier().ordinal();
+            spentNanos[tier].add(nanos);
+            frames[tier].increment();
+            roll();
+            DecoderTier target = assigned;
+            if (target != decoder.tier() && !closed) {
+                decoder.setTier(target);
+            }
+        }
+
+        /**
+         * @return The tier the governor currently grants the leg
+         */
+        public DecoderTier tier() {
+            return assigned;
+        }
+
+        public int priority() {
+            return priority;
+        }
+
+        @Override
+        public void close() {
+            synchronized (DecoderTierGovernor.this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                legs.remove(this);
+            }
+        }
+    }
+
+    /**
+     * @param decoder  The leg's decoder; it starts at the standard tier until
+     *                 the next assignment
+     * @param priority Higher is more important; the lowest priorities lose
+     *                 their tiers first
+     * @param maxTier  Best tier the leg may get
+     */
+    public synchronized Leg register(DecoderHandle decoder, int priority, DecoderTier maxTier) {
+        Leg leg = new Leg(decoder, priority, maxTier);
+        legs.add(leg);
+        return leg;
+    }
+
+    private void roll() {
+        long start = windowStart;
+        long now = System.nanoTime();
+        if (now - start < WINDOW_NANOS) {
+            return;
+        }
+        synchronized (this) {
+            if (windowStart != start) {
+                return; // Another leg rolled the window
+            }
+            windowStart = now;
+            long spent = 0;
+            for (int i = 0; i < TIERS.length; i++) {
+                long nanos = spentNanos[i].sumThenReset();
+                long count = frames[i].sumThenReset();
+                spent += nanos;
+                if (count > 0) {
+                    double measured = nanos / (double) count;
+                    costNanos[i] = costNanos[i] == 0 ? measured : (costNanos[i] * 3 + measured) / 4;
+                }
+            }
+            double used = spent / (double) (now - start);
+            coresUsed = used;
+            double load = systemLoad();
+            double budget = maxCores;
+            if (load > SATURATED_LOAD) {
+                budget = Math.min(budget, used * SHED_FACTOR);
+            } else if (load > RELAXED_LOAD) {
+                budget = Math.min(budget, used);
+            }
+            assign(budget * 1e9);
+        }
+    }
+
+    /**
+     * Grants tiers from the highest priority down within a budget in
+     * nanoseconds of decoding per second.
+     */
+    private void assign(double budgetNanos) {
+        double[] perSecond = new double[TIERS.length];
+        for (int i = 0; i < TIERS.length; i++) {
+            perSecond[i] = estimate(i) * FRAMES_PER_SECOND;
+        }
+        List<Leg> byPriority = new ArrayList<>(legs);
+        byPriority.sort(Comparator.comparingInt((Leg leg) -> leg.priority).reversed());
+        double total = perSecond[0] * byPriority.size();
+        for (Leg leg : byPriority) {
+            int tier = leg.maxTier.ordinal();
+            while (tier > 0 && total - perSecond[0] + perSecond[tier] > budgetNanos) {
+                tier--;
+            }
+            total += perSecond[tier] - perSecond[0];
+            leg.assigned = TIERS[tier];
+        }
+    }
+
+    private double estimate(int tier) {
+        if (costNanos[tier] > 0 || tier == 0) {
+            return costNanos[tier];
+        }
+        return estimate(tier - 1) * UNMEASURED_FACTOR;
+    }
+
+    private static double systemLoad() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            // Negative when the platform cannot tell
+            return Math.max(0.0, os.getCpuLoad());
+        }
+        return 0.0;
+    }
+
+    // --- Statistics ---
+
+    public double maxCores() {
+        return maxCores;
+    }
+
+    /**
+     * @return Cores decoding on the registered legs used over the last full
+     *         second
+     */
+    public double coresUsed() {
+        return coresUsed;
+    }
+
+    /**
+     * @return Average decode time of a 20 ms frame at the tier, or 0 if no
+     *         leg has decoded at it yet
+     */
+    public synchronized double costNanos(DecoderTier tier) {
+        return costNanos[tier.ordinal()];
+    }
+
+    /**
+     * @return Legs currently granted the tier
+     */
+    public synchronized int legsAt(DecoderTier tier) {
+        int count = 0;
+        for (Leg leg : legs) {
+            if (leg.assigned == tier) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
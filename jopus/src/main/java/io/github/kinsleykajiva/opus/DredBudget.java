@@ -0,0 +1,164 @@
+package io.github.kinsleykajiva.opus;
+
+import java.lang.management.ManagementFactory;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Node-wide CPU budget for DRED recovery.
+ * <p>
+ * Rebuilding lost audio from DRED runs neural networks and can cost more than
+ * the rest of a call's decoding put together, so a burst of loss across many
+ * legs could starve the media threads. Each leg takes a {@link Lease} with a
+ * priority and charges the time it spends on DRED to it. Once per second the
+ * budget compares the DRED time spent against {@code maxCores}, and the whole
+ * machine's CPU load against 90%. If either is exceeded, DRED is switched
+ * off for the lowest priority level still allowed; other legs fall back to
+ * ordinary PLC. Levels are restored one per second, highest first, once DRED
+ * uses under half its budget and the load is back under 75%.
+ */
+public final class DredBudget {
+
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+    private static final double SATURATED_LOAD = 0.90;
+    private static final double RELAXED_LOAD = 0.75;
+
+    private final double maxCores;
+    // Leases per priority
+    private final TreeMap<Integer, Integer> priorities = new TreeMap<>();
+    private final LongAdder spent = new LongAdder();
+    // Legs below this priority may not use DRED
+    private volatile int cutoff = Integer.MIN_VALUE;
+    private volatile long windowStart = System.nanoTime();
+    private volatile double coresUsed;
+
+    /**
+     * @param maxCores CPU, in cores, that DRED recovery may use across the
+     *                 node
+     */
+    public DredBudget(double maxCores) {
+        if (!(maxCores > 0)) {
+            throw new IllegalArgumentException("DRED budget must be positive: " + maxCores);
+        }
+        this.maxCores = maxCores;
+    }
+
+    /**
+     * A leg's share of the budget. Close it when the leg ends.
+     */
+    public final class Lease implements AutoCloseable {
+        private final int priority;
+        private boolean closed;
+
+        private Lease(int priority) {
+            this.priority = priority;
+        }
+
+        /**
+         * @return True if the leg may spend CPU on DRED right now
+         */
+        public boolean allowed() {
+            roll();
+            return priority >= cutoff;
+        }
+
+        /**
+         * Records time spent on DRED.
+         */
+        public void charge(long nanos) {
+            spent.add(nanos);
+        }
+
+        public int priority() {
+            return priority;
+        }
+
+        @Override
+        public void close() {
+            synchronized (DredBudget.this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                priorities.computeIfPresent(priority, (p, count) -> count == 1 ? null : count - 1);
+            }
+        }
+    }
+
+    /**
+     * @param priority Higher is more important; the lowest levels lose DRED
+     *                 first
+     */
+    public synchronized Lease lease(int priority) {
+        priorities.merge(priority, 1, Integer::sum);
+        return new Lease(priority);
+    }
+
+    private void roll() {
+        long start = windowStart;
+        long now = System.nanoTime();
+        if (now - start < WINDOW_NANOS) {
+            return;
+        }
+        synchronized (this) {
+            if (windowStart != start) {
+                return; // Another leg rolled the window
+            }
+            windowStart = now;
+            double used = spent.sumThenReset() / (double) (now - start);
+            coresUsed = used;
+            double load = systemLoad();
+            if (used > maxCores || load > SATURATED_LOAD) {
+                shed();
+            } else if (used < maxCores / 2 && load < RELAXED_LOAD) {
+                restore();
+            }
+        }
+    }
+
+    private void shed() {
+        Integer lowestAllowed = priorities.ceilingKey(cutoff);
+        if (lowestAllowed == null) {
+            return;
+        }
+        Integer next = priorities.higherKey(lowestAllowed);
+        cutoff = next != null ? next : Integer.MAX_VALUE;
+    }
+
+    private void restore() {
+        if (cutoff == Integer.MIN_VALUE) {
+            return;
+        }
+        Integer lower = priorities.lowerKey(cutoff);
+        cutoff = lower != null ? lower : Integer.MIN_VALUE;
+    }
+
+    private static double systemLoad() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            // Negative when the platform cannot tell
+            return Math.max(0.0, os.getCpuLoad());
+        }
+        return 0.0;
+    }
+
+    // --- Statistics ---
+
+    public double maxCores() {
+        return maxCores;
+    }
+
+    /**
+     * @return Cores DRED recovery used over the last full second
+     */
+    public double coresUsed() {
+        return coresUsed;
+    }
+
+    /**
+     * @return Lowest priority currently allowed to use DRED;
+     *         {@code Integer.MIN_VALUE} when nothing is shed
+     */
+    public int cutoffPriority() {
+        return cutoff;
+    }
+}
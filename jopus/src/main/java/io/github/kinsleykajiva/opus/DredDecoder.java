@@ -0,0 +1,114 @@
+package io.github.kinsleykajiva.opus;
+
+import io.github.kinsleykajiva.metrics.CodecMetrics;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+
+import static io.github.kinsleykajiva.opus.opus_h.*;
+
+/**
+ * Receive side of Deep REDundancy (DRED) for one stream.
+ * <p>
+ * A DRED-enabled sender ({@link EncoderProfile#withDred(int)}) packs a
+ * compressed history of the last second or so of audio into every packet.
+ * After a loss burst, {@link #parse} reads that history from the first packet
+ * that did arrive, and {@link #decode} then synthesises each lost frame into
+ * the stream's ordinary decoder, counting back from that packet. Parsing runs
+ * a neural decoder and is far more expensive than PLC, so callers should only
+ * parse when a frame is actually missing; see {@link DredBudget}.
+ * <p>
+ * Requires a libopus built with DRED ({@link OpusCodec#isDredSupported()}).
+ * Not thread-safe.
+ */
+public final class DredDecoder implements AutoCloseable {
+
+    private final Arena arena = Arena.ofShared();
+    private final MemorySegment dredDecoder;
+    private final MemorySegment dred;
+    private final MemorySegment dredEnd;
+    // Valid offsets after the last parse are (silentTail, available]
+    private int available;
+    private int silentTail;
+    private boolean closed;
+
+    private DredDecoder(MemorySegment dredDecoder, MemorySegment dred) {
+        this.dredDecoder = dredDecoder;
+        this.dred = dred;
+        this.dredEnd = arena.allocate(C_INT);
+    }
+
+    /**
+     * @throws UnsupportedOperationException If libopus was built without DRED
+     */
+    public static DredDecoder create() {
+        if (!OpusCodec.isDredSupported()) {
+            throw new UnsupportedOperationException("libopus was built without DRED");
+        }
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment errorPtr = arena.allocate(C_INT);
+            MemorySegment dredDecoder = opus_dred_decoder_create(errorPtr);
+            if (dredDecoder.equals(MemorySegment.NULL)) {
+                throw new RuntimeException("Failed to create DRED decoder: Error code " + errorPtr.get(C_INT, 0));
+            }
+            MemorySegment dred = opus_dred_alloc(errorPtr);
+            if (dred.equals(MemorySegment.NULL)) {
+                opus_dred_decoder_destroy(dredDecoder);
+                throw new RuntimeException("Failed to allocate DRED state: Error code " + errorPtr.get(C_INT, 0));
+            }
+            return new DredDecoder(dredDecoder, dred);
+        }
+    }
+
+    /**
+     * Extracts and decodes the DRED history of a packet, replacing any
+     * previously parsed one.
+     *
+     * @param packet     The Opus packet
+     * @param maxSamples Most history worth decoding, at {@code sampleRate}
+     * @param sampleRate Rate of the decoder the frames will be rebuilt into
+     * @return Samples of history available before the packet, 0 if it
+     *         carries none, or a negative Opus error code
+     */
+    public int parse(MemorySegment packet, int length, int maxSamples, int sampleRate) {
+        int result = opus_dred_parse(dredDecoder, dred, packet, length, maxSamples, sampleRate, dredEnd, 0);
+        available = Math.max(result, 0);
+        silentTail = result > 0 ? dredEnd.get(C_INT, 0) : 0;
+        return result;
+    }
+
+    /**
+     * @param offset Samples from the start of the lost frame to the start of
+     *               the parsed packet
+     * @return True if the last parsed history reaches back that far
+     */
+    public boolean covers(int offset) {
+        return offset > silentTail && offset <= available;
+    }
+
+    /**
+     * Rebuilds one lost frame from the parsed history into a decoder, which
+     * advances its state just as decoding the frame would have.
+     *
+     * @param offset As for {@link #covers(int)}
+     * @param pcm    Receives {@code frameSize} native samples
+     * @return Samples decoded, or a negative Opus error code
+     */
+    public int decode(MemorySegment decoder, int offset, MemorySegment pcm, int frameSize) {
+        long start = System.nanoTime();
+        int samples = opus_decoder_dred_decode(decoder, dred, offset, pcm, frameSize);
+        CodecMetrics.global().recordDecode(samples < 0 ? samples : samples * 2, System.nanoTime() - start);
+        return samples;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        opus_dred_free(dred);
+        opus_dred_decoder_destroy(dredDecoder);
+        arena.close();
+    }
+}
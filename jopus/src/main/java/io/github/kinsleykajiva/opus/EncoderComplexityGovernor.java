@@ -0,0 +1,205 @@
+package io.github.kinsleykajiva.opus;
+
+import io.github.kinsleykajiva.metrics.CodecMetrics;
+import io.github.kinsleykajiva.metrics.EncoderComplexityMXBean;
+import io.github.kinsleykajiva.metrics.Jmx;
+import io.github.kinsleykajiva.metrics.LatencyHistogram;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+import javax.management.ObjectName;
+
+/**
+ * Node-wide encoder complexity control under load.
+ * <p>
+ * The governor watches every streaming encode recorded in
+ * {@link CodecMetrics} and, once per second, judges the last second: it is
+ * overloaded if the 99th percentile encode latency exceeded the target, or if
+ * more than 0.1% of encodes missed the deadline. Seconds with fewer than 100
+ * encodes are too small to call overloaded. An overloaded second steps
+ * the complexity down one tier (9, 7, 5, 3 by default). Stepping back up
+ * takes five calm seconds in a row, with the 99th percentile under half the
+ * target and no misses at all, so the complexity does not flap at the edge
+ * of overload. The second after any step is not judged, since encoders pick
+ * up the new complexity only gradually.
+ * <p>
+ * Pools given a governor with
+ * {@link OpusCodec.OpusEncoderPool#setComplexityGovernor} apply the current
+ * complexity lazily: each handle sets it on its encoder when it is next
+ * {@link CodecHandle#acquire() acquired}, so a change costs nothing until an
+ * encoder is used, and encoders go back to the pool at the pool's own
+ * complexity. The state is registered as an MBean under
+ * {@code io.github.kinsleykajiva.jopus:type=EncoderComplexity} until
+ * {@link #close() closed}.
+ */
+public final class EncoderComplexityGovernor implements EncoderComplexityMXBean, AutoCloseable {
+
+    private static final long WINDOW_MILLIS = 1000;
+    // Windows with fewer encodes are too small to judge a percentile on
+    private static final int MIN_SAMPLES = 100;
+    private static final int CALM_WINDOWS_TO_STEP_UP = 5;
+    private static final int COMPLEXITY_STEP = 2;
+
+    private final int maxComplexity;
+    private final int minComplexity;
+    private final int tiers;
+    private final long targetP99Nanos;
+    private final long deadlineNanos;
+    private final LatencyHistogram window = new LatencyHistogram();
+    private final LongAdder windowMisses = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongConsumer watcher = this::record;
+    private final ObjectName objectName;
+    private final ScheduledFuture<?> evaluator;
+
+    private volatile int tier;
+    private volatile long windowP99;
+    private volatile long stepDowns;
+    private volatile long stepUps;
+    private volatile boolean closed;
+    // Only touched by the evaluator
+    private int calmWindows;
+    private boolean settling;
+
+    /**
+     * Steps between complexity 9 and 3, aiming for a 99th percentile encode
+     * under 2 ms and treating encodes over 5 ms as missed deadlines.
+     */
+    public EncoderComplexityGovernor() {
+        this(9, 3, Duration.ofMillis(2), Duration.ofMillis(5));
+    }
+
+    /**
+     * @param maxComplexity Complexity when not under load
+     * @param minComplexity Lowest complexity to step down to
+     * @param targetP99     Encode latency the 99th percentile should stay
+     *                      under
+     * @param deadline      Encode latency past which the frame counts as a
+     *                      missed deadline
+     */
+    public EncoderComplexityGovernor(int maxComplexity, int minComplexity, Duration targetP99,
+            Duration deadline) {
+        if (minComplexity < 0 || maxComplexity > 10 || minComplexity > maxComplexity) {
+            throw new IllegalArgumentException(
+                    "Invalid complexity range: " + minComplexity + " to " + maxComplexity);
+        }
+        if (targetP99.isNegative() || targetP99.isZero() || deadline.isNegative() || deadline.isZero()) {
+            throw new IllegalArgumentException("Latency target and deadline must be positive");
+        }
+        this.maxComplexity = maxComplexity;
+        this.minComplexity = minComplexity;
+        this.tiers = (maxComplexity - minComplexity + COMPLEXITY_STEP - 1) / COMPLEXITY_STEP + 1;
+        this.targetP99Nanos = targetP99.toNanos();
+        this.deadlineNanos = deadline.toNanos();
+        CodecMetrics.global().watchEncodes(watcher);
+        this.evaluator = CodecHandle.reaper().scheduleAtFixedRate(this::evaluate, WINDOW_MILLIS, WINDOW_MILLIS,
+                TimeUnit.MILLISECONDS);
+        this.objectName = Jmx.register("EncoderComplexity", null, this);
+    }
+
+    private void record(long nanos) {
+        window.record(nanos);
+        if (nanos > deadlineNanos) {
+            windowMisses.increment();
+            misses.increment();
+        }
+    }
+
+    /**
+     * Reports a frame that missed its deadline for reasons the encode latency
+     * alone does not show, such as a pacer that woke late.
+     */
+    public void deadlineMissed() {
+        windowMisses.increment();
+        misses.increment();
+    }
+
+    private void evaluate() {
+        long count = window.count();
+        long p99 = window.percentile(99);
+        long missed = windowMisses.sumThenReset();
+        window.reset();
+        windowP99 = p99;
+        if (settling) {
+            settling = false;
+            return;
+        }
+        boolean overloaded = count >= MIN_SAMPLES && (missed * 1000 > count || p99 > targetP99Nanos);
+        boolean calm = missed == 0 && (count < MIN_SAMPLES || p99 < targetP99Nanos / 2);
+        if (overloaded) {
+            calmWindows = 0;
+            if (tier < tiers - 1) {
+                tier++;
+                stepDowns++;
+                settling = true;
+            }
+        } else if (calm && tier > 0) {
+            if (++calmWindows >= CALM_WINDOWS_TO_STEP_UP) {
+                calmWindows = 0;
+                tier--;
+                stepUps++;
+                settling = true;
+            }
+        } else {
+            calmWindows = 0;
+        }
+    }
+
+    /**
+     * @return Complexity encoders should run at now
+     */
+    public int complexity() {
+        return Math.max(minComplexity, maxComplexity - tier * COMPLEXITY_STEP);
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stops watching encodes. Handles still under the governor bring their
+     * encoder back to the pool's complexity on their next acquire.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        evaluator.cancel(false);
+        CodecMetrics.global().unwatchEncodes(watcher);
+        Jmx.unregister(objectName);
+    }
+
+    // --- EncoderComplexityMXBean ---
+
+    @Override
+    public int getComplexity() {
+        return complexity();
+    }
+
+    @Override
+    public int getTier() {
+        return tier;
+    }
+
+    @Override
+    public long getWindowP99Micros() {
+        return windowP99 / 1000;
+    }
+
+    @Override
+    public long getDeadlineMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getStepDowns() {
+        return stepDowns;
+    }
+
+    @Override
+    public long getStepUps() {
+        return stepUps;
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.kinsleykajiva.opus;
+
+import java.lang.foreign.MemorySegment;
+import java.util.function.Consumer;
+
+import static io.github.kinsleykajiva.opus.opus_h.*;
+
+/**
+ * {@link CodecHandle} to a native Opus encoder.
+ */
+public final class EncoderHandle extends CodecHandle {
+
+    private final State state;
+    private final EncoderComplexityGovernor governor;
+    // Complexity the encoder had before the governor, restored once it closes
+    private final int profileComplexity;
+    // Tells the owning pool to restore the rate settings; null if unpooled
+    private final Consumer<State> rateControlListener;
+    // Complexity this handle last set on the encoder, or -1
+    private int complexity = -1;
+    private boolean rateControlled;
+
+    EncoderHandle(State state) {
+        this(state, null, -1, null);
+    }
+
+    EncoderHandle(State state, EncoderComplexityGovernor governor, int profileComplexity,
+            Consumer<State> rateControlListener) {
+        super(state);
+        this.state = state;
+        this.governor = governor;
+        this.profileComplexity = profileComplexity;
+        this.rateControlListener = rateControlListener;
+    }
+
+    /**
+     * Records that the encoder's bitrate, planned loss or in-band FEC is
+     * being changed, for example with {@link OpusCodec#applyRateSettings}.
+     * A pooled encoder then gets its profile's settings back whenever the
+     * pool takes it back, whether the handle is closed, leaked or revoked.
+     */
+    public void markRateControlled() {
+        if (!rateControlled) {
+            rateControlled = true;
+            if (rateControlListener != null) {
+                rateControlListener.accept(state);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Under a {@link EncoderComplexityGovernor}, first brings the encoder to
+     * the governor's current complexity, or back to the profile's once the
+     * governor is closed.
+     */
+    @Override
+    public MemorySegment acquire() {
+        MemorySegment encoder = super.acquire();
+        if (governor != null) {
+            int target = governor.isClosed() ? profileComplexity : governor.complexity();
+            if (target != complexity) {
+                try {
+                    OpusCodec.setEncoderCtl(encoder, OPUS_SET_COMPLEXITY_REQUEST(), target);
+                } catch (RuntimeException e) {
+                    release();
+                    throw e;
+                }
+                complexity = target;
+            }
+        }
+        return encoder;
+    }
+
+    /**
+     * Creates an unpooled encoder that is destroyed on close, or when the
+     * handle is garbage collected without one.
+     */
+    public static EncoderHandle create(EncoderProfile profile) {
+        return new EncoderHandle(
+                new State(OpusCodec.createEncoder(profile), "encoder",
+                        (state, aborted) -> OpusCodec.destroyEncoder(state.segment)));
+    }
+}
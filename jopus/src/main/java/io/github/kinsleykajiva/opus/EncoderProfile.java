@@ -0,0 +1,126 @@
+package io.github.kinsleykajiva.opus;
+
+/**
+ * Immutable description of how an Opus encoder is configured.
+ * <p>
+ * Profiles are value objects, so they can be used as map keys by anything
+ * that caches work per codec configuration (for example pre-encoded silence
+ * packets). Start from {@link #DEFAULT} and derive variants with the
+ * {@code with*} methods.
+ *
+ * @param sampleRate  Input sample rate in Hz
+ * @param channels    Number of interleaved input channels
+ * @param application OPUS_APPLICATION_* constant
+ * @param bitrate     Target bitrate in bits/s, or {@link #LIBRARY_DEFAULT}
+ * @param complexity  Encoder complexity 0-10, or {@link #LIBRARY_DEFAULT}
+ * @param dtx         Whether discontinuous transmission is enabled
+ * @param expectedLossPercent Packet loss the encoder should plan for, 0-100;
+ *                            above 0 it also enables in-band FEC
+ * @param dredDurationMs      Deep REDundancy history carried in each packet,
+ *                            0 to disable
+ */
+public record EncoderProfile(int sampleRate, int channels, int application, int bitrate, int complexity,
+        boolean dtx, int expectedLossPercent, int dredDurationMs) {
+
+    /**
+     * Marker for settings that should be left at the libopus default.
+     */
+    public static final int LIBRARY_DEFAULT = -1;
+
+    // OPUS_APPLICATION_VOIP = 2048
+    private static final int APPLICATION_VOIP = 2048;
+
+    /**
+     * 8 kHz mono VoIP, matching the encoders created by
+     * {@link OpusCodec#createEncoder()}.
+     */
+    public static final EncoderProfile DEFAULT = new EncoderProfile(8000, 1, APPLICATION_VOIP, LIBRARY_DEFAULT,
+            LIBRARY_DEFAULT, false);
+
+    /**
+     * Largest DRED history libopus can carry.
+     */
+    public static final int MAX_DRED_DURATION_MS = 1000;
+
+    /**
+     * Profile without loss protection.
+     */
+    public EncoderProfile(int sampleRate, int channels, int application, int bitrate, int complexity,
+            boolean dtx) {
+        this(sampleRate, channels, application, bitrate, complexity, dtx, 0, 0);
+    }
+
+    public EncoderProfile {
+        if (sampleRate != 8000 && sampleRate != 12000 && sampleRate != 16000 && sampleRate != 24000
+                && sampleRate != 48000) {
+            throw new IllegalArgumentException("Unsupported Opus sample rate: " + sampleRate);
+        }
+        if (channels != 1 && channels != 2) {
+            throw new IllegalArgumentException("Unsupported channel count: " + channels);
+        }
+        if (complexity != LIBRARY_DEFAULT && (complexity < 0 || complexity > 10)) {
+            throw new IllegalArgumentException("Complexity must be between 0 and 10: " + complexity);
+        }
+        if (expectedLossPercent < 0 || expectedLossPercent > 100) {
+            throw new IllegalArgumentException("Expected loss must be between 0 and 100: " + expectedLossPercent);
+        }
+        if (dredDurationMs < 0 || dredDurationMs > MAX_DRED_DURATION_MS) {
+            throw new IllegalArgumentException(
+                    "DRED duration must be between 0 and " + MAX_DRED_DURATION_MS + " ms: " + dredDurationMs);
+        }
+    }
+
+    public EncoderProfile withSampleRate(int sampleRate) {
+        return new EncoderProfile(sampleRate, channels, application, bitrate, complexity, dtx, expectedLossPercent,
+                dredDurationMs);
+    }
+
+    public EncoderProfile withChannels(int channels) {
+        return new EncoderProfile(sampleRate, channels, application, bitrate, complexity, dtx, expectedLossPercent,
+                dredDurationMs);
+    }
+
+    public EncoderProfile withApplication(int application) {
+        return new EncoderProfile(sampleRate, channels, application, bitrate, complexity, dtx, expectedLossPercent,
+                dredDurationMs);
+    }
+
+    public EncoderProfile withBitrate(int bitrate) {
+        return new EncoderProfile(sampleRate, channels, application, bitrate, complexity, dtx, expectedLossPercent,
+                dredDurationMs);
+    }
+
+    public EncoderProfile withComplexity(int complexity) {
+        return new EncoderProfile(sampleRate, channels, application, bitrate, complexity, dtx, expectedLossPercent,
+                dredDurationMs);
+    }
+
+    public EncoderProfile withDtx(boolean dtx) {
+        return new EncoderProfile(sampleRate, channels, application, bitrate, complexity, dtx, expectedLossPercent,
+                dredDurationMs);
+    }
+
+    public EncoderProfile withExpectedLoss(int expectedLossPercent) {
+        return new EncoderProfile(sampleRate, channels, application, bitrate, complexity, dtx, expectedLossPercent,
+                dredDurationMs);
+    }
+
+    /**
+     * Carries up to {@code durationMs} of Deep REDundancy in every packet, so
+     * a receiver can rebuild long loss bursts from the first packet after
+     * them. libopus only spends bits on DRED when loss is expected, so
+     * combine with {@link #withExpectedLoss(int)}. Ignored, with a warning,
+     * by libopus builds without DRED.
+     */
+    public EncoderProfile withDred(int durationMs) {
+        return new EncoderProfile(sampleRate, channels, application, bitrate, complexity, dtx, expectedLossPercent,
+                durationMs);
+    }
+
+    /**
+     * @return Samples per channel in one 20 ms frame at this sample rate
+     */
+    public int frameSize() {
+        return sampleRate / 50;
+    }
+}
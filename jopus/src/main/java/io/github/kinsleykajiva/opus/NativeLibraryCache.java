@@ -0,0 +1,403 @@
+package io.github.kinsleykajiva.opus;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.jar.JarEntry;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Extracts the bundled native libraries into a persistent, content-addressed
+ * cache directory.
+ * <p>
+ * The directory name combines the library version with a fingerprint of
+ * every bundled library: its size and the CRC-32 the jar recorded for it at
+ * build time (size and modification time when running from a class
+ * directory). The fingerprint comes from the jar's central directory, so an
+ * upgraded jar never reuses stale binaries and an unchanged one reuses the
+ * previous extraction. Every file is checked against the jar's CRC-32 as it
+ * is extracted, and a completion marker recording the verified CRC-32 and
+ * size of each file is written once all of them are in place. A later start
+ * re-checks each file against the marker (and the jar) before it is loaded,
+ * so a truncated, corrupted or replaced library is extracted again rather
+ * than passed to {@code System.load}. Extraction runs in parallel, and a
+ * file lock keeps concurrent processes (for example several pods sharing a
+ * volume) from writing the same directory at once.
+ * <p>
+ * Each start touches its directory's marker. After extracting a new
+ * directory, those of other versions not used for {@value #STALE_DAYS} days
+ * are deleted.
+ * <p>
+ * The cache root is, in order: the {@code jopus.natives.cacheDir} system
+ * property, {@code $XDG_CACHE_HOME}, {@code %LOCALAPPDATA%} on Windows,
+ * {@code ~/.cache}, and finally a directory under {@code java.io.tmpdir}
+ * that is created owner-only and refused if anyone else owns it or can
+ * write to it.
+ */
+final class NativeLibraryCache {
+
+    private static final String LOCK_FILE = ".lock";
+    private static final String COMPLETE_FILE = ".complete";
+    private static final int STALE_DAYS = 30;
+
+    private NativeLibraryCache() {
+    }
+
+    /**
+     * @param size        Bytes, or -1 if unknown
+     * @param fingerprint Jar entry CRC-32, or the file's modification time
+     */
+    private record Resource(String fileName, URL url, long size, long fingerprint, boolean fromJar) {
+    }
+
+    /**
+     * A file as extracted and verified.
+     */
+    private record Extracted(Path path, long crc, long size) {
+    }
+
+    /**
+     * Extracts the given classpath resources, reusing a complete extraction
+     * from a previous run.
+     *
+     * @param fileNames Library file names at the classpath root
+     * @return Extracted path per file name; names not bundled in the jar are
+     *         absent
+     * @throws IOException If the cache directory cannot be prepared
+     */
+    static Map<String, Path> extract(List<String> fileNames) throws IOException {
+        List<Resource> resources = new ArrayList<>();
+        for (String fileName : fileNames) {
+            Resource resource = locate(fileName);
+            if (resource != null) {
+                resources.add(resource);
+            }
+        }
+        if (resources.isEmpty()) {
+            return new LinkedHashMap<>();
+        }
+
+        MessageDigest combined = sha256();
+        for (Resource resource : resources) {
+            combined.update(resource.fileName().getBytes(StandardCharsets.UTF_8));
+            combined.update(ByteBuffer.allocate(16).putLong(resource.size()).putLong(resource.fingerprint()).array());
+        }
+        String contentHash = HexFormat.of().formatHex(combined.digest(), 0, 8);
+        Path dir = cacheRoot().resolve("jopus").resolve("natives").resolve(version() + "-" + contentHash);
+
+        // Fast path: a finished extraction, no lock and no reads
+        Map<String, Path> result = completed(dir, resources);
+        if (result != null) {
+            touch(dir.resolve(COMPLETE_FILE));
+            return result;
+        }
+
+        Files.createDirectories(dir);
+        try (FileChannel lockChannel = FileChannel.open(dir.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+                FileLock lock = lockChannel.lock()) {
+            // Another process may have finished while we waited
+            result = completed(dir, resources);
+            if (result != null) {
+                return result;
+            }
+            // A marker left by a failed check must not survive a partial
+            // re-extraction
+            Files.deleteIfExists(dir.resolve(COMPLETE_FILE));
+            List<CompletableFuture<Extracted>> writes = resources.stream()
+                    .map(r -> CompletableFuture.supplyAsync(() -> extractOne(dir, r)))
+                    .toList();
+            result = new LinkedHashMap<>();
+            StringBuilder marker = new StringBuilder();
+            for (int i = 0; i < resources.size(); i++) {
+                Extracted extracted = await(writes.get(i));
+                result.put(resources.get(i).fileName(), extracted.path());
+                marker.append(resources.get(i).fileName()).append('\t').append(Long.toHexString(extracted.crc()))
+                        .append('\t').append(extracted.size()).append('\n');
+            }
+            writeAtomically(dir, COMPLETE_FILE, marker.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        pruneStale(dir);
+        return result;
+    }
+
+    /**
+     * @return The extracted paths if the directory is complete and every file
+     *         still has the size and CRC-32 verified at extraction, otherwise
+     *         null
+     */
+    private static Map<String, Path> completed(Path dir, List<Resource> resources) {
+        Map<String, Path> result = new LinkedHashMap<>();
+        try {
+            Path markerFile = dir.resolve(COMPLETE_FILE);
+            if (!Files.isRegularFile(markerFile)) {
+                return null;
+            }
+            // name, CRC-32 in hex and size, tab separated, one file per line
+            Map<String, String[]> marker = new LinkedHashMap<>();
+            for (String line : Files.readAllLines(markerFile, StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t");
+                if (fields.length == 3) {
+                    marker.put(fields[0], fields);
+                }
+            }
+            for (Resource resource : resources) {
+                Path target = dir.resolve(resource.fileName());
+                String[] recorded = marker.get(resource.fileName());
+                if (recorded == null || !Files.isRegularFile(target)) {
+                    return null;
+                }
+                long crc = Long.parseLong(recorded[1], 16);
+                long size = Long.parseLong(recorded[2]);
+                if (resource.fromJar() && (crc != resource.fingerprint() || size != resource.size())
+                        || Files.size(target) != size || crc(target) != crc) {
+                    return null;
+                }
+                result.put(resource.fileName(), target);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Unreadable or malformed: extract again
+            return null;
+        }
+        return result;
+    }
+
+    private static long crc(Path file) throws IOException {
+        try (CheckedInputStream in = new CheckedInputStream(Files.newInputStream(file), new CRC32())) {
+            in.transferTo(OutputStream.nullOutputStream());
+            return in.getChecksum().getValue();
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Finds a bundled library and fingerprints it without reading it.
+     *
+     * @return The resource, or null if it is not bundled
+     */
+    private static Resource locate(String fileName) throws IOException {
+        URL url = OpusCodec.class.getResource("/" + fileName);
+        if (url == null) {
+            return null;
+        }
+        URLConnection connection = url.openConnection();
+        if (connection instanceof JarURLConnection jar) {
+            JarEntry entry = jar.getJarEntry();
+            return new Resource(fileName, url, entry.getSize(), entry.getCrc(),
+                    entry.getSize() >= 0 && entry.getCrc() >= 0);
+        }
+        return new Resource(fileName, url, connection.getContentLengthLong(), connection.getLastModified(), false);
+    }
+
+    private static Extracted extractOne(Path dir, Resource resource) {
+        try (CheckedInputStream is = new CheckedInputStream(resource.url().openStream(), new CRC32())) {
+            Path target = dir.resolve(resource.fileName());
+            // Write beside the target and move into place, so a reader never
+            // sees a partially written library
+            Path temp = Files.createTempFile(dir, resource.fileName(), ".tmp");
+            try {
+                long written = Files.copy(is, temp, StandardCopyOption.REPLACE_EXISTING);
+                if (resource.size() >= 0 && written != resource.size()) {
+                    throw new IOException("Expected " + resource.size() + " bytes, read " + written);
+                }
+                long crc = is.getChecksum().getValue();
+                if (resource.fromJar() && crc != resource.fingerprint()) {
+                    throw new IOException("CRC-32 " + Long.toHexString(crc) + " does not match the jar's "
+                            + Long.toHexString(resource.fingerprint()));
+                }
+                move(temp, target);
+                return new Extracted(target, crc, written);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to extract " + resource.fileName() + " to " + dir, e);
+        }
+    }
+
+    private static void writeAtomically(Path dir, String fileName, byte[] content) throws IOException {
+        Path temp = Files.createTempFile(dir, fileName, ".tmp");
+        try {
+            Files.write(temp, content);
+            move(temp, dir.resolve(fileName));
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Records the last use of a directory, for pruning
+    private static void touch(Path marker) {
+        try {
+            Files.setLastModifiedTime(marker, FileTime.from(Instant.now()));
+        } catch (IOException e) {
+            // A read-only cache is still usable
+        }
+    }
+
+    /**
+     * Deletes sibling directories whose marker (or, if unfinished, the
+     * directory itself) has not been touched for {@value #STALE_DAYS} days.
+     * Best effort: a directory being extracted into, or a library still
+     * loaded by another process, is left alone.
+     */
+    private static void pruneStale(Path current) {
+        Instant cutoff = Instant.now().minus(Duration.ofDays(STALE_DAYS));
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(current.getParent(), Files::isDirectory)) {
+            for (Path dir : dirs) {
+                if (dir.equals(current)) {
+                    continue;
+                }
+                Path marker = dir.resolve(COMPLETE_FILE);
+                Path used = Files.isRegularFile(marker) ? marker : dir;
+                if (Files.getLastModifiedTime(used).toInstant().isBefore(cutoff)) {
+                    deleteUnlocked(dir);
+                }
+            }
+        } catch (IOException e) {
+            // Pruning never fails a start
+        }
+    }
+
+    private static void deleteUnlocked(Path dir) {
+        try (FileChannel lockChannel = FileChannel.open(dir.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+                FileLock lock = lockChannel.tryLock()) {
+            if (lock == null) {
+                return;
+            }
+            // The marker goes first, so a half-deleted directory is never
+            // taken as complete
+            Files.deleteIfExists(dir.resolve(COMPLETE_FILE));
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path file : files) {
+                    if (!file.getFileName().toString().equals(LOCK_FILE)) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(dir.resolve(LOCK_FILE));
+            Files.deleteIfExists(dir);
+        } catch (IOException e) {
+            // Still in use; retried after the next extraction
+        }
+    }
+
+    private static Path cacheRoot() throws IOException {
+        String configured = System.getProperty("jopus.natives.cacheDir");
+        if (configured != null && !configured.isBlank()) {
+            return Paths.get(configured);
+        }
+        String xdg = System.getenv("XDG_CACHE_HOME");
+        if (xdg != null && !xdg.isBlank()) {
+            return Paths.get(xdg);
+        }
+        if (System.getProperty("os.name").toLowerCase().contains("win")) {
+            String localAppData = System.getenv("LOCALAPPDATA");
+            if (localAppData != null && !localAppData.isBlank()) {
+                return Paths.get(localAppData);
+            }
+        }
+        String home = System.getProperty("user.home");
+        if (home != null && !home.isBlank() && Files.isWritable(Paths.get(home))) {
+            return Paths.get(home, ".cache");
+        }
+        return privateTempRoot();
+    }
+
+    /**
+     * A per-user directory under the shared temporary directory. Anyone can
+     * create paths there, so it is used only if it is ours and owner-only.
+     */
+    private static Path privateTempRoot() throws IOException {
+        String user = System.getProperty("user.name", "user").replaceAll("[^A-Za-z0-9._-]", "_");
+        Path root = Paths.get(System.getProperty("java.io.tmpdir"), "jopus-" + user);
+        PosixFileAttributeView posix = Files.getFileAttributeView(root.getParent(), PosixFileAttributeView.class);
+        if (posix == null) {
+            // Not POSIX, e.g. Windows, where the temporary directory is
+            // already per-user
+            Files.createDirectories(root);
+            return root;
+        }
+        Set<PosixFilePermission> ownerOnly = PosixFilePermissions.fromString("rwx------");
+        try {
+            Files.createDirectory(root, PosixFilePermissions.asFileAttribute(ownerOnly));
+        } catch (FileAlreadyExistsException e) {
+            // Checked below
+        }
+        if (Files.isSymbolicLink(root)
+                || !Files.getOwner(root).getName().equals(System.getProperty("user.name"))
+                || !Files.getPosixFilePermissions(root).equals(ownerOnly)) {
+            throw new IOException("Refusing native library cache " + root
+                    + ": not a directory owned by and private to " + System.getProperty("user.name")
+                    + "; set jopus.natives.cacheDir");
+        }
+        return root;
+    }
+
+    private static String version() {
+        String version = OpusCodec.class.getPackage().getImplementationVersion();
+        return version == null ? "dev" : version;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package io.github.kinsleykajiva.opus;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+
+import static io.github.kinsleykajiva.opus.opus_h.*;
+
+/**
+ * Incremental PCM to Ogg Opus encoder.
+ * <p>
+ * PCM can be supplied in pieces of any length; complete 20 ms frames are
+ * encoded as soon as they are available and Ogg pages are written as they
+ * fill, so memory use does not depend on the length of the audio. The native
+ * buffers are allocated once per stream. Not thread-safe.
+ */
+public class OggOpusStreamEncoder implements AutoCloseable {
+
+    private static final int MAX_PACKET_BYTES = 4000;
+    private static final int FRAME_SIZE_48K = 960;
+
+    private final EncoderProfile profile;
+    private final OggOpusWriter writer;
+    private final Arena arena = Arena.ofConfined();
+    private final MemorySegment encoder;
+    private final MemorySegment pcmNative;
+    private final MemorySegment outNative;
+    private final byte[] packet = new byte[MAX_PACKET_BYTES];
+    // Byte input is converted through this, one frame at a time
+    private final short[] scratch;
+    private final int frameSamples;
+    private final int ratio;
+    private final int lookahead;
+
+    // Samples (all channels) buffered towards the next frame
+    private int buffered;
+    // Low byte of a sample split across two byte writes, or -1
+    private int pendingByte = -1;
+    private long samplesPerChannel;
+    private long granule;
+    private boolean finished;
+
+    /**
+     * Writes the Ogg Opus headers immediately.
+     *
+     * @param profile Encoder settings; the frame size is always 20 ms
+     * @param out     Destination; closed by {@link #close()}
+     */
+    public OggOpusStreamEncoder(EncoderProfile profile, OutputStream out) throws IOException {
+        OpusCodec.loadNativeLibraries();
+        this.profile = profile;
+        this.frameSamples = profile.frameSize() * profile.channels();
+        this.ratio = 48000 / profile.sampleRate();
+        this.scratch = new short[frameSamples];
+        this.encoder = OpusCodec.createEncoder(profile);
+        try {
+            this.lookahead = OpusCodec.getEncoderCtl(encoder, OPUS_GET_LOOKAHEAD_REQUEST());
+            this.pcmNative = arena.allocate(C_SHORT, frameSamples);
+            this.outNative = arena.allocate(C_CHAR, MAX_PACKET_BYTES);
+            this.writer = new OggOpusWriter(out, profile.channels(), profile.sampleRate(), lookahead * ratio,
+                    (int) System.nanoTime());
+        } catch (IOException | RuntimeException e) {
+            OpusCodec.destroyEncoder(encoder);
+            arena.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends interleaved 16-bit samples.
+     */
+    public void write(short[] pcm, int offset, int length) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("Stream already finished");
+        }
+        samplesPerChannel += length / profile.channels();
+        while (length > 0) {
+            int n = Math.min(length, frameSamples - buffered);
+            MemorySegment.copy(pcm, offset, pcmNative, C_SHORT, (long) buffered * C_SHORT.byteSize(), n);
+            buffered += n;
+            offset += n;
+            length -= n;
+            if (buffered == frameSamples) {
+                encodeFrame();
+            }
+        }
+    }
+
+    /**
+     * Appends little-endian 16-bit interleaved samples. The length need not
+     * be even: a trailing odd byte is kept and joined with the first byte of
+     * the next call.
+     *
+     * @param length Number of bytes
+     */
+    public void write(byte[] pcm, int offset, int length) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("Stream already finished");
+        }
+        if (pendingByte >= 0 && length > 0) {
+            scratch[0] = (short) (pendingByte | ((pcm[offset] & 0xFF) << 8));
+            pendingByte = -1;
+            write(scratch, 0, 1);
+            offset++;
+            length--;
+        }
+        while (length >= 2) {
+            int n = Math.min(length / 2, scratch.length);
+            for (int i = 0; i < n; i++) {
+                int b = offset + i * 2;
+                scratch[i] = (short) ((pcm[b] & 0xFF) | ((pcm[b + 1] & 0xFF) << 8));
+            }
+            write(scratch, 0, n);
+            offset += n * 2;
+            length -= n * 2;
+        }
+        if (length == 1) {
+            pendingByte = pcm[offset] & 0xFF;
+        }
+    }
+
+    private void encodeFrame() throws IOException {
+        int len = opus_encode(encoder, pcmNative, profile.frameSize(), outNative, MAX_PACKET_BYTES);
+        if (len < 0) {
+            throw new RuntimeException("Opus encode error: " + len);
+        }
+        MemorySegment.copy(outNative, C_CHAR, 0, packet, 0, len);
+        granule += FRAME_SIZE_48K;
+        writer.writePacket(packet, len, granule);
+        buffered = 0;
+    }
+
+    /**
+     * Pads the last frame, drains the encoder lookahead and writes the final
+     * page with the exact end granule. The output stream stays open. A byte
+     * still waiting for its pair is not half a sample and is discarded.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        // Frames needed after the last full one so every input sample leaves
+        // the lookahead
+        long pending = buffered / profile.channels() + lookahead;
+        while (pending > 0) {
+            pcmNative.asSlice((long) buffered * C_SHORT.byteSize()).fill((byte) 0);
+            encodeFrame();
+            pending -= profile.frameSize();
+        }
+        writer.finish(lookahead * ratio + samplesPerChannel * ratio);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+            writer.close();
+        } finally {
+            OpusCodec.destroyEncoder(encoder);
+            arena.close();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package io.github.kinsleykajiva.opus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes already-encoded Opus packets as an Ogg Opus stream (RFC 7845).
+ * <p>
+ * Unlike libopusenc, which owns its encoder, this muxer accepts packets from
+ * any source, so packets produced in parallel or by pooled encoders can be
+ * stitched into one file. Pages are written to the target stream as soon as
+ * they fill, so memory use is bounded by one page.
+ * <p>
+ * Granule positions are counted at 48 kHz from the start of the stream and
+ * include the pre-skip, as the specification requires. The newest packet is
+ * always held back until the next one arrives, so the last packet of the
+ * stream lands on the end-of-stream page, the only page whose granule may
+ * trim encoder padding.
+ */
+public class OggOpusWriter implements AutoCloseable {
+
+    private static final String VENDOR = "jopus";
+    // Flush a page once its body reaches this size; keeps pages near the
+    // 4-8 KB that players seek efficiently with
+    private static final int TARGET_PAGE_BYTES = 4096;
+    private static final int MAX_SEGMENTS = 255;
+
+    private static final int FLAG_BOS = 0x02;
+    private static final int FLAG_EOS = 0x04;
+
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        // Ogg uses the non-reflected CRC-32 with polynomial 0x04C11DB7
+        for (int i = 0; i < 256; i++) {
+            int r = i << 24;
+            for (int j = 0; j < 8; j++) {
+                r = (r & 0x80000000) != 0 ? (r << 1) ^ 0x04C11DB7 : r << 1;
+            }
+            CRC_TABLE[i] = r;
+        }
+    }
+
+    private final OutputStream out;
+    private final int serial;
+    private int pageSequence;
+
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream(TARGET_PAGE_BYTES + 2048);
+    private final byte[] segments = new byte[MAX_SEGMENTS];
+    private int segmentCount;
+    private long pageGranule;
+    // Granule of the last page written, which every later page must reach
+    private long flushedGranule;
+    private long lastGranule;
+    private boolean finished;
+
+    // The newest packet, not yet placed on a page
+    private byte[] held = new byte[1500];
+    private int heldLength = -1;
+    private long heldGranule;
+
+    /**
+     * Writes the OpusHead and OpusTags header pages.
+     *
+     * @param out             Destination; closed by {@link #close()}
+     * @param channels        Channel count (1 or 2)
+     * @param inputSampleRate Original sample rate, informational only
+     * @param preSkip         Samples at 48 kHz to discard at the start of
+     *                        decoding, normally the encoder lookahead
+     * @param serial          Ogg logical stream serial number
+     */
+    public OggOpusWriter(OutputStream out, int channels, int inputSampleRate, int preSkip, int serial)
+            throws IOException {
+        this.out = out;
+        this.serial = serial;
+
+        byte[] head = new byte[19];
+        System.arraycopy("OpusHead".getBytes(StandardCharsets.US_ASCII), 0, head, 0, 8);
+        head[8] = 1; // version
+        head[9] = (byte) channels;
+        putLE16(head, 10, preSkip);
+        putLE32(head, 12, inputSampleRate);
+        putLE16(head, 16, 0); // output gain
+        head[18] = 0; // channel mapping family: mono/stereo
+        writeHeaderPage(head, FLAG_BOS);
+
+        byte[] vendor = VENDOR.getBytes(StandardCharsets.UTF_8);
+        byte[] tags = new byte[8 + 4 + vendor.length + 4];
+        System.arraycopy("OpusTags".getBytes(StandardCharsets.US_ASCII), 0, tags, 0, 8);
+        putLE32(tags, 8, vendor.length);
+        System.arraycopy(vendor, 0, tags, 12, vendor.length);
+        putLE32(tags, 12 + vendor.length, 0); // no user comments
+        writeHeaderPage(tags, 0);
+    }
+
+    /**
+     * Appends one audio packet.
+     *
+     * @param packet   Packet buffer
+     * @param length   Packet length in bytes; 0 is a valid DTX packet
+     * @param granule  48 kHz granule position at the end of this packet
+     */
+    public void writePacket(byte[] packet, int length, long granule) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("Ogg stream already finished");
+        }
+        if (heldLength >= 0) {
+            appendHeld();
+            if (body.size() >= TARGET_PAGE_BYTES) {
+                flushPage(0);
+            }
+        }
+        if (held.length < length) {
+            held = new byte[Math.max(length, held.length * 2)];
+        }
+        System.arraycopy(packet, 0, held, 0, length);
+        heldLength = length;
+        heldGranule = granule;
+        lastGranule = granule;
+    }
+
+    private void appendHeld() throws IOException {
+        if (segmentCount + heldLength / 255 + 1 > MAX_SEGMENTS) {
+            flushPage(0);
+        }
+        addLacing(heldLength);
+        body.write(held, 0, heldLength);
+        pageGranule = heldGranule;
+        heldLength = -1;
+    }
+
+    /**
+     * Writes the final page, holding the last packet, with the
+     * end-of-stream flag.
+     *
+     * @param finalGranule Granule of the last real sample (pre-skip plus
+     *                     input length at 48 kHz); lower than the last packet
+     *                     granule to trim encoder padding at the end. It is
+     *                     never taken below the previous page's granule.
+     */
+    public void finish(long finalGranule) throws IOException {
+        if (finished) {
+            return;
+        }
+        if (heldLength >= 0) {
+            appendHeld();
+        }
+        pageGranule = Math.max(flushedGranule, Math.min(finalGranule, lastGranule));
+        flushPage(FLAG_EOS);
+        finished = true;
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish(lastGranule);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeHeaderPage(byte[] packet, int flags) throws IOException {
+        // Header packets always sit alone on their pages, with granule 0
+        addLacing(packet.length);
+        body.write(packet, 0, packet.length);
+        pageGranule = 0;
+        flushPage(flags);
+    }
+
+    // A packet is laced as 255-byte segments ended by one shorter segment
+    private void addLacing(int length) {
+        for (int remaining = length; ; remaining -= 255) {
+            segments[segmentCount++] = (byte) Math.min(remaining, 255);
+            if (remaining < 255) {
+                break;
+            }
+        }
+    }
+
+    private void flushPage(int flags) throws IOException {
+        if (segmentCount == 0 && (flags & FLAG_EOS) == 0) {
+            return;
+        }
+        byte[] header = new byte[27 + segmentCount];
+        header[0] = 'O';
+        header[1] = 'g';
+        header[2] = 'g';
+        header[3] = 'S';
+        header[4] = 0; // stream structure version
+        header[5] = (byte) flags;
+        putLE64(header, 6, pageGranule);
+        putLE32(header, 14, serial);
+        putLE32(header, 18, pageSequence++);
+        // CRC at 22..25 is computed with the field zeroed
+        header[26] = (byte) segmentCount;
+        System.arraycopy(segments, 0, header, 27, segmentCount);
+
+        byte[] payload = body.toByteArray();
+        int crc = crc(0, header, header.length);
+        crc = crc(crc, payload, payload.length);
+        putLE32(header, 22, crc);
+
+        out.write(header);
+        out.write(payload);
+        body.reset();
+        segmentCount = 0;
+        flushedGranule = pageGranule;
+    }
+
+    private static int crc(int crc, byte[] data, int length) {
+        for (int i = 0; i < length; i++) {
+            crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) ^ data[i]) & 0xFF];
+        }
+        return crc;
+    }
+
+    private static void putLE16(byte[] b, int offset, int v) {
+        b[offset] = (byte) v;
+        b[offset + 1] = (byte) (v >>> 8);
+    }
+
+    private static void putLE32(byte[] b, int offset, int v) {
+        putLE16(b, offset, v);
+        putLE16(b, offset + 2, v >>> 16);
+    }
+
+    private static void putLE64(byte[] b, int offset, long v) {
+        putLE32(b, offset, (int) v);
+        putLE32(b, offset + 4, (int) (v >>> 32));
+    }
+}
@@ -1,13 +1,37 @@
 package io.github.kinsleykajiva.opus;
 
 import io.github.kinsleykajiva.G711Utils;
-
+import io.github.kinsleykajiva.jfr.DecodeEvent;
+import io.github.kinsleykajiva.jfr.EncodeEvent;
+import io.github.kinsleykajiva.jfr.NativeLibraryLoadEvent;
+import io.github.kinsleykajiva.jfr.PoolBorrowEvent;
+import io.github.kinsleykajiva.metrics.CodecMetrics;
+import io.github.kinsleykajiva.metrics.CodecPoolMXBean;
+import io.github.kinsleykajiva.metrics.Jmx;
+import io.github.kinsleykajiva.metrics.LatencyHistogram;
+
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.lang.foreign.*;
 import java.lang.invoke.MethodHandle;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Base64;
-import java.nio.ByteOrder;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
 
 import static io.github.kinsleykajiva.opus.opus_h.*;
 
@@ -23,14 +47,29 @@ public class OpusCodec {
     private static final short[] ALAW_TO_PCM = new short[256];
     private static final short[] ULAW_TO_PCM = new short[256];
 
+    // Declared ahead of the static initializer below, which already uses them
+    private static volatile boolean isLibsLoaded = false;
+    private static volatile boolean isOggDecodeLibsLoaded = false;
+
+    // Extracted locations of the bundled libraries, filled on first load
+    private static Map<String, Path> extractedLibs = Map.of();
+
+    // Native size of every live codec by address, for memory accounting
+    private static final Map<Long, Integer> NATIVE_SIZES = new ConcurrentHashMap<>();
+
+    // Whether libopus has DRED; null until probed
+    private static volatile Boolean dredSupported;
+    private static final AtomicBoolean DRED_WARNED =
+            new AtomicBoolean();
+    private static final AtomicBoolean DECODER_TIER_WARNED =
+            new AtomicBoolean();
+
     static {
         loadNativeLibraries();
         generateALawTable();
         generateULawTable();
     }
 
-    private static volatile boolean isLibsLoaded = false;
-
     public static void loadNativeLibraries() {
         if (isLibsLoaded)
             return;
@@ -38,71 +77,120 @@ public class OpusCodec {
             if (isLibsLoaded)
                 return;
 
-            String osName = System.getProperty("os.name").toLowerCase();
-            boolean isWindows = osName.contains("win");
-            boolean isLinux = osName.contains("linux") || osName.contains("nix") || osName.contains("nux");
-            String extension = isWindows ? ".dll" : ".so";
+            // Extract everything once, in parallel; the Ogg decode libraries are
+            // only System.load()ed when first needed
+            List<String> bundled = new ArrayList<>();
+            for (String libName : eagerLibraries()) {
+                bundled.add(fullLibraryName(libName));
+            }
+            for (String libName : oggDecodeLibraries()) {
+                bundled.add(fullLibraryName(libName));
+            }
+            NativeLibraryLoadEvent event = new NativeLibraryLoadEvent();
+            event.begin();
+            event.library = String.join(",", bundled);
+            event.source = "extract";
+            try {
+                extractedLibs = NativeLibraryCache.extract(bundled);
+                event.success = true;
+            } catch (Exception e) {
+                System.err.println("Warning: Could not extract bundled natives: " + e.getMessage());
+            } finally {
+                event.commit();
+            }
 
-            // Define library list based on OS
-            String[] libs = isWindows
-                    ? new String[] { "ogg", "opus", "opusenc", "opusfile" }
-                    : new String[] { "ogg", "opus", "opusenc", "opusfile", "opusurl" };
+            for (String libName : eagerLibraries()) {
+                loadLibrary(libName);
+            }
+            isLibsLoaded = true;
+        }
+    }
 
-            File tempDir = new File(System.getProperty("java.io.tmpdir"), "jopus-natives-" + System.nanoTime());
-            if (!tempDir.exists() && !tempDir.mkdirs()) {
-                System.err
-                        .println("Warning: Could not create temp directory for natives: " + tempDir.getAbsolutePath());
+    /**
+     * Loads libopusfile (and libopusurl where bundled). Only the Ogg decode
+     * paths need them, so they are loaded on first use rather than at startup.
+     */
+    public static void loadOggDecodeLibraries() {
+        loadNativeLibraries();
+        if (isOggDecodeLibsLoaded)
+            return;
+        synchronized (OpusCodec.class) {
+            if (isOggDecodeLibsLoaded)
+                return;
+            for (String libName : oggDecodeLibraries()) {
+                loadLibrary(libName);
             }
-            tempDir.deleteOnExit();
+            isOggDecodeLibsLoaded = true;
+        }
+    }
 
-            for (String libName : libs) {
-                String fullLibName = (isWindows ? "" : "lib") + libName + extension;
-                try {
-                    // 1. Try loading from local file system (working directory)
-                    File localFile = new File(fullLibName);
-                    if (localFile.exists()) {
-                        // System.out.println("Loading native library from local path: " +
-                        // localFile.getAbsolutePath());
-                        System.load(localFile.getAbsolutePath());
-                        continue;
-                    }
+    private static boolean isWindows() {
+        return System.getProperty("os.name").toLowerCase().contains("win");
+    }
 
-                    // 2. Try loading from classpath (resources)
-                    try (java.io.InputStream is = OpusCodec.class.getResourceAsStream("/" + fullLibName)) {
-                        if (is != null) {
-                            File tempFile = new File(tempDir, fullLibName);
-                            java.nio.file.Files.copy(is, tempFile.toPath(),
-                                    java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-                            // System.out.println("Loading native library from resources: " +
-                            // tempFile.getAbsolutePath());
-                            System.load(tempFile.getAbsolutePath());
-                            tempFile.deleteOnExit();
-                            continue;
-                        }
-                    }
+    private static String[] eagerLibraries() {
+        return new String[] { "ogg", "opus", "opusenc" };
+    }
 
-                    // 3. Fallback: Try loading from system library path (LD_LIBRARY_PATH or
-                    // java.library.path)
-                    try {
-                        // System.out.println("Attempting to load library from system path: " +
-                        // libName);
-                        System.loadLibrary(libName);
-                        continue;
-                    } catch (UnsatisfiedLinkError e) {
-                        if (libName.equals("opus") || libName.equals("opusenc")) {
-                            throw new RuntimeException("Critical failure: Could not find or load " + fullLibName
-                                    + " from local path, resources, or system path.", e);
-                        }
-                        System.err.println("Warning: Could not load " + fullLibName + " (Optional or dependency)");
-                    }
-                } catch (Exception e) {
-                    System.err.println("Error processing library " + libName + ": " + e.getMessage());
-                    if (libName.equals("opus") || libName.equals("opusenc")) {
-                        throw new RuntimeException("Critical failure: Could not load " + fullLibName, e);
-                    }
+    private static String[] oggDecodeLibraries() {
+        return isWindows() ? new String[] { "opusfile" } : new String[] { "opusfile", "opusurl" };
+    }
+
+    private static String fullLibraryName(String libName) {
+        return isWindows() ? libName + ".dll" : "lib" + libName + ".so";
+    }
+
+    private static void loadLibrary(String libName) {
+        String fullLibName = fullLibraryName(libName);
+        NativeLibraryLoadEvent event = new NativeLibraryLoadEvent();
+        event.begin();
+        event.library = fullLibName;
+        try {
+            // 1. Try loading from local file system (working directory)
+            File localFile = new File(fullLibName);
+            if (localFile.exists()) {
+                event.source = "local";
+                event.path = localFile.getAbsolutePath();
+                System.load(event.path);
+                event.success = true;
+                return;
+            }
+
+            // 2. Try the extraction cache populated from classpath resources
+            Path extracted = extractedLibs.get(fullLibName);
+            if (extracted != null) {
+                event.source = "cache";
+                event.path = extracted.toAbsolutePath().toString();
+                System.load(event.path);
+                event.success = true;
+                return;
+            }
+
+            // 3. Fallback: Try loading from system library path (LD_LIBRARY_PATH or
+            // java.library.path)
+            event.source = "system";
+            try {
+                System.loadLibrary(libName);
+                event.success = true;
+            } catch (UnsatisfiedLinkError e) {
+                if (libName.equals("opus") || libName.equals("opusenc")) {
+                    throw new RuntimeException("Critical failure: Could not find or load " + fullLibName
+                            + " from local path, resources, or system path.", e);
                 }
+                System.err.println("Warning: Could not load " + fullLibName + " (Optional or dependency)");
             }
-            isLibsLoaded = true;
+        } catch (RuntimeException e) {
+            if (libName.equals("opus") || libName.equals("opusenc")) {
+                throw e;
+            }
+            System.err.println("Error processing library " + libName + ": " + e.getMessage());
+        } catch (Error e) {
+            if (libName.equals("opus") || libName.equals("opusenc")) {
+                throw new RuntimeException("Critical failure: Could not load " + fullLibName, e);
+            }
+            System.err.println("Error processing library " + libName + ": " + e.getMessage());
+        } finally {
+            event.commit();
         }
     }
 
@@ -198,7 +286,7 @@ public class OpusCodec {
             // but Base64 String output implies a single blob.
             // We will concatenate the raw Opus frames.
 
-            java.io.ByteArrayOutputStream opusOutputStream = new java.io.ByteArrayOutputStream();
+            ByteArrayOutputStream opusOutputStream = new ByteArrayOutputStream();
 
             // Native buffers
             MemorySegment pcmBuffer = arena.allocate(C_SHORT, frameSize);
@@ -280,7 +368,7 @@ public class OpusCodec {
     }
 
     private static String decodeOggToG711(byte[] oggData, boolean isALaw) {
-        loadNativeLibraries();
+        loadOggDecodeLibraries();
         try (Arena arena = Arena.ofConfined()) {
             MemorySegment errorPtr = arena.allocate(C_INT);
             MemorySegment oggPtr = arena.allocateFrom(C_CHAR, oggData);
@@ -291,7 +379,7 @@ public class OpusCodec {
                 throw new RuntimeException("Failed to open Ogg Opus from memory: Error " + errorPtr.get(C_INT, 0));
             }
 
-            java.io.ByteArrayOutputStream pcmStream = new java.io.ByteArrayOutputStream();
+            ByteArrayOutputStream pcmStream = new ByteArrayOutputStream();
             // 8kHz * 2 channels * 10s buffer max per read? Let's use 16000 samples.
             int bufSize = 16000;
             MemorySegment pcmBuf = arena.allocate(C_SHORT, bufSize);
@@ -330,6 +418,7 @@ public class OpusCodec {
             if (decoder.equals(MemorySegment.NULL)) {
                 throw new RuntimeException("Failed to create Opus decoder: Error code " + errorPtr.get(C_INT, 0));
             }
+            trackNative(decoder, false, opus_decoder_get_size(CHANNELS));
             return decoder;
         }
     }
@@ -341,28 +430,257 @@ public class OpusCodec {
      */
     public static void destroyDecoder(MemorySegment decoder) {
         if (decoder != null && !decoder.equals(MemorySegment.NULL)) {
+            untrackNative(decoder, false);
             opus_decoder_destroy(decoder);
         }
     }
 
+    // Variadic CTL invokers are linked on first use, after the natives are
+    // loaded
+    private static class DecoderCtl {
+        static final opus_decoder_ctl INT_ARG = opus_decoder_ctl.makeInvoker(C_INT);
+        static final opus_decoder_ctl NO_ARG = opus_decoder_ctl.makeInvoker();
+    }
+
+    /**
+     * Issues an {@code OPUS_SET_*} request that takes a single int argument.
+     *
+     * @throws RuntimeException if libopus rejects the request
+     */
+    public static void setDecoderCtl(MemorySegment decoder, int request, int value) {
+        int result = DecoderCtl.INT_ARG.apply(decoder, request, value);
+        if (result != OPUS_OK()) {
+            throw new RuntimeException("Opus decoder ctl " + request + " failed: Error code " + result);
+        }
+    }
+
+    /**
+     * Sets a decoder's quality tier. The tier survives
+     * {@link #resetDecoder resets}; pools put their decoders back to
+     * {@link DecoderTier#STANDARD} when they are returned.
+     *
+     * @return The tier now in effect: {@link DecoderTier#STANDARD} if libopus
+     *         predates decoder complexity (before 1.5)
+     */
+    public static DecoderTier setDecoderTier(MemorySegment decoder, DecoderTier tier) {
+        int result = DecoderCtl.INT_ARG.apply(decoder, OPUS_SET_COMPLEXITY_REQUEST(), tier.complexity());
+        if (result == OPUS_UNIMPLEMENTED()) {
+            if (tier != DecoderTier.STANDARD && DECODER_TIER_WARNED.compareAndSet(false, true)) {
+                System.err.println("Warning: libopus has no decoder complexity; decoding at the standard tier");
+            }
+            return DecoderTier.STANDARD;
+        }
+        if (result != OPUS_OK()) {
+            throw new RuntimeException("Opus decoder ctl " + OPUS_SET_COMPLEXITY_REQUEST()
+                    + " failed: Error code " + result);
+        }
+        return tier;
+    }
+
+    /**
+     * Resets a decoder to the freshly initialised state.
+     */
+    public static void resetDecoder(MemorySegment decoder) {
+        int result = DecoderCtl.NO_ARG.apply(decoder, OPUS_RESET_STATE());
+        if (result != OPUS_OK()) {
+            throw new RuntimeException("Opus decoder reset failed: Error code " + result);
+        }
+    }
+
+    private static void trackNative(MemorySegment codec, boolean encoder, int bytes) {
+        NATIVE_SIZES.put(codec.address(), bytes);
+        CodecMetrics.global().nativeAllocated(encoder, bytes);
+    }
+
+    private static void untrackNative(MemorySegment codec, boolean encoder) {
+        Integer bytes = NATIVE_SIZES.remove(codec.address());
+        if (bytes != null) {
+            CodecMetrics.global().nativeFreed(encoder, bytes);
+        }
+    }
+
     /**
      * Creates a new native Opus encoder.
      * 
      * @return MemorySegment pointer to the encoder
      */
     public static MemorySegment createEncoder() {
+        return createEncoder(EncoderProfile.DEFAULT);
+    }
+
+    /**
+     * Creates a new native Opus encoder configured from a profile.
+     *
+     * @param profile The encoder settings to apply
+     * @return MemorySegment pointer to the encoder
+     */
+    public static MemorySegment createEncoder(EncoderProfile profile) {
         try (Arena arena = Arena.ofConfined()) {
             MemorySegment errorPtr = arena.allocate(C_INT);
-            // OPUS_APPLICATION_VOIP = 2048
-            MemorySegment encoder = opus_encoder_create(SAMPLE_RATE, CHANNELS, 2048, errorPtr);
+            MemorySegment encoder = opus_encoder_create(profile.sampleRate(), profile.channels(),
+                    profile.application(), errorPtr);
 
             if (encoder.equals(MemorySegment.NULL)) {
                 throw new RuntimeException("Failed to create Opus encoder: Error code " + errorPtr.get(C_INT, 0));
             }
+            try {
+                applyProfile(encoder, profile);
+            } catch (RuntimeException e) {
+                opus_encoder_destroy(encoder);
+                throw e;
+            }
+            trackNative(encoder, true, opus_encoder_get_size(profile.channels()));
             return encoder;
         }
     }
 
+    /**
+     * Applies the non-default settings of a profile to an existing encoder.
+     */
+    public static void applyProfile(MemorySegment encoder, EncoderProfile profile) {
+        if (profile.bitrate() != EncoderProfile.LIBRARY_DEFAULT) {
+            setEncoderCtl(encoder, OPUS_SET_BITRATE_REQUEST(), profile.bitrate());
+        }
+        if (profile.complexity() != EncoderProfile.LIBRARY_DEFAULT) {
+            setEncoderCtl(encoder, OPUS_SET_COMPLEXITY_REQUEST(), profile.complexity());
+        }
+        if (profile.dtx()) {
+            setEncoderCtl(encoder, OPUS_SET_DTX_REQUEST(), 1);
+        }
+        if (profile.expectedLossPercent() > 0) {
+            setEncoderCtl(encoder, OPUS_SET_INBAND_FEC_REQUEST(), 1);
+            setEncoderCtl(encoder, OPUS_SET_PACKET_LOSS_PERC_REQUEST(), profile.expectedLossPercent());
+        }
+        if (profile.dredDurationMs() > 0) {
+            // The CTL counts 10 ms frames
+            int result = EncoderCtl.INT_ARG.apply(encoder, OPUS_SET_DRED_DURATION_REQUEST(),
+                    (profile.dredDurationMs() + 9) / 10);
+            if (result == OPUS_UNIMPLEMENTED()) {
+                // libopus built without DRED: encode without it
+                if (DRED_WARNED.compareAndSet(false, true)) {
+                    System.err.println("Warning: libopus was built without DRED; DRED profiles encode without it");
+                }
+            } else if (result != OPUS_OK()) {
+                throw new RuntimeException("Opus encoder ctl " + OPUS_SET_DRED_DURATION_REQUEST()
+                        + " failed: Error code " + result);
+            }
+        }
+    }
+
+    /**
+     * Retunes the bitrate and loss protection of a running encoder, for
+     * example from receiver feedback.
+     *
+     * @param bitrate           Target bitrate in bits/s, or
+     *                          {@link EncoderProfile#LIBRARY_DEFAULT} to let
+     *                          libopus choose
+     * @param packetLossPercent Loss the encoder should plan for, 0-100
+     */
+    public static void applyRateSettings(MemorySegment encoder, int bitrate, int packetLossPercent,
+            boolean inbandFec) {
+        setEncoderCtl(encoder, OPUS_SET_BITRATE_REQUEST(),
+                bitrate == EncoderProfile.LIBRARY_DEFAULT ? OPUS_AUTO() : bitrate);
+        setEncoderCtl(encoder, OPUS_SET_INBAND_FEC_REQUEST(), inbandFec ? 1 : 0);
+        setEncoderCtl(encoder, OPUS_SET_PACKET_LOSS_PERC_REQUEST(), packetLossPercent);
+    }
+
+    /**
+     * Puts back the bitrate and loss protection a profile gives a new
+     * encoder, undoing {@link #applyRateSettings}.
+     */
+    public static void restoreRateSettings(MemorySegment encoder, EncoderProfile profile) {
+        applyRateSettings(encoder, profile.bitrate(), profile.expectedLossPercent(),
+                profile.expectedLossPercent() > 0);
+    }
+
+    /**
+     * Reports whether the loaded libopus can decode DRED, i.e. it was built
+     * with DRED and exports the DRED API.
+     */
+    public static boolean isDredSupported() {
+        Boolean supported = dredSupported;
+        if (supported == null) {
+            loadNativeLibraries();
+            supported = probeDred();
+            dredSupported = supported;
+        }
+        return supported;
+    }
+
+    private static boolean probeDred() {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment errorPtr = arena.allocate(C_INT);
+            MemorySegment dredDecoder = opus_dred_decoder_create(errorPtr);
+            if (dredDecoder.equals(MemorySegment.NULL)) {
+                // OPUS_UNIMPLEMENTED without DRED
+                return false;
+            }
+            opus_dred_decoder_destroy(dredDecoder);
+            return true;
+        } catch (RuntimeException | LinkageError e) {
+            // Library predates DRED and lacks the symbols
+            return false;
+        }
+    }
+
+    // Variadic CTL invokers are linked on first use, after the natives are
+    // loaded
+    private static class EncoderCtl {
+        static final opus_encoder_ctl INT_ARG = opus_encoder_ctl.makeInvoker(C_INT);
+        static final opus_encoder_ctl NO_ARG = opus_encoder_ctl.makeInvoker();
+        static final opus_encoder_ctl POINTER_ARG = opus_encoder_ctl.makeInvoker(C_POINTER);
+    }
+
+    /**
+     * Issues an {@code OPUS_SET_*} request that takes a single int argument.
+     *
+     * @throws RuntimeException if libopus rejects the request
+     */
+    public static void setEncoderCtl(MemorySegment encoder, int request, int value) {
+        int result = EncoderCtl.INT_ARG.apply(encoder, request, value);
+        if (result != OPUS_OK()) {
+            throw new RuntimeException("Opus encoder ctl " + request + " failed: Error code " + result);
+        }
+    }
+
+    /**
+     * Issues an {@code OPUS_GET_*} request that returns a single int.
+     *
+     * @throws RuntimeException if libopus rejects the request
+     */
+    public static int getEncoderCtl(MemorySegment encoder, int request) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment value = arena.allocate(C_INT);
+            int result = EncoderCtl.POINTER_ARG.apply(encoder, request, value);
+            if (result != OPUS_OK()) {
+                throw new RuntimeException("Opus encoder ctl " + request + " failed: Error code " + result);
+            }
+            return value.get(C_INT, 0);
+        }
+    }
+
+    /**
+     * Resets an encoder to the freshly initialised state, keeping its
+     * settings.
+     */
+    public static void resetEncoder(MemorySegment encoder) {
+        int result = EncoderCtl.NO_ARG.apply(encoder, OPUS_RESET_STATE());
+        if (result != OPUS_OK()) {
+            throw new RuntimeException("Opus encoder reset failed: Error code " + result);
+        }
+    }
+
+    /**
+     * Tells a silence suppressor that the encoder is about to encode speech
+     * it did not see, for example a frame of a longer packet, and resets the
+     * encoder if that ends a run of suppressed frames.
+     */
+    public static void resumeSpeech(MemorySegment encoder, SilenceSuppressor suppressor) {
+        if (suppressor != null && suppressor.endSilence()) {
+            resetEncoder(encoder);
+        }
+    }
+
     /**
      * Destroys a native Opus encoder.
      * 
@@ -370,6 +688,7 @@ public class OpusCodec {
      */
     public static void destroyEncoder(MemorySegment encoder) {
         if (encoder != null && !encoder.equals(MemorySegment.NULL)) {
+            untrackNative(encoder, true);
             opus_encoder_destroy(encoder);
         }
     }
@@ -385,6 +704,24 @@ public class OpusCodec {
      * @return The number of bytes written to outBuffer
      */
     public static int encodeChunk(MemorySegment encoder, byte[] pcmData, byte[] outBuffer) {
+        EncodeEvent event = new EncodeEvent();
+        event.begin();
+        long start = System.nanoTime();
+        int result = encodePcmFrames(encoder, pcmData, outBuffer);
+        CodecMetrics.global().recordEncode(pcmData.length / 2 / 160, result, System.nanoTime() - start);
+        if (event.shouldCommit()) {
+            event.inputFormat = "PCM";
+            event.frameSize = 160;
+            event.frames = pcmData.length / 2 / 160;
+            event.bytesIn = pcmData.length;
+            event.bytesOut = Math.max(result, 0);
+            event.result = result;
+            event.commit();
+        }
+        return result;
+    }
+
+    private static int encodePcmFrames(MemorySegment encoder, byte[] pcmData, byte[] outBuffer) {
         // Assume frame size 20ms @ 8000Hz = 160 samples
         int frameSize = 160;
         int maxDataBytes = outBuffer.length;
@@ -424,26 +761,89 @@ public class OpusCodec {
      * Converts G.711 chunk to Opus using a pooled/cached encoder.
      */
     public static int convertG711Chunk(MemorySegment encoder, byte[] g711Data, boolean isALaw, byte[] outBuffer) {
-        // Decode G.711 to PCM
-        short[] pcmData = new short[g711Data.length];
-        for (int i = 0; i < g711Data.length; i++) {
-            pcmData[i] = isALaw ? decodeALaw(g711Data[i]) : decodeULaw(g711Data[i]);
+        return convertG711Chunk(encoder, g711Data, isALaw, outBuffer, null);
+    }
+
+    /**
+     * Converts G.711 chunk to Opus using a pooled/cached encoder, skipping the
+     * encoder for silent frames.
+     * <p>
+     * Silence detection is fused into the G.711 expansion loop: each 20 ms
+     * frame is checked for idle codes and energy while it is decoded. Silent
+     * frames are replaced by the suppressor's pre-encoded packet (or nothing
+     * when its profile uses DTX) instead of calling {@code opus_encode}.
+     *
+     * @param suppressor Per-stream silence state, or null to encode every frame
+     */
+    public static int convertG711Chunk(MemorySegment encoder, byte[] g711Data, boolean isALaw, byte[] outBuffer,
+            SilenceSuppressor suppressor) {
+        EncodeEvent event = new EncodeEvent();
+        event.begin();
+        long suppressedBefore = suppressor == null ? 0 : suppressor.suppressedFrames();
+        long start = System.nanoTime();
+        int result = encodeG711Frames(encoder, g711Data, isALaw, outBuffer, suppressor);
+        CodecMetrics.global().recordEncode(g711Data.length / 160, result, System.nanoTime() - start);
+        if (event.shouldCommit()) {
+            event.inputFormat = isALaw ? "ALAW" : "ULAW";
+            event.profile = suppressor == null ? null : suppressor.profile().toString();
+            event.frameSize = 160;
+            event.frames = g711Data.length / 160;
+            event.framesSuppressed = suppressor == null ? 0 : (int) (suppressor.suppressedFrames() - suppressedBefore);
+            event.bytesIn = g711Data.length;
+            event.bytesOut = Math.max(result, 0);
+            event.result = result;
+            event.commit();
         }
+        return result;
+    }
 
-        // Use the PCM encoding logic (inline or call helper)
+    private static int encodeG711Frames(MemorySegment encoder, byte[] g711Data, boolean isALaw, byte[] outBuffer,
+            SilenceSuppressor suppressor) {
         // Assume frame size 20ms @ 8000Hz = 160 samples
         int frameSize = 160;
         int maxDataBytes = outBuffer.length;
+        short[] table = isALaw ? ALAW_TO_PCM : ULAW_TO_PCM;
+        // A-law and u-law each have a positive and a negative zero code
+        byte idlePositive = isALaw ? (byte) 0xD5 : (byte) 0xFF;
+        byte idleNegative = isALaw ? (byte) 0x55 : (byte) 0x7F;
 
         try (Arena arena = Arena.ofConfined()) {
             MemorySegment pcmNative = arena.allocate(C_SHORT, frameSize);
             MemorySegment outNative = arena.allocate(C_CHAR, maxDataBytes);
+            short[] pcmFrame = new short[frameSize];
 
             int offset = 0;
             int totalEncoded = 0;
 
-            while (offset + frameSize <= pcmData.length) {
-                MemorySegment.copy(pcmData, offset, pcmNative, C_SHORT, 0, frameSize);
+            while (offset + frameSize <= g711Data.length) {
+                // Decode G.711 to PCM, classifying the frame on the way
+                long energy = 0;
+                boolean allIdle = true;
+                for (int i = 0; i < frameSize; i++) {
+                    byte b = g711Data[offset + i];
+                    short s = table[b & 0xFF];
+                    pcmFrame[i] = s;
+                    energy += s * s;
+                    allIdle &= (b == idlePositive) | (b == idleNegative);
+                }
+                offset += frameSize;
+
+                if (suppressor != null) {
+                    if (suppressor.isSilent(allIdle, energy, frameSize)) {
+                        int len = suppressor.writeSilence(outBuffer, totalEncoded);
+                        if (len < 0)
+                            return len;
+                        totalEncoded += len;
+                        continue;
+                    }
+                    if (suppressor.endSilence()) {
+                        // The encoder missed the silent stretch; start clean
+                        // rather than predicting from pre-silence history
+                        resetEncoder(encoder);
+                    }
+                }
+
+                MemorySegment.copy(pcmFrame, 0, pcmNative, C_SHORT, 0, frameSize);
 
                 int len = opus_encode(encoder, pcmNative, frameSize, outNative, maxDataBytes);
                 if (len < 0)
@@ -451,7 +851,6 @@ public class OpusCodec {
 
                 MemorySegment.copy(outNative, 0, MemorySegment.ofArray(outBuffer), totalEncoded, len);
                 totalEncoded += len;
-                offset += frameSize;
             }
             return totalEncoded;
         }
@@ -468,6 +867,22 @@ public class OpusCodec {
      * @return The number of bytes written to outBuffer
      */
     public static int decodeChunk(MemorySegment decoder, byte[] opusData, byte[] outBuffer) {
+        DecodeEvent event = new DecodeEvent();
+        event.begin();
+        long start = System.nanoTime();
+        int result = decodePacket(decoder, opusData, outBuffer);
+        CodecMetrics.global().recordDecode(result, System.nanoTime() - start);
+        if (event.shouldCommit()) {
+            event.frameSize = Math.max(result, 0) / 2;
+            event.bytesIn = opusData.length;
+            event.bytesOut = Math.max(result, 0);
+            event.result = result;
+            event.commit();
+        }
+        return result;
+    }
+
+    private static int decodePacket(MemorySegment decoder, byte[] opusData, byte[] outBuffer) {
         int maxFrameSize = 960; // 120ms @ 8kHz
 
         try (Arena arena = Arena.ofConfined()) {
@@ -504,86 +919,656 @@ public class OpusCodec {
         return g711Len;
     }
 
+    // --- Native segment primitives ---
+
+    /**
+     * Encodes one frame from native memory straight into native memory, with
+     * no copies on either side. The output can be the payload slot of an
+     * {@code RtpPacketizer}, so the packet is written where it is sent from.
+     * <p>
+     * Both segments must be native (arena allocations or direct
+     * {@code ByteBuffer}s); heap segments cannot be passed to libopus.
+     *
+     * @param pcm       Interleaved 16-bit samples in native byte order
+     * @param frameSize Samples per channel in the frame
+     * @param out       Receives the packet; its size bounds the packet size
+     * @return The packet length in bytes, or a negative Opus error code
+     */
+    public static int encodeFrame(MemorySegment encoder, MemorySegment pcm, int frameSize, MemorySegment out) {
+        long start = System.nanoTime();
+        int result = opus_encode(encoder, pcm, frameSize, out, (int) Math.min(out.byteSize(), 4000));
+        CodecMetrics.global().recordEncode(1, result, System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Converts one 20 ms G.711 frame from native memory, such as an RTP
+     * payload slice, straight into native output, with the same silence fast
+     * path as {@link #convertG711Chunk(MemorySegment, byte[], boolean, byte[], SilenceSuppressor)}.
+     *
+     * @param g711       160 G.711 bytes
+     * @param pcm        Caller-owned scratch for 160 native samples
+     * @param out        Receives the packet; its size bounds the packet size
+     * @param suppressor Per-stream silence state, or null to encode every frame
+     * @return The packet length in bytes, 0 for a silent frame under DTX, or a
+     *         negative Opus error code
+     */
+    public static int convertG711Frame(MemorySegment encoder, MemorySegment g711, boolean isALaw, MemorySegment pcm,
+            MemorySegment out, SilenceSuppressor suppressor) {
+        int frameSize = 160;
+        if (g711.byteSize() < frameSize) {
+            throw new IllegalArgumentException("G.711 frame must be 160 bytes: " + g711.byteSize());
+        }
+        long start = System.nanoTime();
+        short[] table = isALaw ? ALAW_TO_PCM : ULAW_TO_PCM;
+        byte idlePositive = isALaw ? (byte) 0xD5 : (byte) 0xFF;
+        byte idleNegative = isALaw ? (byte) 0x55 : (byte) 0x7F;
+        long energy = 0;
+        boolean allIdle = true;
+        for (int i = 0; i < frameSize; i++) {
+            byte b = g711.get(C_CHAR, i);
+            short s = table[b & 0xFF];
+            pcm.setAtIndex(C_SHORT, i, s);
+            energy += s * s;
+            allIdle &= (b == idlePositive) | (b == idleNegative);
+        }
+
+        int result;
+        if (suppressor != null && suppressor.isSilent(allIdle, energy, frameSize)) {
+            result = suppressor.writeSilence(out);
+        } else {
+            if (suppressor != null && suppressor.endSilence()) {
+                resetEncoder(encoder);
+            }
+            result = opus_encode(encoder, pcm, frameSize, out, (int) Math.min(out.byteSize(), 4000));
+        }
+        CodecMetrics.global().recordEncode(1, result, System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Decodes one packet from native memory, such as an RTP payload slice
+     * of a received datagram, into a native PCM buffer.
+     *
+     * @param packet       The whole segment is the Opus packet
+     * @param pcm          Receives 16-bit samples in native byte order
+     * @param maxFrameSize Samples per channel {@code pcm} can hold
+     * @return Samples per channel decoded, or a negative Opus error code
+     */
+    public static int decodeFrame(MemorySegment decoder, MemorySegment packet, MemorySegment pcm,
+            int maxFrameSize) {
+        long start = System.nanoTime();
+        int samples = opus_decode(decoder, packet, (int) packet.byteSize(), pcm, maxFrameSize, 0);
+        CodecMetrics.global().recordDecode(samples < 0 ? samples : samples * 2, System.nanoTime() - start);
+        return samples;
+    }
+
     // --- Encoder Pool ---
 
-    public static class OpusEncoderPool {
-        private final java.util.concurrent.BlockingQueue<MemorySegment> pool;
+    /**
+     * Fixed-capacity pool of native Opus encoders, registered as an MBean under
+     * {@code io.github.kinsleykajiva.jopus:type=EncoderPool} until closed. The
+     * registration keeps the pool reachable, so a pool that is no longer used
+     * must be closed to be garbage collected.
+     */
+    public static class OpusEncoderPool implements CodecPoolMXBean {
+        private final BlockingQueue<MemorySegment> pool;
         private final int capacity;
+        // Encoders that currently exist, idle or borrowed
+        private final AtomicInteger created = new AtomicInteger();
+        private final AtomicInteger waiters = new AtomicInteger();
+        private final LongAdder creationFailures = new LongAdder();
+        private final LongAdder borrows = new LongAdder();
+        private final LatencyHistogram borrowWait = new LatencyHistogram();
+        private final ObjectName objectName;
+        // Source of the native codecs when set
+        private final CodecSlab slab;
+        // Handles currently lent out, checked by the idle reaper
+        private final Set<CodecHandle.State> borrowedHandles = ConcurrentHashMap
+                .newKeySet();
+        private ScheduledFuture<?> idleReaper;
+        private volatile EncoderComplexityGovernor complexityGovernor;
+        // Handles lent out under a governor; their encoders get the profile's
+        // complexity back when returned
+        private final Set<CodecHandle.State> governedHandles = ConcurrentHashMap
+                .newKeySet();
+        // Handles whose rate settings were changed; their encoders get the
+        // profile's back when returned
+        private final Set<CodecHandle.State> rateControlledHandles = ConcurrentHashMap
+                .newKeySet();
+        // Complexity the pool's encoders are created with
+        private final int profileComplexity;
 
         public OpusEncoderPool(int capacity) {
+            this(capacity, Jmx.nextPoolName());
+        }
+
+        /**
+         * @param name Name used in the pool's JMX object name
+         */
+        public OpusEncoderPool(int capacity, String name) {
+            this(capacity, name, null);
+        }
+
+        /**
+         * Creates a pool whose encoders live in slab slots instead of separate
+         * native allocations. Slots the slab cannot provide count as creation
+         * failures.
+         *
+         * @param name Name used in the pool's JMX object name
+         * @param slab Encoder slab to allocate from, or null to use
+         *             {@code opus_encoder_create}
+         * @throws IllegalArgumentException If the slab holds decoders or
+         *                                  encoders of a profile other than
+         *                                  {@link EncoderProfile#DEFAULT}
+         */
+        public OpusEncoderPool(int capacity, String name, CodecSlab slab) {
+            if (slab != null && !EncoderProfile.DEFAULT.equals(slab.profile())) {
+                throw new IllegalArgumentException(slab.profile() == null ? "Encoder pool needs an encoder slab"
+                        : "Encoder slab profile differs from the pool's: " + slab.profile());
+            }
+            this.slab = slab;
             this.capacity = capacity;
-            this.pool = new java.util.concurrent.ArrayBlockingQueue<>(capacity);
+            this.pool = new ArrayBlockingQueue<>(capacity);
             initialize();
+            try {
+                this.profileComplexity = getEncoderCtl(pool.peek(), OPUS_GET_COMPLEXITY_REQUEST());
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+            this.objectName = Jmx.register("EncoderPool", name, this);
         }
 
         private void initialize() {
             for (int i = 0; i < capacity; i++) {
-                pool.offer(createEncoder());
+                tryCreate();
+            }
+            if (created.get() == 0) {
+                throw new RuntimeException("Could not create any Opus encoder for the pool");
             }
         }
 
-        public MemorySegment borrowEncoder() {
+        // A slot lost to a failed creation is retried on a later borrow
+        private boolean tryCreate() {
+            if (created.incrementAndGet() > capacity) {
+                created.decrementAndGet();
+                return false;
+            }
             try {
-                // If pool is empty, take() will block, effectively throttling
-                return pool.take();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new RuntimeException("Interrupted while waiting for Opus encoder", e);
+                pool.offer(slab == null ? createEncoder() : slab.allocate());
+                return true;
+            } catch (RuntimeException e) {
+                created.decrementAndGet();
+                creationFailures.increment();
+                System.err.println("Warning: Could not create pooled Opus encoder: " + e.getMessage());
+                return false;
             }
         }
 
+        public MemorySegment borrowEncoder() {
+            PoolBorrowEvent event = new PoolBorrowEvent();
+            event.begin();
+            long start = System.nanoTime();
+            MemorySegment encoder = pool.poll();
+            if (encoder == null && created.get() < capacity) {
+                tryCreate();
+            }
+            if (encoder == null) {
+                waiters.incrementAndGet();
+                try {
+                    // If pool is empty, take() will block, effectively throttling
+                    encoder = pool.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for Opus encoder", e);
+                } finally {
+                    waiters.decrementAndGet();
+                }
+            }
+            borrows.increment();
+            borrowWait.record(System.nanoTime() - start);
+            if (event.shouldCommit()) {
+                event.pool = "encoder";
+                event.capacity = capacity;
+                event.available = pool.size();
+                event.commit();
+            }
+            return encoder;
+        }
+
         public void returnEncoder(MemorySegment encoder) {
             if (encoder != null) {
                 pool.offer(encoder);
             }
         }
 
+        /**
+         * Borrows a encoder wrapped in a {@link EncoderHandle}. Closing the
+         * handle returns the encoder; a handle that is leaked or stays idle past
+         * the {@link #setIdleTimeout idle timeout} is reclaimed automatically.
+         */
+        public EncoderHandle borrowEncoderHandle() {
+            CodecHandle.State state = new CodecHandle.State(borrowEncoder(), "encoder", this::reclaim);
+            borrowedHandles.add(state);
+            EncoderComplexityGovernor governor = complexityGovernor;
+            if (governor != null) {
+                governedHandles.add(state);
+            }
+            return new EncoderHandle(state, governor, profileComplexity, rateControlledHandles::add);
+        }
+
+        /**
+         * Puts handles borrowed from now on under a complexity governor. They
+         * set the governor's complexity on their encoder whenever it has
+         * changed since their last use, and their encoders return to the
+         * pool at the profile's complexity, as decoders return at the standard
+         * tier.
+         *
+         * @param governor The governor, or null to stop governing new handles;
+         *                 handles already lent out stay governed until closed
+         */
+        public void setComplexityGovernor(EncoderComplexityGovernor governor) {
+            this.complexityGovernor = governor;
+        }
+
+        private void reclaim(CodecHandle.State state, boolean aborted) {
+            borrowedHandles.remove(state);
+            boolean governed = governedHandles.remove(state);
+            boolean rateControlled = rateControlledHandles.remove(state);
+            if (aborted || governed || rateControlled) {
+                try {
+                    if (aborted) {
+                        resetEncoder(state.segment);
+                    }
+                    // The next borrower expects the profile's settings, which
+                    // a state reset leaves alone
+                    if (governed) {
+                        setEncoderCtl(state.segment, OPUS_SET_COMPLEXITY_REQUEST(), profileComplexity);
+                    }
+                    if (rateControlled) {
+                        restoreRateSettings(state.segment, EncoderProfile.DEFAULT);
+                    }
+                } catch (RuntimeException e) {
+                    // Unusable: drop it and replace it so the pool keeps its
+                    // size
+                    created.decrementAndGet();
+                    try {
+                        release(state.segment);
+                    } finally {
+                        tryCreate();
+                    }
+                    return;
+                }
+            }
+            returnEncoder(state.segment);
+        }
+
+        /**
+         * Reclaims borrowed handles that have not been used for longer than
+         * the timeout. The session holding such a handle gets an
+         * {@link IllegalStateException} on its next call.
+         *
+         * @param timeout Idle time after which a handle is reclaimed, or null
+         *                or zero to disable
+         */
+        public synchronized void setIdleTimeout(Duration timeout) {
+            if (idleReaper != null) {
+                idleReaper.cancel(false);
+                idleReaper = null;
+            }
+            if (timeout == null || timeout.isZero() || timeout.isNegative()) {
+                return;
+            }
+            long timeoutNanos = timeout.toNanos();
+            long periodMillis = Math.max(100, timeout.toMillis() / 4);
+            idleReaper = CodecHandle.reaper().scheduleAtFixedRate(
+                    () -> CodecHandle.revokeIdle(borrowedHandles, timeoutNanos), periodMillis, periodMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+
+        private void release(MemorySegment encoder) {
+            if (slab != null) {
+                slab.release(encoder);
+            } else {
+                destroyEncoder(encoder);
+            }
+        }
+
         public void close() {
+            setIdleTimeout(null);
+            Jmx.unregister(objectName);
             MemorySegment encoder;
             while ((encoder = pool.poll()) != null) {
-                destroyEncoder(encoder);
+                release(encoder);
+                created.decrementAndGet();
             }
         }
+
+        @Override
+        public int getCapacity() {
+            return capacity;
+        }
+
+        @Override
+        public int getInUse() {
+            return Math.max(0, created.get() - pool.size());
+        }
+
+        @Override
+        public int getAvailable() {
+            return pool.size();
+        }
+
+        @Override
+        public int getWaiters() {
+            return waiters.get();
+        }
+
+        @Override
+        public long getCreationFailures() {
+            return creationFailures.sum();
+        }
+
+        @Override
+        public long getBorrowCount() {
+            return borrows.sum();
+        }
+
+        @Override
+        public long getBorrowWaitP50Micros() {
+            return borrowWait.percentile(50) / 1000;
+        }
+
+        @Override
+        public long getBorrowWaitP99Micros() {
+            return borrowWait.percentile(99) / 1000;
+        }
+
+        @Override
+        public long getBorrowWaitP999Micros() {
+            return borrowWait.percentile(99.9) / 1000;
+        }
+
+        @Override
+        public long getBorrowWaitMaxMicros() {
+            return borrowWait.max() / 1000;
+        }
     }
 
     // --- Decoder Pool ---
 
-    public static class OpusDecoderPool {
-        private final java.util.concurrent.BlockingQueue<MemorySegment> pool;
+    /**
+     * Fixed-capacity pool of native Opus decoders, registered as an MBean under
+     * {@code io.github.kinsleykajiva.jopus:type=DecoderPool} until closed. The
+     * registration keeps the pool reachable, so a pool that is no longer used
+     * must be closed to be garbage collected.
+     */
+    public static class OpusDecoderPool implements CodecPoolMXBean {
+        private final BlockingQueue<MemorySegment> pool;
         private final int capacity;
+        // Decoders that currently exist, idle or borrowed
+        private final AtomicInteger created = new AtomicInteger();
+        private final AtomicInteger waiters = new AtomicInteger();
+        private final LongAdder creationFailures = new LongAdder();
+        private final LongAdder borrows = new LongAdder();
+        private final LatencyHistogram borrowWait = new LatencyHistogram();
+        private final ObjectName objectName;
+        // Source of the native codecs when set
+        private final CodecSlab slab;
+        // Handles currently lent out, checked by the idle reaper
+        private final Set<CodecHandle.State> borrowedHandles = ConcurrentHashMap
+                .newKeySet();
+        private ScheduledFuture<?> idleReaper;
 
         public OpusDecoderPool(int capacity) {
+            this(capacity, Jmx.nextPoolName());
+        }
+
+        /**
+         * @param name Name used in the pool's JMX object name
+         */
+        public OpusDecoderPool(int capacity, String name) {
+            this(capacity, name, null);
+        }
+
+        /**
+         * Creates a pool whose decoders live in slab slots instead of separate
+         * native allocations. Slots the slab cannot provide count as creation
+         * failures.
+         *
+         * @param name Name used in the pool's JMX object name
+         * @param slab Decoder slab to allocate from, or null to use
+         *             {@code opus_decoder_create}
+         * @throws IllegalArgumentException If the slab holds encoders
+         */
+        public OpusDecoderPool(int capacity, String name, CodecSlab slab) {
+            if (slab != null && slab.profile() != null) {
+                throw new IllegalArgumentException("Decoder pool needs a decoder slab");
+            }
+            this.slab = slab;
             this.capacity = capacity;
-            this.pool = new java.util.concurrent.ArrayBlockingQueue<>(capacity);
+            this.pool = new ArrayBlockingQueue<>(capacity);
             initialize();
+            this.objectName = Jmx.register("DecoderPool", name, this);
         }
 
         private void initialize() {
             for (int i = 0; i < capacity; i++) {
-                pool.offer(createDecoder());
+                tryCreate();
+            }
+            if (created.get() == 0) {
+                throw new RuntimeException("Could not create any Opus decoder for the pool");
             }
         }
 
-        public MemorySegment borrowDecoder() {
+        // A slot lost to a failed creation is retried on a later borrow
+        private boolean tryCreate() {
+            if (created.incrementAndGet() > capacity) {
+                created.decrementAndGet();
+                return false;
+            }
             try {
-                return pool.take();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new RuntimeException("Interrupted while waiting for Opus decoder", e);
+                pool.offer(slab == null ? createDecoder() : slab.allocate());
+                return true;
+            } catch (RuntimeException e) {
+                created.decrementAndGet();
+                creationFailures.increment();
+                System.err.println("Warning: Could not create pooled Opus decoder: " + e.getMessage());
+                return false;
+            }
+        }
+
+        public MemorySegment borrowDecoder() {
+            PoolBorrowEvent event = new PoolBorrowEvent();
+            event.begin();
+            long start = System.nanoTime();
+            MemorySegment decoder = pool.poll();
+            if (decoder == null && created.get() < capacity) {
+                tryCreate();
+            }
+            if (decoder == null) {
+                waiters.incrementAndGet();
+                try {
+                    // If pool is empty, take() will block, effectively throttling
+                    decoder = pool.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for Opus decoder", e);
+                } finally {
+                    waiters.decrementAndGet();
+                }
+            }
+            borrows.increment();
+            borrowWait.record(System.nanoTime() - start);
+            if (event.shouldCommit()) {
+                event.pool = "decoder";
+                event.capacity = capacity;
+                event.available = pool.size();
+                event.commit();
             }
+            return decoder;
         }
 
+        /**
+         * Resets the decoder to the standard tier and puts it back. A decoder
+         * whose reset fails is destroyed and replaced, so the pool keeps its
+         * size; the failure is rethrown.
+         */
         public void returnDecoder(MemorySegment decoder) {
-            if (decoder != null) {
-                pool.offer(decoder);
+            if (decoder == null) {
+                return;
+            }
+            boolean reset = false;
+            try {
+                // The next borrower expects the standard tier
+                setDecoderTier(decoder, DecoderTier.STANDARD);
+                reset = true;
+            } finally {
+                if (reset) {
+                    pool.offer(decoder);
+                } else {
+                    created.decrementAndGet();
+                    try {
+                        release(decoder);
+                    } finally {
+                        tryCreate();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Borrows a decoder wrapped in a {@link DecoderHandle}. Closing the
+         * handle returns the decoder; a handle that is leaked or stays idle past
+         * the {@link #setIdleTimeout idle timeout} is reclaimed automatically.
+         */
+        public DecoderHandle borrowDecoderHandle() {
+            CodecHandle.State state = new CodecHandle.State(borrowDecoder(), "decoder", this::reclaim);
+            borrowedHandles.add(state);
+            return new DecoderHandle(state);
+        }
+
+        /**
+         * Borrows a decoder handle set to a quality tier.
+         *
+         * @see DecoderHandle#setTier(DecoderTier)
+         */
+        public DecoderHandle borrowDecoderHandle(DecoderTier tier) {
+            DecoderHandle handle = borrowDecoderHandle();
+            try {
+                handle.setTier(tier);
+            } catch (RuntimeException e) {
+                handle.close();
+                throw e;
+            }
+            return handle;
+        }
+
+        private void reclaim(CodecHandle.State state, boolean aborted) {
+            borrowedHandles.remove(state);
+            if (aborted) {
+                try {
+                    resetDecoder(state.segment);
+                } catch (RuntimeException e) {
+                    // Unusable: drop it and let a later borrow create a new one
+                    release(state.segment);
+                    created.decrementAndGet();
+                    return;
+                }
+            }
+            returnDecoder(state.segment);
+        }
+
+        /**
+         * Reclaims borrowed handles that have not been used for longer than
+         * the timeout. The session holding such a handle gets an
+         * {@link IllegalStateException} on its next call.
+         *
+         * @param timeout Idle time after which a handle is reclaimed, or null
+         *                or zero to disable
+         */
+        public synchronized void setIdleTimeout(Duration timeout) {
+            if (idleReaper != null) {
+                idleReaper.cancel(false);
+                idleReaper = null;
+            }
+            if (timeout == null || timeout.isZero() || timeout.isNegative()) {
+                return;
+            }
+            long timeoutNanos = timeout.toNanos();
+            long periodMillis = Math.max(100, timeout.toMillis() / 4);
+            idleReaper = CodecHandle.reaper().scheduleAtFixedRate(
+                    () -> CodecHandle.revokeIdle(borrowedHandles, timeoutNanos), periodMillis, periodMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+
+        private void release(MemorySegment decoder) {
+            if (slab != null) {
+                slab.release(decoder);
+            } else {
+                destroyDecoder(decoder);
             }
         }
 
         public void close() {
+            setIdleTimeout(null);
+            Jmx.unregister(objectName);
             MemorySegment decoder;
             while ((decoder = pool.poll()) != null) {
-                destroyDecoder(decoder);
+                release(decoder);
+                created.decrementAndGet();
             }
         }
+
+        @Override
+        public int getCapacity() {
+            return capacity;
+        }
+
+        @Override
+        public int getInUse() {
+            return Math.max(0, created.get() - pool.size());
+        }
+
+        @Override
+        public int getAvailable() {
+            return pool.size();
+        }
+
+        @Override
+        public int getWaiters() {
+            return waiters.get();
+        }
+
+        @Override
+        public long getCreationFailures() {
+            return creationFailures.sum();
+        }
+
+        @Override
+        public long getBorrowCount() {
+            return borrows.sum();
+        }
+
+        @Override
+        public long getBorrowWaitP50Micros() {
+            return borrowWait.percentile(50) / 1000;
+        }
+
+        @Override
+        public long getBorrowWaitP99Micros() {
+            return borrowWait.percentile(99) / 1000;
+        }
+
+        @Override
+        public long getBorrowWaitP999Micros() {
+            return borrowWait.percentile(99.9) / 1000;
+        }
+
+        @Override
+        public long getBorrowWaitMaxMicros() {
+            return borrowWait.max() / 1000;
+        }
     }
 }
@@ -0,0 +1,163 @@
+package io.github.kinsleykajiva.opus;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import static io.github.kinsleykajiva.opus.opus_h.*;
+
+/**
+ * Encodes long PCM inputs into one Ogg Opus stream using every core.
+ * <p>
+ * The input is cut into segments on 20 ms frame boundaries and each segment
+ * is encoded by its own encoder on a {@link ForkJoinPool}. An encoder that
+ * starts mid-stream first encodes a short pre-roll of the audio just before
+ * its segment and discards those packets, so its predictors and rate control
+ * have converged by the time its first kept packet is produced and the seam
+ * is inaudible. All encoders share the same profile, and therefore the same
+ * lookahead, so the kept packets line up on one timeline and are written in
+ * order with continuous granule positions and a single pre-skip.
+ */
+public class ParallelOggEncoder {
+
+    /**
+     * Frames encoded and discarded before each segment after the first; 200
+     * ms is well beyond the encoder's adaptation time.
+     */
+    private static final int PRE_ROLL_FRAMES = 10;
+    /**
+     * Segments shorter than this are not worth an extra encoder.
+     */
+    private static final int MIN_SEGMENT_FRAMES = 50 * 30; // 30 s
+    private static final int MAX_PACKET_BYTES = 4000;
+    private static final int FRAME_SIZE_48K = 960;
+
+    private final EncoderProfile profile;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param profile Settings for every segment encoder; the frame size is
+     *                always 20 ms
+     * @param pool    Pool the segments are encoded on
+     */
+    public ParallelOggEncoder(EncoderProfile profile, ForkJoinPool pool) {
+        this.profile = profile;
+        this.pool = pool;
+    }
+
+    /**
+     * Encodes interleaved 16-bit PCM and writes the complete Ogg Opus stream.
+     *
+     * @param pcm Interleaved samples at the profile's sample rate and channel
+     *            count
+     * @param out Destination; flushed but not closed
+     */
+    public void encode(short[] pcm, OutputStream out) throws IOException {
+        OpusCodec.loadNativeLibraries();
+        int channels = profile.channels();
+        int frameSize = profile.frameSize();
+        int ratio = 48000 / profile.sampleRate();
+        long samplesPerChannel = pcm.length / channels;
+
+        int lookahead = lookahead();
+        // Enough frames to push the last input sample out past the lookahead
+        int totalFrames = (int) ((samplesPerChannel + lookahead + frameSize - 1) / frameSize);
+        int parallelism = Math.max(1, pool.getParallelism());
+        // A few segments per worker keeps them busy when segments finish unevenly
+        int segmentFrames = Math.max(MIN_SEGMENT_FRAMES, (totalFrames + parallelism * 4 - 1) / (parallelism * 4));
+
+        List<SegmentTask> tasks = new ArrayList<>();
+        for (int first = 0; first < totalFrames; first += segmentFrames) {
+            tasks.add(new SegmentTask(pcm, first, Math.min(first + segmentFrames, totalFrames)));
+        }
+        if (tasks.size() == 1) {
+            tasks.get(0).invoke();
+        } else {
+            pool.invoke(new RecursiveTask<Void>() {
+                @Override
+                protected Void compute() {
+                    ForkJoinTask.invokeAll(tasks);
+                    return null;
+                }
+            });
+        }
+
+        int preSkip = lookahead * ratio;
+        OggOpusWriter writer = new OggOpusWriter(out, channels, profile.sampleRate(), preSkip,
+                (int) System.nanoTime());
+        long granule = 0;
+        for (SegmentTask task : tasks) {
+            for (byte[] packet : task.join()) {
+                granule += FRAME_SIZE_48K;
+                writer.writePacket(packet, packet.length, granule);
+            }
+        }
+        writer.finish(preSkip + samplesPerChannel * ratio);
+    }
+
+    private int lookahead() {
+        MemorySegment encoder = OpusCodec.createEncoder(profile);
+        try {
+            return OpusCodec.getEncoderCtl(encoder, OPUS_GET_LOOKAHEAD_REQUEST());
+        } finally {
+            OpusCodec.destroyEncoder(encoder);
+        }
+    }
+
+    /**
+     * Encodes frames [first, end) of the stream, warming up on the frames
+     * before {@code first}. Frames past the input are zero padded.
+     */
+    private final class SegmentTask extends RecursiveTask<List<byte[]>> {
+        private final short[] pcm;
+        private final int first;
+        private final int end;
+
+        SegmentTask(short[] pcm, int first, int end) {
+            this.pcm = pcm;
+            this.first = first;
+            this.end = end;
+        }
+
+        @Override
+        protected List<byte[]> compute() {
+            int frameSamples = profile.frameSize() * profile.channels();
+            int start = Math.max(0, first - PRE_ROLL_FRAMES);
+            List<byte[]> packets = new ArrayList<>(end - first);
+
+            MemorySegment encoder = OpusCodec.createEncoder(profile);
+            try (Arena arena = Arena.ofConfined()) {
+                MemorySegment pcmNative = arena.allocate(C_SHORT, frameSamples);
+                MemorySegment outNative = arena.allocate(C_CHAR, MAX_PACKET_BYTES);
+                for (int frame = start; frame < end; frame++) {
+                    long offset = (long) frame * frameSamples;
+                    int available = (int) Math.max(0, Math.min(frameSamples, pcm.length - offset));
+                    if (available > 0) {
+                        MemorySegment.copy(pcm, (int) offset, pcmNative, C_SHORT, 0, available);
+                    }
+                    if (available < frameSamples) {
+                        pcmNative.asSlice(available * C_SHORT.byteSize()).fill((byte) 0);
+                    }
+                    int len = opus_encode(encoder, pcmNative, profile.frameSize(), outNative, MAX_PACKET_BYTES);
+                    if (len < 0) {
+                        throw new RuntimeException("Opus encode error: " + len);
+                    }
+                    if (frame >= first) {
+                        byte[] packet = new byte[len];
+                        MemorySegment.copy(outNative, C_CHAR, 0, packet, 0, len);
+                        packets.add(packet);
+                    }
+                }
+            } finally {
+                OpusCodec.destroyEncoder(encoder);
+            }
+            return packets;
+        }
+    }
+}
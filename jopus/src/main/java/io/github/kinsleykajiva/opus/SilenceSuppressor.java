@@ -0,0 +1,199 @@
+package io.github.kinsleykajiva.opus;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static io.github.kinsleykajiva.opus.opus_h.*;
+
+/**
+ * Per-stream silence fast path for the G.711 to Opus conversion.
+ * <p>
+ * {@link OpusCodec#convertG711Chunk(MemorySegment, byte[], boolean, byte[], SilenceSuppressor)}
+ * classifies every 20 ms frame while it expands the G.711 bytes. Frames that
+ * consist only of idle codes, or whose energy is below the threshold, skip
+ * {@code opus_encode} entirely: the suppressor copies a pre-encoded silence
+ * (or comfort noise) packet for the stream's {@link EncoderProfile}, or emits
+ * nothing at all when the profile has DTX enabled.
+ * <p>
+ * The pre-encoded packets are computed once per profile and shared by every
+ * stream. A suppressor instance holds per-stream state and, like the encoder
+ * it accompanies, is not thread-safe.
+ */
+public class SilenceSuppressor {
+
+    /**
+     * Default mean-square threshold, roughly -60 dBFS.
+     */
+    public static final long DEFAULT_MEAN_SQUARE_THRESHOLD = 32L * 32L;
+
+    // Number of distinct comfort noise packets rotated through per profile
+    private static final int COMFORT_NOISE_PACKETS = 8;
+    // Frames encoded before the cached packet is taken, so it reflects the
+    // encoder's steady state rather than its start-up transient
+    private static final int WARMUP_FRAMES = 10;
+    private static final int COMFORT_NOISE_AMPLITUDE = 8;
+    private static final int MAX_PACKET_BYTES = 4000;
+
+    private record CacheKey(EncoderProfile profile, boolean comfortNoise) {
+    }
+
+    private static final Map<CacheKey, byte[][]> PACKET_CACHE = new ConcurrentHashMap<>();
+
+    private final EncoderProfile profile;
+    private final long meanSquareThreshold;
+    private final byte[][] packets;
+    private int nextPacket;
+    private boolean inSilence;
+    private long suppressedFrames;
+
+    /**
+     * Creates a suppressor emitting pure digital silence with the default
+     * threshold.
+     */
+    public SilenceSuppressor(EncoderProfile profile) {
+        this(profile, DEFAULT_MEAN_SQUARE_THRESHOLD, false);
+    }
+
+    /**
+     * @param profile             Profile of the encoder this suppressor stands in
+     *                            for
+     * @param meanSquareThreshold Mean squared sample value below which a frame is
+     *                            treated as silent; 0 only suppresses idle-code
+     *                            frames
+     * @param comfortNoise        Emit low-level comfort noise instead of digital
+     *                            silence
+     */
+    public SilenceSuppressor(EncoderProfile profile, long meanSquareThreshold, boolean comfortNoise) {
+        this.profile = profile;
+        this.meanSquareThreshold = meanSquareThreshold;
+        this.packets = profile.dtx() ? null
+                : PACKET_CACHE.computeIfAbsent(new CacheKey(profile, comfortNoise), SilenceSuppressor::precompute);
+    }
+
+    public EncoderProfile profile() {
+        return profile;
+    }
+
+    /**
+     * @return Number of frames that bypassed the encoder so far
+     */
+    public long suppressedFrames() {
+        return suppressedFrames;
+    }
+
+    /**
+     * Decides whether a frame is silent.
+     *
+     * @param allIdle Whether every byte of the frame was a G.711 idle code
+     * @param energy  Sum of squared PCM samples over the frame
+     * @param samples Number of samples in the frame
+     */
+    boolean isSilent(boolean allIdle, long energy, int samples) {
+        return allIdle || energy < meanSquareThreshold * samples;
+    }
+
+    /**
+     * Writes the stand-in packet for one silent frame.
+     *
+     * @return Number of bytes written, 0 when DTX is enabled, or
+     *         {@code OPUS_BUFFER_TOO_SMALL} if the packet does not fit after
+     *         {@code offset}
+     */
+    int writeSilence(byte[] out, int offset) {
+        byte[] packet = packets == null ? null : packets[nextPacket];
+        if (packet != null && out.length - offset < packet.length) {
+            return OPUS_BUFFER_TOO_SMALL();
+        }
+        inSilence = true;
+        suppressedFrames++;
+        if (packet == null) {
+            return 0;
+        }
+        nextPacket = (nextPacket + 1) % packets.length;
+        System.arraycopy(packet, 0, out, offset, packet.length);
+        return packet.length;
+    }
+
+    /**
+     * Writes the stand-in packet for one silent frame into native memory.
+     *
+     * @return Number of bytes written, 0 when DTX is enabled, or
+     *         {@code OPUS_BUFFER_TOO_SMALL} if the packet does not fit
+     */
+    int writeSilence(MemorySegment out) {
+        byte[] packet = packets == null ? null : packets[nextPacket];
+        if (packet != null && out.byteSize() < packet.length) {
+            return OPUS_BUFFER_TOO_SMALL();
+        }
+        inSilence = true;
+        suppressedFrames++;
+        if (packet == null) {
+            return 0;
+        }
+        nextPacket = (nextPacket + 1) % packets.length;
+        MemorySegment.copy(packet, 0, out, C_CHAR, 0, packet.length);
+        return packet.length;
+    }
+
+    /**
+     * Marks the start of a speech frame.
+     *
+     * @return True if this frame ends a run of suppressed frames, in which case
+     *         the encoder history is stale and should be reset
+     */
+    boolean endSilence() {
+        boolean wasSilent = inSilence;
+        inSilence = false;
+        return wasSilent;
+    }
+
+    /**
+     * Returns the cached digital silence packet for a profile, encoding it on
+     * first use.
+     *
+     * @return The shared packet; callers must not modify it
+     */
+    public static byte[] silencePacket(EncoderProfile profile) {
+        return PACKET_CACHE.computeIfAbsent(new CacheKey(profile.withDtx(false), false),
+                SilenceSuppressor::precompute)[0];
+    }
+
+    private static byte[][] precompute(CacheKey key) {
+        EncoderProfile profile = key.profile();
+        int frameSamples = profile.frameSize() * profile.channels();
+        int count = key.comfortNoise() ? COMFORT_NOISE_PACKETS : 1;
+        byte[][] result = new byte[count][];
+
+        MemorySegment encoder = OpusCodec.createEncoder(profile);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment pcmNative = arena.allocate(C_SHORT, frameSamples);
+            MemorySegment outNative = arena.allocate(C_CHAR, MAX_PACKET_BYTES);
+            // Fixed seed: every process caches the same comfort noise
+            Random noise = new Random(0x0905L);
+
+            for (int frame = 0; frame < WARMUP_FRAMES + count; frame++) {
+                for (int i = 0; i < frameSamples; i++) {
+                    short s = key.comfortNoise()
+                            ? (short) (noise.nextInt(2 * COMFORT_NOISE_AMPLITUDE + 1) - COMFORT_NOISE_AMPLITUDE)
+                            : 0;
+                    pcmNative.setAtIndex(C_SHORT, i, s);
+                }
+                int len = opus_encode(encoder, pcmNative, profile.frameSize(), outNative, MAX_PACKET_BYTES);
+                if (len < 0) {
+                    throw new RuntimeException("Opus encode error while caching silence: " + len);
+                }
+                if (frame >= WARMUP_FRAMES) {
+                    byte[] packet = new byte[len];
+                    MemorySegment.copy(outNative, C_CHAR, 0, packet, 0, len);
+                    result[frame - WARMUP_FRAMES] = packet;
+                }
+            }
+        } finally {
+            OpusCodec.destroyEncoder(encoder);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,113 @@
+package io.github.kinsleykajiva.ratecontrol;
+
+/**
+ * Loss- and delay-based rate control for narrowband speech, after the
+ * loss-based half of Google Congestion Control.
+ * <ul>
+ * <li><b>Bitrate.</b> Over 10% loss in a report, the bitrate drops by half the
+ * loss fraction. Under 2% loss, it grows by 8% per report. A round-trip time
+ * more than 100 ms over the lowest seen means a queue is building, so the
+ * bitrate backs off by 10% instead of growing. The result always stays
+ * within the available bandwidth, less packet headers, and within the
+ * configured bounds.</li>
+ * <li><b>FEC.</b> In-band FEC is switched on once smoothed loss reaches 2% and
+ * off again below 0.5%. The encoder is told to plan for the smoothed loss.</li>
+ * <li><b>Packet duration.</b> Each packet carries {@value #PACKET_OVERHEAD_BYTES}
+ * bytes of IPv4, UDP and RTP headers, which at 20 ms is 16 kbit/s on its own.
+ * When the available bandwidth cannot carry the bitrate at 20 ms, packets grow
+ * to 40 or 60 ms. They only shrink again with 10% to spare, so the duration
+ * does not flap.</li>
+ * </ul>
+ * Without a bandwidth estimate, the policy relies on loss and delay alone and
+ * keeps 20 ms packets.
+ */
+public final class DefaultRatePolicy implements RateControlPolicy {
+
+    /**
+     * IPv4 (20), UDP (8) and RTP (12) headers on every packet.
+     */
+    public static final int PACKET_OVERHEAD_BYTES = 40;
+
+    private static final double HIGH_LOSS = 0.10;
+    private static final double LOW_LOSS = 0.02;
+    private static final double INCREASE = 1.08;
+    private static final double QUEUING_BACKOFF = 0.90;
+    private static final int QUEUING_MILLIS = 100;
+    private static final double FEC_ON_LOSS = 0.02;
+    private static final double FEC_OFF_LOSS = 0.005;
+    // Weight of the newest report in the smoothed loss
+    private static final double LOSS_SMOOTHING = 0.3;
+    private static final double SHRINK_MARGIN = 1.10;
+    private static final int[] FRAME_DURATIONS = { 20, 40, 60 };
+
+    private final int minBitrate;
+    private final int maxBitrate;
+    private double smoothedLoss = -1;
+    private int minRtt = Integer.MAX_VALUE;
+
+    /**
+     * Between 6 and 24 kbit/s, the useful range of narrowband Opus speech.
+     */
+    public DefaultRatePolicy() {
+        this(6000, 24000);
+    }
+
+    public DefaultRatePolicy(int minBitrate, int maxBitrate) {
+        if (minBitrate < 500 || maxBitrate < minBitrate || maxBitrate > 512000) {
+            throw new IllegalArgumentException("Invalid bitrate range: " + minBitrate + " to " + maxBitrate);
+        }
+        this.minBitrate = minBitrate;
+        this.maxBitrate = maxBitrate;
+    }
+
+    @Override
+    public EncoderSettings update(EncoderSettings current, NetworkFeedback feedback) {
+        double loss = feedback.lossFraction();
+        smoothedLoss = smoothedLoss < 0 ? loss : smoothedLoss * (1 - LOSS_SMOOTHING) + loss * LOSS_SMOOTHING;
+
+        boolean queuing = false;
+        if (feedback.rttMillis() != NetworkFeedback.UNKNOWN) {
+            minRtt = Math.min(minRtt, feedback.rttMillis());
+            queuing = feedback.rttMillis() > minRtt + QUEUING_MILLIS;
+        }
+
+        double bitrate = current.bitrate();
+        if (loss > HIGH_LOSS) {
+            bitrate *= 1 - 0.5 * loss;
+        } else if (queuing) {
+            bitrate *= QUEUING_BACKOFF;
+        } else if (loss < LOW_LOSS) {
+            bitrate *= INCREASE;
+        }
+        bitrate = Math.max(minBitrate, Math.min(maxBitrate, bitrate));
+
+        boolean fec = current.inbandFec() ? smoothedLoss >= FEC_OFF_LOSS : smoothedLoss >= FEC_ON_LOSS;
+        int lossPercent = fec ? (int) Math.min(100, Math.max(1, Math.ceil(smoothedLoss * 100))) : 0;
+
+        int duration = FRAME_DURATIONS[FRAME_DURATIONS.length - 1];
+        double payloadBudget = Double.MAX_VALUE;
+        if (feedback.availableBitrate() != NetworkFeedback.UNKNOWN) {
+            for (int candidate : FRAME_DURATIONS) {
+                // Growing back to shorter packets needs a margin
+                double needed = candidate < current.frameDurationMs() ? bitrate * SHRINK_MARGIN : bitrate;
+                if (feedback.availableBitrate() - overhead(candidate) >= needed) {
+                    duration = candidate;
+                    break;
+                }
+            }
+            payloadBudget = feedback.availableBitrate() - overhead(duration);
+        } else {
+            duration = FRAME_DURATIONS[0];
+        }
+        bitrate = Math.max(minBitrate, Math.min(bitrate, payloadBudget));
+
+        return new EncoderSettings((int) bitrate, lossPercent, fec, duration);
+    }
+
+    /**
+     * @return Header bits per second at a packet duration
+     */
+    private static double overhead(int frameDurationMs) {
+        return PACKET_OVERHEAD_BYTES * 8 * 1000.0 / frameDurationMs;
+    }
+}
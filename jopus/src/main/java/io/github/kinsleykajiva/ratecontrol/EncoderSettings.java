@@ -0,0 +1,41 @@
+package io.github.kinsleykajiva.ratecontrol;
+
+/**
+ * The network-facing settings of a streaming encoder, as chosen by a
+ * {@link RateControlPolicy}.
+ *
+ * @param bitrate           Target Opus bitrate in bits/s, packet headers
+ *                          excluded
+ * @param packetLossPercent Loss the encoder should plan for, 0-100
+ * @param inbandFec         Whether packets carry in-band FEC for the one
+ *                          before
+ * @param frameDurationMs   Audio per packet: 20, 40 or 60 ms
+ */
+public record EncoderSettings(int bitrate, int packetLossPercent, boolean inbandFec, int frameDurationMs) {
+
+    /**
+     * 16 kbit/s, no loss protection, 20 ms packets: good narrowband speech on
+     * an unknown link.
+     */
+    public static final EncoderSettings INITIAL = new EncoderSettings(16000, 0, false, 20);
+
+    public EncoderSettings {
+        // The range libopus accepts for OPUS_SET_BITRATE
+        if (bitrate < 500 || bitrate > 512000) {
+            throw new IllegalArgumentException("Bitrate must be between 500 and 512000: " + bitrate);
+        }
+        if (packetLossPercent < 0 || packetLossPercent > 100) {
+            throw new IllegalArgumentException("Packet loss must be between 0 and 100: " + packetLossPercent);
+        }
+        if (frameDurationMs != 20 && frameDurationMs != 40 && frameDurationMs != 60) {
+            throw new IllegalArgumentException("Frame duration must be 20, 40 or 60 ms: " + frameDurationMs);
+        }
+    }
+
+    /**
+     * @return 20 ms frames per packet
+     */
+    public int framesPerPacket() {
+        return frameDurationMs / 20;
+    }
+}
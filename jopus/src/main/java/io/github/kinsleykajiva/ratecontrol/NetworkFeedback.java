@@ -0,0 +1,45 @@
+package io.github.kinsleykajiva.ratecontrol;
+
+/**
+ * What the receiver last reported about the path a session's packets take:
+ * loss and round-trip time as carried in RTCP receiver reports (RFC 3550),
+ * and available bandwidth as estimated by REMB or transport-wide congestion
+ * control.
+ *
+ * @param lossFraction     Share of packets lost since the previous report,
+ *                         0 to 1
+ * @param rttMillis        Round-trip time, or {@link #UNKNOWN}
+ * @param availableBitrate Bandwidth the stream may use in bits/s, packet
+ *                         headers included, or {@link #UNKNOWN}
+ */
+public record NetworkFeedback(double lossFraction, int rttMillis, int availableBitrate) {
+
+    /**
+     * Marker for a measurement the receiver did not report.
+     */
+    public static final int UNKNOWN = -1;
+
+    public NetworkFeedback {
+        if (!(lossFraction >= 0 && lossFraction <= 1)) {
+            throw new IllegalArgumentException("Loss fraction must be between 0 and 1: " + lossFraction);
+        }
+        if (rttMillis < 0 && rttMillis != UNKNOWN) {
+            throw new IllegalArgumentException("Invalid round-trip time: " + rttMillis);
+        }
+        if (availableBitrate <= 0 && availableBitrate != UNKNOWN) {
+            throw new IllegalArgumentException("Invalid available bitrate: " + availableBitrate);
+        }
+    }
+
+    /**
+     * @param fractionLost     The 8-bit "fraction lost" field of an RTCP
+     *                         report block
+     * @param rttMillis        Round-trip time computed from the report's LSR
+     *                         and DLSR, or {@link #UNKNOWN}
+     * @param availableBitrate REMB or TWCC estimate in bits/s, or
+     *                         {@link #UNKNOWN}
+     */
+    public static NetworkFeedback fromReceiverReport(int fractionLost, int rttMillis, int availableBitrate) {
+        return new NetworkFeedback((fractionLost & 0xFF) / 256.0, rttMillis, availableBitrate);
+    }
+}
@@ -0,0 +1,19 @@
+package io.github.kinsleykajiva.ratecontrol;
+
+/**
+ * Decides a session's encoder settings from receiver feedback.
+ * <p>
+ * A policy may keep state between reports, such as smoothed loss, so each
+ * {@link RateController} needs its own instance. Calls for one controller
+ * never overlap.
+ */
+@FunctionalInterface
+public interface RateControlPolicy {
+
+    /**
+     * @param current  Settings in force since the previous report
+     * @param feedback The new report
+     * @return Settings to use from now on; may be {@code current}
+     */
+    EncoderSettings update(EncoderSettings current, NetworkFeedback feedback);
+}
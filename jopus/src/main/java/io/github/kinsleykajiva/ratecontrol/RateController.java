@@ -0,0 +1,57 @@
+package io.github.kinsleykajiva.ratecontrol;
+
+import java.util.Objects;
+
+/**
+ * Per-session bridge between receiver feedback and the encoder.
+ * <p>
+ * Feedback may arrive on any thread, typically the one reading RTCP. Each
+ * report runs the policy and publishes the new settings, which the encoding
+ * side reads with {@link #settings()} and applies before its next frame. The
+ * controller itself has no native state, so it can be driven without an
+ * encoder, as in a simulation.
+ */
+public final class RateController {
+
+    private final RateControlPolicy policy;
+    private volatile EncoderSettings settings;
+    private long reports;
+
+    /**
+     * Uses the {@link DefaultRatePolicy} from {@link EncoderSettings#INITIAL}.
+     */
+    public RateController() {
+        this(new DefaultRatePolicy(), EncoderSettings.INITIAL);
+    }
+
+    public RateController(RateControlPolicy policy, EncoderSettings initial) {
+        this.policy = Objects.requireNonNull(policy, "policy");
+        this.settings = Objects.requireNonNull(initial, "initial");
+    }
+
+    /**
+     * Runs the policy on a receiver report.
+     *
+     * @return The settings now in force
+     */
+    public synchronized EncoderSettings onFeedback(NetworkFeedback feedback) {
+        EncoderSettings next = policy.update(settings, feedback);
+        if (next == null) {
+            throw new IllegalStateException("Rate control policy returned no settings");
+        }
+        settings = next;
+        reports++;
+        return next;
+    }
+
+    /**
+     * @return Settings the encoder should use now
+     */
+    public EncoderSettings settings() {
+        return settings;
+    }
+
+    public synchronized long reports() {
+        return reports;
+    }
+}
@@ -0,0 +1,189 @@
+package io.github.kinsleykajiva.rtp;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reusable in-place view of one RTP packet (RFC 3550).
+ * <p>
+ * {@link #wrap} parses the fixed header, CSRC list, header extension and
+ * padding where they lie in the received datagram and nothing is copied:
+ * {@link #payload()} is a slice of the datagram that can go straight to
+ * {@code OpusCodec.decodeFrame} or {@code G711Utils.aLawToPcm}. Keep one
+ * instance per receive loop and re-wrap it for every datagram. For the slice
+ * to be usable by libopus, the datagram must be in native memory, e.g. a
+ * direct {@code ByteBuffer}. Not thread-safe.
+ */
+public final class RtpPacket {
+
+    /**
+     * Length of the fixed header, without CSRCs or extension.
+     */
+    public static final int HEADER_BYTES = 12;
+
+    static final ValueLayout.OfShort U16 = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    static final ValueLayout.OfInt U32 = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    private MemorySegment datagram = MemorySegment.NULL;
+    private MemorySegment payload = MemorySegment.NULL;
+    private boolean marker;
+    private int payloadType;
+    private int sequence;
+    private int timestamp;
+    private int ssrc;
+    private int csrcCount;
+    private int extensionProfile = -1;
+    private long extensionOffset;
+    private int extensionLength;
+    private int paddingLength;
+
+    /**
+     * Parses the bytes between the buffer's position and limit. The buffer's
+     * position and limit are not changed.
+     *
+     * @return False if they are not a valid RTP version 2 packet
+     */
+    public boolean wrap(ByteBuffer datagram) {
+        return wrap(MemorySegment.ofBuffer(datagram));
+    }
+
+    /**
+     * Parses a whole segment as one datagram.
+     *
+     * @return False if it is not a valid RTP version 2 packet; the view is
+     *         then unusable until the next successful wrap
+     */
+    public boolean wrap(MemorySegment datagram) {
+        this.datagram = MemorySegment.NULL;
+        this.payload = MemorySegment.NULL;
+        long length = datagram.byteSize();
+        if (length < HEADER_BYTES) {
+            return false;
+        }
+        int b0 = datagram.get(ValueLayout.JAVA_BYTE, 0) & 0xFF;
+        int b1 = datagram.get(ValueLayout.JAVA_BYTE, 1) & 0xFF;
+        if (b0 >>> 6 != 2) {
+            return false;
+        }
+        int csrcs = b0 & 0x0F;
+        long offset = HEADER_BYTES + 4L * csrcs;
+        if (offset > length) {
+            return false;
+        }
+
+        int profile = -1;
+        long extOffset = 0;
+        int extLength = 0;
+        if ((b0 & 0x10) != 0) {
+            if (offset + 4 > length) {
+                return false;
+            }
+            profile = datagram.get(U16, offset) & 0xFFFF;
+            extLength = (datagram.get(U16, offset + 2) & 0xFFFF) * 4;
+            extOffset = offset + 4;
+            offset = extOffset + extLength;
+            if (offset > length) {
+                return false;
+            }
+        }
+
+        int padding = 0;
+        if ((b0 & 0x20) != 0) {
+            // The last byte counts the padding, itself included
+            padding = datagram.get(ValueLayout.JAVA_BYTE, length - 1) & 0xFF;
+            if (padding == 0 || offset + padding > length) {
+                return false;
+            }
+        }
+
+        this.datagram = datagram;
+        this.payload = datagram.asSlice(offset, length - padding - offset);
+        this.marker = (b1 & 0x80) != 0;
+        this.payloadType = b1 & 0x7F;
+        this.sequence = datagram.get(U16, 2) & 0xFFFF;
+        this.timestamp = datagram.get(U32, 4);
+        this.ssrc = datagram.get(U32, 8);
+        this.csrcCount = csrcs;
+        this.extensionProfile = profile;
+        this.extensionOffset = extOffset;
+        this.extensionLength = extLength;
+        this.paddingLength = padding;
+        return true;
+    }
+
+    /**
+     * @return The media bytes, without header, extension or padding; a slice
+     *         of the wrapped datagram
+     */
+    public MemorySegment payload() {
+        return payload;
+    }
+
+    public int payloadLength() {
+        return (int) payload.byteSize();
+    }
+
+    public boolean marker() {
+        return marker;
+    }
+
+    public int payloadType() {
+        return payloadType;
+    }
+
+    /**
+     * @return Sequence number, 0-65535
+     */
+    public int sequence() {
+        return sequence;
+    }
+
+    /**
+     * @return Raw 32-bit timestamp; compare with {@code Integer.compareUnsigned}
+     *         or by subtraction
+     */
+    public int timestamp() {
+        return timestamp;
+    }
+
+    public int ssrc() {
+        return ssrc;
+    }
+
+    public int csrcCount() {
+        return csrcCount;
+    }
+
+    public int csrc(int index) {
+        if (index < 0 || index >= csrcCount) {
+            throw new IndexOutOfBoundsException("CSRC " + index + " of " + csrcCount);
+        }
+        return datagram.get(U32, HEADER_BYTES + 4L * index);
+    }
+
+    public boolean hasExtension() {
+        return extensionProfile >= 0;
+    }
+
+    /**
+     * @return The 16-bit profile-defined field of the header extension (e.g.
+     *         0xBEDE for RFC 8285 one-byte headers), or -1 if there is none
+     */
+    public int extensionProfile() {
+        return extensionProfile;
+    }
+
+    /**
+     * @return The extension data, without its 4-byte preamble; empty if there
+     *         is none
+     */
+    public MemorySegment extension() {
+        return extensionProfile < 0 ? datagram.asSlice(0, 0) : datagram.asSlice(extensionOffset, extensionLength);
+    }
+
+    public int paddingLength() {
+        return paddingLength;
+    }
+}
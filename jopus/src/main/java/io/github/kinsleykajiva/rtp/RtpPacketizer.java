@@ -0,0 +1,120 @@
+package io.github.kinsleykajiva.rtp;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Builds outgoing RTP packets for one stream in a single reusable datagram
+ * buffer.
+ * <p>
+ * The header is written once at construction; per packet only the marker,
+ * sequence number and timestamp change. Codec output is written straight into
+ * {@link #payload()}, right after the header, and {@link #finish} returns the
+ * same buffer ready for {@code DatagramChannel.send}:
+ *
+ * <pre>{@code
+ * int n = OpusCodec.encodeFrame(encoder, pcm, 160, packetizer.payload());
+ * channel.send(packetizer.finish(n, false), peer);
+ * }</pre>
+ *
+ * Opus streams use a 48 kHz timestamp clock whatever the codec's rate
+ * (RFC 7587), so a 20 ms Opus packet advances the timestamp by 960; a 20 ms
+ * G.711 packet advances it by 160. Not thread-safe.
+ */
+public final class RtpPacketizer {
+
+    /**
+     * Largest datagram, header included; fits an Ethernet MTU with IP and UDP
+     * headers to spare.
+     */
+    public static final int MAX_DATAGRAM_BYTES = 1472;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_BYTES);
+    private final MemorySegment datagram = MemorySegment.ofBuffer(buffer);
+    private final MemorySegment payload = datagram.asSlice(RtpPacket.HEADER_BYTES);
+    private final int payloadType;
+    private final int timestampStep;
+    private int sequence;
+    private int timestamp;
+
+    /**
+     * Creates a packetizer with a random initial sequence number and
+     * timestamp, as RFC 3550 recommends.
+     *
+     * @param timestampStep Timestamp units per packet
+     */
+    public RtpPacketizer(int ssrc, int payloadType, int timestampStep) {
+        this(ssrc, payloadType, timestampStep, ThreadLocalRandom.current().nextInt(0x10000),
+                ThreadLocalRandom.current().nextInt());
+    }
+
+    public RtpPacketizer(int ssrc, int payloadType, int timestampStep, int initialSequence, int initialTimestamp) {
+        if (payloadType < 0 || payloadType > 127) {
+            throw new IllegalArgumentException("Payload type must be between 0 and 127: " + payloadType);
+        }
+        this.payloadType = payloadType;
+        this.timestampStep = timestampStep;
+        this.sequence = initialSequence & 0xFFFF;
+        this.timestamp = initialTimestamp;
+        datagram.set(ValueLayout.JAVA_BYTE, 0, (byte) 0x80); // V=2, no padding, extension or CSRCs
+        datagram.set(RtpPacket.U32, 8, ssrc);
+    }
+
+    /**
+     * @return Where the next packet's payload goes; reused for every packet
+     */
+    public MemorySegment payload() {
+        return payload;
+    }
+
+    /**
+     * Stamps the header for the payload just written and advances the
+     * sequence number and timestamp.
+     *
+     * @param payloadLength Bytes written to {@link #payload()}
+     * @param marker        RTP marker bit, e.g. the first packet after DTX
+     * @return The datagram buffer, positioned at 0 and limited to the packet;
+     *         valid until the next call
+     */
+    public ByteBuffer finish(int payloadLength, boolean marker) {
+        return finish(payloadLength, marker, timestamp);
+    }
+
+    /**
+     * Stamps the header with an explicit timestamp, e.g. one rescaled from
+     * the incoming leg so that gaps from loss carry through a transcoder.
+     * Later packets continue from this timestamp.
+     *
+     * @return The datagram buffer, positioned at 0 and limited to the packet;
+     *         valid until the next call
+     */
+    public ByteBuffer finish(int payloadLength, boolean marker, int timestamp) {
+        if (payloadLength < 0 || payloadLength > payload.byteSize()) {
+            throw new IllegalArgumentException("Invalid RTP payload length: " + payloadLength);
+        }
+        datagram.set(ValueLayout.JAVA_BYTE, 1, (byte) (marker ? 0x80 | payloadType : payloadType));
+        datagram.set(RtpPacket.U16, 2, (short) sequence);
+        datagram.set(RtpPacket.U32, 4, timestamp);
+        this.sequence = (sequence + 1) & 0xFFFF;
+        this.timestamp = timestamp + timestampStep;
+        return buffer.limit(RtpPacket.HEADER_BYTES + payloadLength).position(0);
+    }
+
+    /**
+     * Advances the timestamp for frames that were not sent (e.g. suppressed by
+     * DTX) without using a sequence number.
+     */
+    public void skip(int frames) {
+        timestamp += frames * timestampStep;
+    }
+
+    public int nextSequence() {
+        return sequence;
+    }
+
+    public int nextTimestamp() {
+        return timestamp;
+    }
+}